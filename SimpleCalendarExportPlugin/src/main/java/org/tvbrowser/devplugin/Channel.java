@@ -37,7 +37,7 @@ public final class Channel implements Parcelable {
   public static final Creator<Channel> CREATOR = new Creator<Channel>() {
     @Override
     public Channel createFromParcel(Parcel source) {
-      return new Channel(source);
+      return ChannelCache.intern(new Channel(source));
     }
 
     @Override
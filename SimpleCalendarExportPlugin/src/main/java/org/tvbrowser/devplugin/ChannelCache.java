@@ -0,0 +1,188 @@
+/*
+ * Plugin Interface for TV-Browser for Android
+ * Copyright (c) 2014 René Mach (rene@tvbrowser.org)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.devplugin;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache for the TV-Browser channels known on this side of the binder.
+ * <p>
+ * Programs in parcel version 2 only contain the id of their channel,
+ * the channel itself is taken from this cache. So the cache must be filled
+ * with the subscribed channels of TV-Browser before programs are read.
+ * <p>
+ * Channels read from a Parcel are interned, so all programs of a channel
+ * share one Channel instance with one name and one icon instead of a copy
+ * for every program. The interned channels are kept by id and icon, the least
+ * recently used ones are removed if there are more than {@link #MAX_INTERNED}.
+ */
+public final class ChannelCache {
+  /** The maximum number of interned channels */
+  public static final int MAX_INTERNED = 256;
+  
+  private static final Object LOCK = new Object();
+  
+  /* The subscribed channels by id */
+  private static final HashMap<Integer, Channel> CHANNELS = new HashMap<Integer, Channel>();
+  
+  /* The interned channels by id and hash of the icon, in access order */
+  private static final LinkedHashMap<Long, Channel> INTERNED = new LinkedHashMap<Long, Channel>(64, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, Channel> eldest) {
+      if(size() > MAX_INTERNED) {
+        sEvictionCount++;
+        return true;
+      }
+      
+      return false;
+    }
+  };
+  
+  private static long sHitCount;
+  private static long sMissCount;
+  private static long sEvictionCount;
+  
+  private ChannelCache() {}
+  
+  /**
+   * Adds the given channels to the cache, replacing cached channels with the same id.
+   * <p>
+   * @param channels The channels to add, can be <code>null</code>.
+   */
+  public static void putAll(List<Channel> channels) {
+    if(channels != null) {
+      synchronized(LOCK) {
+        for(Channel channel : channels) {
+          if(channel != null) {
+            CHANNELS.put(Integer.valueOf(channel.getChannelId()), internLocked(channel));
+          }
+        }
+      }
+    }
+  }
+  
+  /**
+   * Adds the given channel to the cache, replacing a cached channel with the same id.
+   * <p>
+   * @param channel The channel to add.
+   */
+  public static void put(Channel channel) {
+    synchronized(LOCK) {
+      CHANNELS.put(Integer.valueOf(channel.getChannelId()), internLocked(channel));
+    }
+  }
+  
+  /**
+   * Gets the cached channel with the given id.
+   * <p>
+   * @param channelId The unique id of the channel.
+   * @return The channel or <code>null</code> if the channel is not in the cache.
+   */
+  public static Channel get(int channelId) {
+    synchronized(LOCK) {
+      return CHANNELS.get(Integer.valueOf(channelId));
+    }
+  }
+  
+  /**
+   * Gets the interned instance of the given channel.
+   * <p>
+   * @param channel The channel to intern.
+   * @return An equal channel that was interned before or the given channel,
+   *         which is interned then.
+   */
+  public static Channel intern(Channel channel) {
+    synchronized(LOCK) {
+      return internLocked(channel);
+    }
+  }
+  
+  private static Channel internLocked(Channel channel) {
+    final Long key = Long.valueOf(((long)channel.getChannelId() << 32) | (Arrays.hashCode(channel.getIcon()) & 0xFFFFFFFFL));
+    final Channel interned = INTERNED.get(key);
+    
+    if(interned != null && isEqual(interned, channel)) {
+      sHitCount++;
+      return interned;
+    }
+    
+    sMissCount++;
+    INTERNED.put(key, channel);
+    
+    return channel;
+  }
+  
+  private static boolean isEqual(Channel a, Channel b) {
+    return a == b || ((a.getChannelName() == null ? b.getChannelName() == null : a.getChannelName().equals(b.getChannelName())) && Arrays.equals(a.getIcon(), b.getIcon()));
+  }
+  
+  /**
+   * @return The number of channels that were found in the interned channels.
+   */
+  public static long getHitCount() {
+    synchronized(LOCK) {
+      return sHitCount;
+    }
+  }
+  
+  /**
+   * @return The number of channels that were not found in the interned channels.
+   */
+  public static long getMissCount() {
+    synchronized(LOCK) {
+      return sMissCount;
+    }
+  }
+  
+  /**
+   * @return The number of interned channels that were removed because of the size limit.
+   */
+  public static long getEvictionCount() {
+    synchronized(LOCK) {
+      return sEvictionCount;
+    }
+  }
+  
+  /**
+   * @return The current number of interned channels.
+   */
+  public static int getInternedCount() {
+    synchronized(LOCK) {
+      return INTERNED.size();
+    }
+  }
+  
+  /**
+   * Removes all channels from the cache and resets the counters.
+   */
+  public static void clear() {
+    synchronized(LOCK) {
+      CHANNELS.clear();
+      INTERNED.clear();
+      sHitCount = 0;
+      sMissCount = 0;
+      sEvictionCount = 0;
+    }
+  }
+}
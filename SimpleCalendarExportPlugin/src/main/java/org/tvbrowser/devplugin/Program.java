@@ -24,11 +24,26 @@ import android.os.Parcelable;
 
 /**
  * A parcelable class with informations about a TV-Browser program.
+ * <p>
+ * Since parcel version 2 a program only contains the id of its channel
+ * instead of the complete channel with its icon, the channel is taken
+ * from the {@link ChannelCache} on the receiving side.
+ * <p>
+ * A program that was read from a Parcel is written in the version it was
+ * read in, so it is given back to the other side of the binder in a version
+ * that side can read. Programs created on this side are written in version 1
+ * unless the version is given with {@link #writeToParcel(Parcel, int, int)}.
+ * <p>
+ * Since parcel version 3 the texts that may be long (short description,
+ * description and episode title) are written as byte array after the other
+ * values, the array contains a marshalled Parcel with the plain strings.
+ * The array is only copied when the program is read and the texts are
+ * decoded when one of them is requested for the first time.
  * 
  * @author René Mach
  */
 public final class Program implements Parcelable {
-  private static final int VERSION = 1;
+  private static final int VERSION = 3;
   
   private long mId;
   private long mStartTime;
@@ -37,8 +52,15 @@ public final class Program implements Parcelable {
   private String mShortDescription;
   private String mDescription;
   private String mEpisodeTitle;
+  private int mChannelId;
   private Channel mChannel;
   
+  /* The parcel version this program was read in, the other side of the binder can read it */
+  private int mParcelVersion = 1;
+  
+  /* The not yet decoded texts of parcel version 3, null if decoded */
+  private byte[] mTexts;
+  
   public static final Creator<Program> CREATOR = new Creator<Program>() {
     @Override
     public Program createFromParcel(Parcel source) {
@@ -80,6 +102,7 @@ public final class Program implements Parcelable {
     mShortDescription = shortDescription;
     mDescription = description;
     mEpisodeTitle = episodeTitle;
+    mChannelId = channel.getChannelId();
     mChannel = channel;
   }
   
@@ -116,6 +139,7 @@ public final class Program implements Parcelable {
    * @return The short description for this program or <code>null</code> if it has no short description.
    */
   public String getShortDescription() {
+    decodeTexts();
     return mShortDescription;
   }
   
@@ -125,6 +149,7 @@ public final class Program implements Parcelable {
    * @return The full description for this program or <code>null</code> if it has no full description.
    */
   public String getDescription() {
+    decodeTexts();
     return mDescription;
   }
   
@@ -143,16 +168,54 @@ public final class Program implements Parcelable {
    * @return The episode title for this Program or <code>null</code> if it has no episode title.
    */
   public String getEpisodeTitle() {
+    decodeTexts();
     return mEpisodeTitle;
   }
   
   /**
    * Gets the Channel for this program.
    * <p>
+   * If this program only contains the id of its channel and the channel is
+   * not in the {@link ChannelCache}, a channel without name is returned. The
+   * channel is unresolved then, callers that need the name have to fill the
+   * cache with the subscribed channels of TV-Browser first.
+   * <p>
    * @return The {@link Channel} of this program.
    */
   public Channel getChannel() {
-    return mChannel;
+    Channel channel = mChannel;
+    
+    if(channel == null) {
+      channel = ChannelCache.get(mChannelId);
+      
+      if(channel != null) {
+        mChannel = channel;
+      }
+      else {
+        /* Not cached yet, don't keep the placeholder so the channel is found after the cache was filled */
+        channel = new Channel(mChannelId, null, null);
+      }
+    }
+    
+    return channel;
+  }
+  
+  /**
+   * Gets the unique id of the Channel for this program.
+   * <p>
+   * @return The unique id of the {@link Channel} of this program.
+   */
+  public int getChannelId() {
+    return mChannelId;
+  }
+  
+  /**
+   * Gets the highest parcel version of Programs known on this side of the binder.
+   * <p>
+   * @return The highest supported parcel version.
+   */
+  public static int getSupportedParcelVersion() {
+    return VERSION;
   }
   
   /**
@@ -169,28 +232,124 @@ public final class Program implements Parcelable {
     return 0;
   }
 
+  /**
+   * Decodes the texts that were copied from the Parcel at reading.
+   */
+  private synchronized void decodeTexts() {
+    if(mTexts != null) {
+      final Parcel texts = Parcel.obtain();
+      
+      try {
+        texts.unmarshall(mTexts, 0, mTexts.length);
+        texts.setDataPosition(0);
+        
+        mShortDescription = texts.readString();
+        mDescription = texts.readString();
+        mEpisodeTitle = texts.readString();
+      }finally {
+        texts.recycle();
+      }
+      
+      mTexts = null;
+    }
+  }
+  
+  /**
+   * Gets the texts as they are written in parcel version 3.
+   */
+  private synchronized byte[] marshallTexts() {
+    if(mTexts != null) {
+      /* Not decoded, so the texts can be written unchanged */
+      return mTexts;
+    }
+    
+    final Parcel texts = Parcel.obtain();
+    
+    try {
+      texts.writeString(mShortDescription);
+      texts.writeString(mDescription);
+      texts.writeString(mEpisodeTitle);
+      
+      return texts.marshall();
+    }finally {
+      texts.recycle();
+    }
+  }
+  
   private void readFromParcel(Parcel source) {
-    source.readInt(); // read version
+    final int version = source.readInt();
+    
+    /* The other side writes this version, so it can read it too */
+    mParcelVersion = Math.max(1, Math.min(VERSION, version));
+    
     mId = source.readLong();
     mStartTime = source.readLong();
     mEndTime = source.readLong();
     mTitle = source.readString();
+    
+    if(version >= 3) {
+      mChannelId = source.readInt();
+      mChannel = ChannelCache.get(mChannelId);
+      
+      mTexts = source.createByteArray();
+      
+      return;
+    }
+    
     mShortDescription = (String)source.readValue(String.class.getClassLoader());
     mDescription = (String)source.readValue(String.class.getClassLoader());
     mEpisodeTitle = (String)source.readValue(String.class.getClassLoader());
-    mChannel = new Channel(source);
+    
+    if(version >= 2) {
+      mChannelId = source.readInt();
+      mChannel = ChannelCache.get(mChannelId);
+    }
+    else {
+      mChannel = ChannelCache.intern(new Channel(source));
+      mChannelId = mChannel.getChannelId();
+    }
   }
   
   @Override
   public void writeToParcel(Parcel dest, int flags) {
-    dest.writeInt(VERSION);
+    writeToParcel(dest, flags, mParcelVersion);
+  }
+  
+  /**
+   * Writes this program in the given parcel version, or the highest version
+   * supported on this side if it is lower.
+   * <p>
+   * @param dest The Parcel to write this program to.
+   * @param flags The flags of {@link #writeToParcel(Parcel, int)}.
+   * @param parcelVersion The highest parcel version the other side of the binder can read.
+   */
+  public void writeToParcel(Parcel dest, int flags, int parcelVersion) {
+    final int version = Math.max(1, Math.min(VERSION, parcelVersion));
+    
+    dest.writeInt(version);
     dest.writeLong(mId);
     dest.writeLong(mStartTime);
     dest.writeLong(mEndTime);
     dest.writeString(mTitle);
+    
+    if(version >= 3) {
+      dest.writeInt(mChannelId);
+      dest.writeByteArray(marshallTexts());
+      
+      return;
+    }
+    
+    decodeTexts();
+    
     dest.writeValue(mShortDescription);
     dest.writeValue(mDescription);
     dest.writeValue(mEpisodeTitle);
-    mChannel.writeToParcel(dest, flags);
+    
+    if(version >= 2) {
+      dest.writeInt(mChannelId);
+    }
+    else {
+      getChannel().writeToParcel(dest, flags);
+    }
   }
 }
@@ -0,0 +1,128 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import android.os.RemoteException;
+import android.util.Log;
+
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.ChannelCache;
+import org.tvbrowser.devplugin.PluginManager;
+import org.tvbrowser.devplugin.Program;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the programs of the subscribed channels that match the export rules.
+ * <p>
+ * Only the channels any rule applies to are scanned, their programs are
+ * fetched with a {@link ProgramFetcher}. A channel is only scanned from its
+ * {@link ScanWatermarks watermark} on, so after a data update only the new
+ * data is fetched. The watermark of a channel doesn't pass a window whose
+ * programs could not be fetched, so that window is fetched again with the
+ * next scan.
+ */
+final class AutoExportScanner {
+  private static final String TAG = "AutoExportScanner";
+  
+  private final PluginManager mPluginManager;
+  private final ProgramFetcher mFetcher;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param pluginManager The plugin manager to get the channels from.
+   * @param fetcher The fetcher for the programs of the channels.
+   */
+  AutoExportScanner(PluginManager pluginManager, ProgramFetcher fetcher) {
+    mPluginManager = pluginManager;
+    mFetcher = fetcher;
+  }
+  
+  /**
+   * Finds the programs starting in the given time span after the watermark
+   * of their channel that match the rules. The watermarks are moved to the end
+   * of the last fetched program of every channel, but not past the start of
+   * the first window of the channel that could not be fetched.
+   * <p>
+   * @param rules The rules to match.
+   * @param from The start of the time span in milliseconds since 1970 in UTC timezone.
+   * @param to The end of the time span in milliseconds since 1970 in UTC timezone.
+   * @param marked The marked programs, that are not returned again.
+   * @param watermarks The watermarks of the channels.
+   * @return The matching programs that are not marked.
+   * @throws RemoteException If TV-Browser is gone.
+   */
+  ArrayList<Program> scan(ExportRules rules, long from, long to, final MarkingSet.Snapshot marked, ScanWatermarks watermarks) throws RemoteException {
+    final ArrayList<Program> found = new ArrayList<Program>();
+    final List<Channel> channels = mPluginManager.getSubscribedChannels();
+    
+    if(channels == null || rules.size() == 0) {
+      return found;
+    }
+    
+    ChannelCache.putAll(channels);
+    
+    final ExportRules.Matcher matcher = rules.createMatcher(channels);
+    final int[] channelIds = matcher.getChannelIds();
+    final long[] starts = new long[channelIds.length];
+    
+    for(int i = 0; i < channelIds.length; i++) {
+      starts[i] = Math.max(from, watermarks.get(channelIds[i], from));
+    }
+    
+    /* the end of the last fetched program by channel id */
+    final LongLongHashMap scanned = new LongLongHashMap();
+    /* the start of the first window that could not be fetched by channel id */
+    final LongLongHashMap failed = new LongLongHashMap();
+    
+    mFetcher.fetch(channelIds, starts, to, new ProgramFetcher.Consumer() {
+      @Override
+      public void onPrograms(int channelId, long start, long end, Program[] programs) {
+        for(Program program : programs) {
+          /* programs running at the start of a window belong to the window before */
+          if(program.getStartTimeInUTC() >= start && program.getStartTimeInUTC() < end) {
+            if(program.getEndTimeInUTC() > scanned.get(channelId, Long.MIN_VALUE)) {
+              scanned.put(channelId, program.getEndTimeInUTC());
+            }
+            
+            if(!marked.contains(program.getId()) && matcher.matches(program)) {
+              found.add(program);
+            }
+          }
+        }
+      }
+      
+      @Override
+      public void onFailed(int channelId, long start, long end, Exception error) {
+        Log.w(TAG, "Programs of channel " + channelId + " from " + start + " to " + end + " not fetched", error);
+        
+        if(start < failed.get(channelId, Long.MAX_VALUE)) {
+          failed.put(channelId, start);
+        }
+      }
+    });
+    
+    /* windows may be fetched in any order, so the watermarks are only moved after all were fetched */
+    for(long channelId : scanned.keys()) {
+      watermarks.advance((int)channelId, Math.min(scanned.get(channelId, Long.MIN_VALUE), failed.get(channelId, Long.MAX_VALUE)));
+    }
+    
+    return found;
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.os.Build;
+import android.os.RemoteException;
+import android.provider.CalendarContract;
+import android.provider.CalendarContract.Events;
+import android.util.Log;
+
+import org.tvbrowser.devplugin.Program;
+
+import java.util.ArrayList;
+import java.util.TimeZone;
+
+/**
+ * Inserts and updates calendar events for many programs directly in the calendar
+ * provider, using batches of {@link ContentProviderOperation}s.
+ * <p>
+ * The events get the unique id of their program as UID, so they can be
+ * found again without the id of the event.
+ */
+final class CalendarBatchExporter {
+  private static final String TAG = "CalendarBatchExporter";
+  
+  /**
+   * Creates the texts of the events.
+   */
+  interface EventTextFactory {
+    /**
+     * @param program The program to create the event texts for.
+     * @return The texts of the event for the given program.
+     */
+    EventText createEventText(Program program);
+  }
+  
+  private final ContentResolver mResolver;
+  private final long mCalendarId;
+  private final int mBatchSize;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param resolver The resolver to insert the events with.
+   * @param calendarId The id of the calendar to insert the events into.
+   * @param batchSize The maximum number of events that are inserted with one batch.
+   */
+  CalendarBatchExporter(ContentResolver resolver, long calendarId, int batchSize) {
+    mResolver = resolver;
+    mCalendarId = calendarId;
+    mBatchSize = Math.max(1, batchSize);
+  }
+  
+  /**
+   * Inserts an event for each of the given programs.
+   * <p>
+   * @param programs The programs to insert events for.
+   * @param factory The factory for the texts of the events.
+   * @return The ids of the inserted events in the order of the programs,
+   *         <code>-1</code> for programs whose event could not be inserted.
+   */
+  long[] export(Program[] programs, EventTextFactory factory) {
+    final long[] eventIds = new long[programs.length];
+    final ArrayList<ContentProviderOperation> batch = new ArrayList<ContentProviderOperation>(Math.min(mBatchSize, programs.length));
+    final String timeZone = TimeZone.getDefault().getID();
+    final long start = System.nanoTime();
+    
+    int exported = 0;
+    
+    for(int offset = 0; offset < programs.length; offset += mBatchSize) {
+      final int end = Math.min(programs.length, offset + mBatchSize);
+      
+      batch.clear();
+      
+      for(int i = offset; i < end; i++) {
+        final Program program = programs[i];
+        final ContentValues values = createValues(program, factory, timeZone);
+        
+        values.put(Events.CALENDAR_ID, mCalendarId);
+        
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+          values.put(Events.UID_2445, ProgramExporter.getUid(program.getId()));
+        }
+        
+        batch.add(ContentProviderOperation.newInsert(Events.CONTENT_URI).withValues(values).build());
+      }
+      
+      ContentProviderResult[] results = null;
+      
+      try {
+        results = mResolver.applyBatch(CalendarContract.AUTHORITY, batch);
+      } catch (RemoteException e) {
+        Log.w(TAG, "Export batch failed", e);
+      } catch (OperationApplicationException e) {
+        Log.w(TAG, "Export batch failed", e);
+      }
+      
+      for(int i = offset; i < end; i++) {
+        final ContentProviderResult result = results != null && i - offset < results.length ? results[i - offset] : null;
+        
+        if(result != null && result.uri != null) {
+          eventIds[i] = ContentUris.parseId(result.uri);
+          exported++;
+        }
+        else {
+          eventIds[i] = -1;
+        }
+      }
+    }
+    
+    final long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+    
+    Log.i(TAG, "Exported " + exported + " of " + programs.length + " programs in " + millis + " ms (" + (exported * 1000L / millis) + " events/s)");
+    
+    return eventIds;
+  }
+  
+  /**
+   * Updates the times and texts of the events of the given programs.
+   * <p>
+   * @param programs The programs with the current data.
+   * @param eventIds The ids of the events of the programs.
+   * @param factory The factory for the texts of the events.
+   * @return For every program if its event was updated.
+   */
+  boolean[] update(Program[] programs, long[] eventIds, EventTextFactory factory) {
+    final boolean[] updated = new boolean[programs.length];
+    final ArrayList<ContentProviderOperation> batch = new ArrayList<ContentProviderOperation>(Math.min(mBatchSize, programs.length));
+    final String timeZone = TimeZone.getDefault().getID();
+    
+    for(int offset = 0; offset < programs.length; offset += mBatchSize) {
+      final int end = Math.min(programs.length, offset + mBatchSize);
+      
+      batch.clear();
+      
+      for(int i = offset; i < end; i++) {
+        batch.add(ContentProviderOperation.newUpdate(ContentUris.withAppendedId(Events.CONTENT_URI, eventIds[i])).withValues(createValues(programs[i], factory, timeZone)).build());
+      }
+      
+      try {
+        final ContentProviderResult[] results = mResolver.applyBatch(CalendarContract.AUTHORITY, batch);
+        
+        for(int i = offset; i < end && i - offset < results.length; i++) {
+          updated[i] = results[i - offset].count != null && results[i - offset].count.intValue() > 0;
+        }
+      } catch (RemoteException e) {
+        Log.w(TAG, "Update batch failed", e);
+      } catch (OperationApplicationException e) {
+        Log.w(TAG, "Update batch failed", e);
+      }
+    }
+    
+    return updated;
+  }
+  
+  private static ContentValues createValues(Program program, EventTextFactory factory, String timeZone) {
+    final ContentValues values = new ContentValues();
+    
+    values.put(Events.DTSTART, program.getStartTimeInUTC());
+    values.put(Events.DTEND, program.getEndTimeInUTC());
+    values.put(Events.EVENT_TIMEZONE, timeZone);
+    factory.createEventText(program).putInto(values);
+    
+    return values;
+  }
+  
+  /**
+   * Deletes the event of the given program.
+   * <p>
+   * If the id of the event is not known, the event is searched by its
+   * unique id, this is only possible since Android 4.2.
+   * <p>
+   * @param programId The id of the program to delete the event for.
+   * @param eventId The id of the event or <code>-1</code> if it is unknown.
+   * @return <code>true</code> if an event was deleted.
+   */
+  boolean delete(long programId, long eventId) {
+    int deleted = 0;
+    
+    try {
+      if(eventId != -1) {
+        deleted = mResolver.delete(ContentUris.withAppendedId(Events.CONTENT_URI, eventId), null, null);
+      }
+      else if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+        deleted = mResolver.delete(Events.CONTENT_URI, Events.CALENDAR_ID + "=? AND " + Events.UID_2445 + "=?", new String[] {String.valueOf(mCalendarId), ProgramExporter.getUid(programId)});
+      }
+    }catch(IllegalArgumentException iae) {
+      Log.w(TAG, "Delete of event for program " + programId + " failed", iae);
+    }
+    
+    return deleted > 0;
+  }
+}
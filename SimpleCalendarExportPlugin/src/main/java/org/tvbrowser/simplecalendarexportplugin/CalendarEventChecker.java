@@ -0,0 +1,124 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.provider.CalendarContract.Events;
+import android.util.Log;
+
+/**
+ * Checks which of many calendar events still exist with a few queries,
+ * each one for a chunk of event ids.
+ */
+final class CalendarEventChecker {
+  private static final String TAG = "CalendarEventChecker";
+  
+  private static final String[] PROJECTION = {Events._ID};
+  
+  private final ContentResolver mResolver;
+  private final int mChunkSize;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param resolver The resolver to query the events with.
+   * @param chunkSize The maximum number of event ids for one query,
+   *                  must not be larger than the SQLite limit of 999 arguments.
+   */
+  CalendarEventChecker(ContentResolver resolver, int chunkSize) {
+    mResolver = resolver;
+    mChunkSize = Math.max(1, Math.min(999, chunkSize));
+  }
+  
+  /**
+   * Checks the given events, starting at the given index and continuing
+   * at the start of the array after its end.
+   * <p>
+   * If the time budget doesn't suffice for all events, the next check should
+   * start after the last checked event, so over several checks every event
+   * is checked and not only the ones at the start of the array.
+   * <p>
+   * @param eventIds The ids of the events to check.
+   * @param missing Set to <code>true</code> for every event that doesn't exist anymore.
+   * @param start The index of the first event to check.
+   * @param timeBudget The time in milliseconds after which no further query is started.
+   * @return The number of events that were checked, from the start index on.
+   */
+  int check(long[] eventIds, boolean[] missing, int start, long timeBudget) {
+    final long startTime = SystemClock.elapsedRealtime();
+    final LongHashSet found = new LongHashSet(mChunkSize);
+    final StringBuilder selection = new StringBuilder(mChunkSize * 2 + 32);
+    
+    String fullSelection = null;
+    int checked = 0;
+    
+    while(checked < eventIds.length && SystemClock.elapsedRealtime() - startTime < timeBudget) {
+      final int count = Math.min(mChunkSize, eventIds.length - checked);
+      final String[] args = new String[count];
+      
+      for(int i = 0; i < count; i++) {
+        args[i] = String.valueOf(eventIds[(start + checked + i) % eventIds.length]);
+      }
+      
+      if(count < mChunkSize || fullSelection == null) {
+        selection.setLength(0);
+        selection.append(Events.DELETED).append("=0 AND ").append(Events._ID).append(" IN (");
+        
+        for(int i = 0; i < count; i++) {
+          selection.append(i == 0 ? "?" : ",?");
+        }
+        
+        selection.append(')');
+        
+        if(count == mChunkSize) {
+          fullSelection = selection.toString();
+        }
+      }
+      
+      final Cursor events = mResolver.query(Events.CONTENT_URI, PROJECTION, count == mChunkSize ? fullSelection : selection.toString(), args, null);
+      
+      if(events == null) {
+        Log.w(TAG, "Query of events failed, stopped after " + checked + " events");
+        break;
+      }
+      
+      found.clear();
+      
+      try {
+        while(events.moveToNext()) {
+          found.add(events.getLong(0));
+        }
+      }
+      finally {
+        events.close();
+      }
+      
+      for(int i = checked; i < checked + count; i++) {
+        final int index = (start + i) % eventIds.length;
+        missing[index] = !found.contains(eventIds[index]);
+      }
+      
+      checked += count;
+    }
+    
+    Log.i(TAG, "Checked " + checked + " of " + eventIds.length + " events in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+    
+    return checked;
+  }
+}
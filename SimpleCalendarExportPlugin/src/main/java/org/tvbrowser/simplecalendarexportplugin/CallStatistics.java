@@ -0,0 +1,307 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Debug;
+import android.os.IBinder;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the calls TV-Browser makes into the plugin and the time they take.
+ * <p>
+ * The durations are collected in log-linear histograms like HdrHistogram
+ * does, every power of two is split into {@link #SUB_BUCKETS} buckets, so
+ * percentiles, mean and maximum are exact within 12.5%. Recording a call
+ * only increments one counter of an {@link AtomicLongArray}, so it doesn't
+ * block and doesn't allocate. If collecting is disabled, {@link #start()} only reads one
+ * volatile field and {@link #end(int, long)} does nothing.
+ * <p>
+ * The calls of TV-Browser are all counted in <code>Plugin.Stub#onTransact</code>
+ * with {@link #endTransaction(int, long)}, other code is counted like this:
+ * <pre>
+ * final long start = CallStatistics.start();
+ * try {
+ *   ...
+ * }finally {
+ *   CallStatistics.end(CallStatistics.MARKINGS_LOAD, start);
+ * }
+ * </pre>
+ */
+final class CallStatistics {
+  /* the methods of Plugin.aidl in the order of their declaration, so the
+   * transaction code of a method is its constant plus FIRST_CALL_TRANSACTION */
+  static final int GET_VERSION = 0;
+  static final int GET_NAME = 1;
+  static final int GET_DESCRIPTION = 2;
+  static final int GET_AUTHOR = 3;
+  static final int GET_LICENSE = 4;
+  static final int GET_MARK_ICON = 5;
+  static final int GET_CONTEXT_MENU_ACTIONS = 6;
+  static final int ON_CONTEXT_MENU_SELECTED = 7;
+  static final int HAS_PREFERENCES = 8;
+  static final int OPEN_PREFERENCES = 9;
+  static final int GET_MARKED_PROGRAMS = 10;
+  static final int IS_MARKED = 11;
+  static final int HANDLE_FIRST_KNOWN_PROGRAM_ID = 12;
+  static final int GET_RECEIVE_TARGETS = 13;
+  static final int RECEIVE_PROGRAMS = 14;
+  static final int ON_ACTIVATION = 15;
+  static final int ON_DEACTIVATION = 16;
+  static final int GET_PROGRAM_PARCEL_VERSION = 17;
+  
+  private static final int TRANSACTIONS = GET_PROGRAM_PARCEL_VERSION + 1;
+  
+  static final int MARKINGS_LOAD = 18;
+  static final int MARKINGS_APPEND = 19;
+  static final int MARKINGS_COMPACT = 20;
+  static final int MARKINGS_WAIT = 21;
+  static final int MARKINGS_READY = 22;
+  
+  private static final String[] NAMES = {
+    "getVersion",
+    "getName",
+    "getDescription",
+    "getAuthor",
+    "getLicense",
+    "getMarkIcon",
+    "getContextMenuActionsForProgram",
+    "onProgramContextMenuSelected",
+    "hasPreferences",
+    "openPreferences",
+    "getMarkedPrograms",
+    "isMarked",
+    "handleFirstKnownProgramId",
+    "getAvailableProgramReceiveTargets",
+    "receivePrograms",
+    "onActivation",
+    "onDeactivation",
+    "getProgramParcelVersion",
+    "markings load",
+    "markings append",
+    "markings compact",
+    "markings wait",
+    "markings ready after create"
+  };
+  
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  
+  /* durations of 2^40 ns (about 18 minutes) and more are counted in the last bucket */
+  private static final int MAX_EXPONENT = 40;
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+  
+  /* the histograms of all methods, the one of a method starts at method * BUCKETS */
+  private static final AtomicLongArray HISTOGRAMS = new AtomicLongArray(NAMES.length * BUCKETS);
+  
+  private static volatile boolean sEnabled;
+  private static volatile long sResetTime = SystemClock.elapsedRealtime();
+  
+  private static final String STAT_BYTES_ALLOCATED = "art.gc.bytes-allocated";
+  private static final String STAT_BYTES_FREED = "art.gc.bytes-freed";
+  private static final String STAT_GC_COUNT = "art.gc.gc-count";
+  private static final String STAT_GC_TIME = "art.gc.gc-time";
+  
+  /* the allocation counters of the runtime at the last reset */
+  private static volatile long sResetBytesAllocated = getRuntimeStat(STAT_BYTES_ALLOCATED);
+  private static volatile long sResetBytesFreed = getRuntimeStat(STAT_BYTES_FREED);
+  private static volatile long sResetGcCount = getRuntimeStat(STAT_GC_COUNT);
+  private static volatile long sResetGcTime = getRuntimeStat(STAT_GC_TIME);
+  
+  private CallStatistics() {}
+  
+  /**
+   * Sets if calls are counted.
+   * <p>
+   * @param enabled <code>true</code> if calls should be counted, <code>false</code> otherwise.
+   */
+  static void setEnabled(boolean enabled) {
+    sEnabled = enabled;
+  }
+  
+  /**
+   * Gets the start time of a call.
+   * <p>
+   * @return The start time for {@link #end(int, long)} or <code>0</code> if calls aren't counted.
+   */
+  static long start() {
+    return sEnabled ? System.nanoTime() : 0;
+  }
+  
+  /**
+   * Counts a call that was started at the given time.
+   * <p>
+   * @param method The called method, one of the constants of this class.
+   * @param start The value returned by {@link #start()} at the beginning of the call.
+   */
+  static void end(int method, long start) {
+    if(start != 0) {
+      HISTOGRAMS.incrementAndGet(method * BUCKETS + getBucket(System.nanoTime() - start));
+    }
+  }
+  
+  /**
+   * Counts a binder call that was started at the given time.
+   * Calls that aren't methods of Plugin.aidl are ignored.
+   * <p>
+   * @param code The transaction code of the call.
+   * @param start The value returned by {@link #start()} at the beginning of the call.
+   */
+  static void endTransaction(int code, long start) {
+    final int method = code - IBinder.FIRST_CALL_TRANSACTION;
+    
+    if(method >= 0 && method < TRANSACTIONS) {
+      end(method, start);
+    }
+  }
+  
+  private static int getBucket(long nanos) {
+    if(nanos < SUB_BUCKETS) {
+      return nanos < 0 ? 0 : (int)nanos;
+    }
+    
+    final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    
+    if(exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int)((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+  }
+  
+  /* the largest duration that is counted in the given bucket */
+  private static long getBucketLimit(int bucket) {
+    if(bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    
+    final int shift = bucket / SUB_BUCKETS - 1;
+    
+    return ((long)(SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift) - 1;
+  }
+  
+  /**
+   * Removes all counted calls.
+   */
+  static void reset() {
+    for(int i = 0; i < HISTOGRAMS.length(); i++) {
+      HISTOGRAMS.set(i, 0);
+    }
+    
+    sResetTime = SystemClock.elapsedRealtime();
+    sResetBytesAllocated = getRuntimeStat(STAT_BYTES_ALLOCATED);
+    sResetBytesFreed = getRuntimeStat(STAT_BYTES_FREED);
+    sResetGcCount = getRuntimeStat(STAT_GC_COUNT);
+    sResetGcTime = getRuntimeStat(STAT_GC_TIME);
+  }
+  
+  /* the value of a counter of the runtime or -1 if the counter isn't available */
+  @TargetApi(Build.VERSION_CODES.M)
+  private static long getRuntimeStat(String name) {
+    if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      final String value = Debug.getRuntimeStat(name);
+      
+      if(value != null) {
+        try {
+          return Long.parseLong(value);
+        }catch(NumberFormatException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+    
+    return -1;
+  }
+  
+  private static void printRuntimeStat(PrintWriter writer, String label, String name, long resetValue) {
+    final long value = getRuntimeStat(name);
+    
+    if(value >= 0 && resetValue >= 0) {
+      writer.println(String.format(Locale.US, "  %-34s %14d", label, value - resetValue));
+    }
+  }
+  
+  /**
+   * Prints the number of calls and the percentiles of the durations
+   * of every method that was called since the last reset and the
+   * allocation counters of the process.
+   * <p>
+   * @param writer The writer to print to.
+   */
+  static void dump(PrintWriter writer) {
+    writer.println("Call statistics (" + (sEnabled ? "enabled" : "disabled") + ", " + (SystemClock.elapsedRealtime() - sResetTime) / 1000 + "s since reset), durations in microseconds:");
+    writer.println(String.format(Locale.US, "  %-34s %10s %10s %10s %10s %10s %10s", "method", "calls", "mean", "p50", "p90", "p99", "max"));
+    
+    final long[] counts = new long[BUCKETS];
+    
+    for(int method = 0; method < NAMES.length; method++) {
+      long calls = 0;
+      double total = 0;
+      int last = 0;
+      
+      for(int bucket = 0; bucket < BUCKETS; bucket++) {
+        counts[bucket] = HISTOGRAMS.get(method * BUCKETS + bucket);
+        
+        if(counts[bucket] > 0) {
+          calls += counts[bucket];
+          total += counts[bucket] * (bucket == 0 ? 0 : (getBucketLimit(bucket - 1) + 1 + getBucketLimit(bucket)) / 2.0);
+          last = bucket;
+        }
+      }
+      
+      if(calls > 0) {
+        writer.println(String.format(Locale.US, "  %-34s %10d %10.1f %10.1f %10.1f %10.1f %10.1f", NAMES[method], calls,
+            total / 1000.0 / calls,
+            getPercentile(counts, calls, 0.5) / 1000.0,
+            getPercentile(counts, calls, 0.9) / 1000.0,
+            getPercentile(counts, calls, 0.99) / 1000.0,
+            getBucketLimit(last) / 1000.0));
+      }
+    }
+    
+    final Runtime runtime = Runtime.getRuntime();
+    
+    writer.println();
+    writer.println("Allocations of the process (counters since reset from Android 6 on):");
+    printRuntimeStat(writer, "allocated bytes", STAT_BYTES_ALLOCATED, sResetBytesAllocated);
+    printRuntimeStat(writer, "freed bytes", STAT_BYTES_FREED, sResetBytesFreed);
+    printRuntimeStat(writer, "garbage collections", STAT_GC_COUNT, sResetGcCount);
+    printRuntimeStat(writer, "garbage collection time (ms)", STAT_GC_TIME, sResetGcTime);
+    writer.println(String.format(Locale.US, "  %-34s %14d", "used Java heap bytes", runtime.totalMemory() - runtime.freeMemory()));
+    writer.println(String.format(Locale.US, "  %-34s %14d", "used native heap bytes", Debug.getNativeHeapAllocatedSize()));
+  }
+  
+  private static long getPercentile(long[] counts, long calls, double percentile) {
+    final long rank = (long)Math.ceil(calls * percentile);
+    long seen = 0;
+    
+    for(int bucket = 0; bucket < counts.length; bucket++) {
+      seen += counts[bucket];
+      
+      if(seen >= rank) {
+        return getBucketLimit(bucket);
+      }
+    }
+    
+    return getBucketLimit(counts.length - 1);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import android.os.RemoteException;
+
+import org.tvbrowser.devplugin.PluginManager;
+import org.tvbrowser.devplugin.Program;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Finds the exported programs whose data was changed by a data update of TV-Browser.
+ * <p>
+ * The programs are fetched per channel with one call for programs that are
+ * close together, so the number of calls depends on the number of channels
+ * and not on the number of exported programs. One call covers at most one
+ * day, so its reply stays far below the size limit of binder transactions.
+ * Only programs that can't be found that way are fetched one by one.
+ */
+final class ChangedProgramFinder {
+  /* Programs of a channel with less time between them are fetched with one call */
+  private static final long MAX_GAP = 3 * 60 * 60000L;
+  /* The maximum time between the first and the last program fetched with one call */
+  private static final long MAX_RANGE = 24 * 60 * 60000L;
+  /* Time added before and after a range, programs are often moved a few minutes */
+  private static final long PADDING = 60 * 60000L;
+  
+  private final PluginManager mPluginManager;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param pluginManager The plugin manager to fetch the programs from.
+   */
+  ChangedProgramFinder(PluginManager pluginManager) {
+    mPluginManager = pluginManager;
+  }
+  
+  /**
+   * Finds the changed programs.
+   * <p>
+   * @param programIds The ids of the programs to check, must have a fingerprint.
+   * @param fingerprints The fingerprints of the programs at their last export.
+   * @return The programs with the current data whose fingerprint differs.
+   * @throws RemoteException If TV-Browser could not be called.
+   */
+  ArrayList<Program> find(long[] programIds, EventFingerprints fingerprints) throws RemoteException {
+    final ArrayList<Program> changed = new ArrayList<Program>();
+    final LongHashSet pending = new LongHashSet(programIds.length);
+    
+    pending.addAll(programIds);
+    
+    /* the programs are sorted by channel and start */
+    final long[] channelStarts = new long[programIds.length];
+    
+    for(int i = 0; i < programIds.length; i++) {
+      channelStarts[i] = ((long)fingerprints.getChannelId(programIds[i]) << 32) | (fingerprints.getStartTime(programIds[i]) / 60000);
+    }
+    
+    final Integer[] order = new Integer[programIds.length];
+    
+    for(int i = 0; i < order.length; i++) {
+      order[i] = Integer.valueOf(i);
+    }
+    
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        final long x = channelStarts[a.intValue()];
+        final long y = channelStarts[b.intValue()];
+        
+        return x < y ? -1 : (x == y ? 0 : 1);
+      }
+    });
+    
+    int i = 0;
+    
+    while(i < order.length) {
+      final long first = programIds[order[i].intValue()];
+      final int channelId = fingerprints.getChannelId(first);
+      final long start = fingerprints.getStartTime(first);
+      long end = start;
+      
+      i++;
+      
+      while(i < order.length) {
+        final long next = programIds[order[i].intValue()];
+        
+        if(fingerprints.getChannelId(next) != channelId || fingerprints.getStartTime(next) - end > MAX_GAP || fingerprints.getStartTime(next) - start > MAX_RANGE) {
+          break;
+        }
+        
+        end = fingerprints.getStartTime(next);
+        i++;
+      }
+      
+      final Program[] programs = mPluginManager.getProgramsForChannelInRange(channelId, start - PADDING, end + PADDING);
+      
+      if(programs != null) {
+        for(Program program : programs) {
+          if(pending.remove(program.getId())) {
+            check(program, fingerprints, changed);
+          }
+        }
+      }
+    }
+    
+    /* programs moved out of the ranges */
+    for(long programId : pending.toArray()) {
+      final Program program = mPluginManager.getProgramWithId(programId);
+      
+      if(program != null) {
+        check(program, fingerprints, changed);
+      }
+    }
+    
+    return changed;
+  }
+  
+  private static void check(Program program, EventFingerprints fingerprints, ArrayList<Program> changed) {
+    if(EventFingerprints.fingerprint(program) != fingerprints.get(program.getId(), 0)) {
+      changed.add(program);
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A small binary file that is always written completely.
+ * <p>
+ * The file starts with a magic number and the version of its format and
+ * ends with the CRC32 of everything before. It is written to a temporary
+ * file first, that is synced and renamed to the file, so the file is
+ * replaced atomically and a crash while writing keeps the old content.
+ */
+final class ChecksummedFile {
+  /**
+   * Reads the content of the file.
+   */
+  interface Reader {
+    /**
+     * @param in The stream to read the content from.
+     * @param version The version of the format the file was written in.
+     * @throws IOException If the content could not be read.
+     */
+    void read(DataInputStream in, int version) throws IOException;
+  }
+  
+  /**
+   * Writes the content of the file.
+   */
+  interface Writer {
+    /**
+     * @param out The stream to write the content to.
+     * @throws IOException If the content could not be written.
+     */
+    void write(DataOutputStream out) throws IOException;
+  }
+  
+  private final File mFile;
+  private final int mMagic;
+  private final int mVersion;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param file The file.
+   * @param magic The number that identifies the format of the file.
+   * @param version The current version of the format, files of newer versions aren't read.
+   */
+  ChecksummedFile(File file, int magic, int version) {
+    mFile = file;
+    mMagic = magic;
+    mVersion = version;
+  }
+  
+  /**
+   * Reads the file.
+   * <p>
+   * If <code>false</code> is returned, the reader may have read a part
+   * of the content already, that must be dismissed by the caller.
+   * <p>
+   * @param reader The reader for the content.
+   * @return <code>true</code> if the file was read, <code>false</code> if it is missing or damaged.
+   */
+  boolean read(Reader reader) {
+    if(!mFile.isFile()) {
+      return false;
+    }
+    
+    try {
+      final CRC32 crc = new CRC32();
+      final DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(mFile)), crc));
+      
+      try {
+        final int magic = in.readInt();
+        final int version = in.readInt();
+        
+        if(magic != mMagic || version > mVersion) {
+          throw new IOException("Unknown file format: " + mFile);
+        }
+        
+        reader.read(in, version);
+        
+        final int expected = (int)crc.getValue();
+        
+        if(in.readInt() != expected) {
+          throw new IOException("File checksum mismatch: " + mFile);
+        }
+        
+        return true;
+      }
+      finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    
+    return false;
+  }
+  
+  /**
+   * Replaces the file with the content of the given writer.
+   * <p>
+   * @param writer The writer for the content.
+   * @throws IOException If the file could not be written, the old file is kept then.
+   */
+  void write(Writer writer) throws IOException {
+    final File temp = new File(mFile.getPath() + ".tmp");
+    final FileOutputStream fileOut = new FileOutputStream(temp);
+    
+    try {
+      final CRC32 crc = new CRC32();
+      final DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOut), crc));
+      
+      out.writeInt(mMagic);
+      out.writeInt(mVersion);
+      
+      writer.write(out);
+      
+      out.writeInt((int)crc.getValue());
+      out.flush();
+      
+      fileOut.getFD().sync();
+    }
+    finally {
+      fileOut.close();
+    }
+    
+    if(!temp.renameTo(mFile)) {
+      temp.delete();
+      throw new IOException("Could not replace file: " + mFile);
+    }
+  }
+}
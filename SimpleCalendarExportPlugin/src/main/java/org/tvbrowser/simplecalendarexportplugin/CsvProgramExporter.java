@@ -0,0 +1,92 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Exports programs as CSV according to RFC 4180, with a header line.
+ */
+final class CsvProgramExporter extends ProgramExporter {
+  CsvProgramExporter(OutputStream out) {
+    super(out);
+  }
+  
+  @Override
+  void begin() throws IOException {
+    mBuffer.append("id,start,end,channel,title,episodeTitle,shortDescription,description\r\n");
+    flushBuffer();
+  }
+  
+  @Override
+  void write(Program program) throws IOException {
+    final Channel channel = program.getChannel();
+    
+    mBuffer.append(program.getId()).append(',');
+    mBuffer.append(program.getStartTimeInUTC()).append(',');
+    mBuffer.append(program.getEndTimeInUTC()).append(',');
+    
+    appendField(channel != null ? channel.getChannelName() : null);
+    mBuffer.append(',');
+    appendField(program.getTitle());
+    mBuffer.append(',');
+    appendField(program.getEpisodeTitle());
+    mBuffer.append(',');
+    appendField(program.getShortDescription());
+    mBuffer.append(',');
+    appendField(program.getDescription());
+    mBuffer.append("\r\n");
+    
+    flushBuffer();
+  }
+  
+  private void appendField(String value) {
+    if(value == null) {
+      return;
+    }
+    
+    boolean quote = false;
+    
+    for(int i = 0; i < value.length() && !quote; i++) {
+      final char c = value.charAt(i);
+      quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    
+    if(!quote) {
+      mBuffer.append(value);
+      return;
+    }
+    
+    mBuffer.append('"');
+    
+    for(int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      
+      if(c == '"') {
+        mBuffer.append('"');
+      }
+      
+      mBuffer.append(c);
+    }
+    
+    mBuffer.append('"');
+  }
+}
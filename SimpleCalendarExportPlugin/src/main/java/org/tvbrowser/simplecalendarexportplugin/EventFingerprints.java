@@ -0,0 +1,198 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import org.tvbrowser.devplugin.Program;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The fingerprints of the programs whose events were inserted into the calendar.
+ * <p>
+ * A fingerprint is a hash of the start and end time, the title and the episode
+ * title of a program at the time its event was inserted or updated. If the
+ * fingerprint of the current data of a program differs, its event must be updated.
+ * The channel and start time are kept too, so the programs can be fetched from
+ * TV-Browser per channel.
+ * <p>
+ * The fingerprints are kept in memory and written to one small file.
+ * Access to an instance must be synchronized by the caller.
+ */
+final class EventFingerprints {
+  private static final int MAGIC = 0x54564650;
+  private static final int VERSION = 1;
+  
+  private final ChecksummedFile mFile;
+  
+  private final LongLongHashMap mFingerprints = new LongLongHashMap();
+  /* channel id in the upper and start minute in the lower 32 bits */
+  private final LongLongHashMap mChannelStarts = new LongLongHashMap();
+  
+  private boolean mChanged;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param dir The directory for the fingerprint file.
+   */
+  EventFingerprints(File dir) {
+    mFile = new ChecksummedFile(new File(dir, "event_fingerprints"), MAGIC, VERSION);
+  }
+  
+  /**
+   * Calculates the fingerprint of the given program.
+   * <p>
+   * @param program The program to calculate the fingerprint for.
+   * @return The fingerprint of the program.
+   */
+  static long fingerprint(Program program) {
+    /* FNV-1a */
+    long hash = 0xCBF29CE484222325L;
+    
+    hash = (hash ^ program.getStartTimeInUTC()) * 0x100000001B3L;
+    hash = (hash ^ program.getEndTimeInUTC()) * 0x100000001B3L;
+    hash = hash(hash, program.getTitle());
+    hash = hash(hash, program.getEpisodeTitle());
+    
+    return hash;
+  }
+  
+  private static long hash(long hash, String value) {
+    if(value != null) {
+      for(int i = 0; i < value.length(); i++) {
+        hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+      }
+    }
+    
+    /* separates the values, so ("ab", null) differs from ("a", "b") */
+    return (hash ^ (value == null ? 0xFF : 0xFE)) * 0x100000001B3L;
+  }
+  
+  /**
+   * Records the current fingerprint of the given program.
+   * <p>
+   * @param program The program whose event was inserted or updated.
+   */
+  void put(Program program) {
+    mFingerprints.put(program.getId(), fingerprint(program));
+    mChannelStarts.put(program.getId(), ((long)program.getChannelId() << 32) | ((program.getStartTimeInUTC() / 60000) & 0xFFFFFFFFL));
+    mChanged = true;
+  }
+  
+  /**
+   * Removes the fingerprint of the given program.
+   * <p>
+   * @param programId The id of the program.
+   */
+  void remove(long programId) {
+    if(mFingerprints.remove(programId, 0) != 0 | mChannelStarts.remove(programId, -1) != -1) {
+      mChanged = true;
+    }
+  }
+  
+  /**
+   * @param programId The id of the program.
+   * @param defaultValue The value to return if the program has no fingerprint.
+   * @return The fingerprint of the program or the default value.
+   */
+  long get(long programId, long defaultValue) {
+    return mFingerprints.get(programId, defaultValue);
+  }
+  
+  /**
+   * @param programId The id of the program, must have a fingerprint.
+   * @return The id of the channel of the program.
+   */
+  int getChannelId(long programId) {
+    return (int)(mChannelStarts.get(programId, 0) >> 32);
+  }
+  
+  /**
+   * @param programId The id of the program, must have a fingerprint.
+   * @return The start time of the program in milliseconds since 1970 in UTC, rounded down to minutes.
+   */
+  long getStartTime(long programId) {
+    return (mChannelStarts.get(programId, 0) & 0xFFFFFFFFL) * 60000;
+  }
+  
+  /**
+   * @return The ids of all programs with a fingerprint.
+   */
+  long[] getProgramIds() {
+    return mFingerprints.keys();
+  }
+  
+  /**
+   * Loads the fingerprints from the file, a missing or damaged file is ignored.
+   */
+  void load() {
+    mFingerprints.clear();
+    mChannelStarts.clear();
+    
+    final boolean read = mFile.read(new ChecksummedFile.Reader() {
+      @Override
+      public void read(DataInputStream in, int version) throws IOException {
+        final int count = in.readInt();
+        
+        for(int i = 0; i < count; i++) {
+          final long programId = in.readLong();
+          
+          mFingerprints.put(programId, in.readLong());
+          mChannelStarts.put(programId, in.readLong());
+        }
+      }
+    });
+    
+    if(!read) {
+      mFingerprints.clear();
+      mChannelStarts.clear();
+    }
+    
+    mChanged = false;
+  }
+  
+  /**
+   * Writes the fingerprints to the file if they were changed since the last load or save.
+   * <p>
+   * @throws IOException If the file could not be written.
+   */
+  void save() throws IOException {
+    if(!mChanged) {
+      return;
+    }
+    
+    mFile.write(new ChecksummedFile.Writer() {
+      @Override
+      public void write(DataOutputStream out) throws IOException {
+        final long[] programIds = mFingerprints.keys();
+        
+        out.writeInt(programIds.length);
+        
+        for(long programId : programIds) {
+          out.writeLong(programId);
+          out.writeLong(mFingerprints.get(programId, 0));
+          out.writeLong(mChannelStarts.get(programId, 0));
+        }
+      }
+    });
+    
+    mChanged = false;
+  }
+}
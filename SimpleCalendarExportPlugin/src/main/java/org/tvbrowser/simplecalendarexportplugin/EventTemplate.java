@@ -0,0 +1,230 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.ArrayList;
+
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * A compiled template for a text of a calendar event.
+ * <p>
+ * A template contains literal text and placeholders in curly braces. The
+ * available placeholders are <code>{title}</code>, <code>{channel}</code>,
+ * <code>{episode}</code>, <code>{short}</code> for the short description and
+ * <code>{desc}</code> for the description. Alternatives are separated with
+ * <code>|</code>, the first not empty one is used. An alternative can be
+ * limited to a number of characters with <code>:</code>, for example
+ * <code>{short|desc:160}</code>. <code>\n</code> stands for a line break,
+ * <code>\{</code> and <code>\\</code> for the characters themselves.
+ * <p>
+ * Literal text belongs to the placeholders around it: text between two
+ * placeholders is only added if both are not empty, text in front of the
+ * first placeholder only if it is not empty and text after the last
+ * placeholder only if that one is not empty. So <code>{episode}\n\n{desc}</code>
+ * never starts with empty lines.
+ * <p>
+ * A template is compiled once and can be used from several threads.
+ */
+final class EventTemplate {
+  private static final int FIELD_TITLE = 0;
+  private static final int FIELD_CHANNEL = 1;
+  private static final int FIELD_EPISODE = 2;
+  private static final int FIELD_SHORT_DESCRIPTION = 3;
+  private static final int FIELD_DESCRIPTION = 4;
+  
+  private static final String[] FIELD_NAMES = {"title", "channel", "episode", "short", "desc"};
+  
+  private static final char ELLIPSIS = '…';
+  
+  /* The literals, mLiterals[i] is in front of placeholder i, the last one after the last placeholder */
+  private final String[] mLiterals;
+  /* The fields of the alternatives of every placeholder */
+  private final int[][] mFields;
+  /* The maximum number of characters of the alternatives of every placeholder, 0 for no limit */
+  private final int[][] mLimits;
+  
+  private EventTemplate(String[] literals, int[][] fields, int[][] limits) {
+    mLiterals = literals;
+    mFields = fields;
+    mLimits = limits;
+  }
+  
+  /**
+   * Compiles the given template.
+   * <p>
+   * @param template The template to compile.
+   * @return The compiled template.
+   * @throws IllegalArgumentException If the template is not valid.
+   */
+  static EventTemplate compile(String template) {
+    final ArrayList<String> literals = new ArrayList<String>();
+    final ArrayList<int[]> fields = new ArrayList<int[]>();
+    final ArrayList<int[]> limits = new ArrayList<int[]>();
+    
+    final StringBuilder literal = new StringBuilder();
+    final int length = template.length();
+    int i = 0;
+    
+    while(i < length) {
+      char c = template.charAt(i++);
+      
+      if(c == '\\' && i < length) {
+        c = template.charAt(i++);
+        literal.append(c == 'n' ? '\n' : c);
+      }
+      else if(c == '{') {
+        int end = template.indexOf('}', i);
+        
+        if(end == -1) {
+          throw new IllegalArgumentException("Missing '}' in template: " + template);
+        }
+        
+        String[] alternatives = template.substring(i, end).split("\\|", -1);
+        int[] altFields = new int[alternatives.length];
+        int[] altLimits = new int[alternatives.length];
+        
+        for(int a = 0; a < alternatives.length; a++) {
+          String name = alternatives[a].trim();
+          int colon = name.indexOf(':');
+          
+          if(colon != -1) {
+            try {
+              altLimits[a] = Integer.parseInt(name.substring(colon + 1).trim());
+            }catch(NumberFormatException nfe) {
+              throw new IllegalArgumentException("Invalid limit in template: " + template);
+            }
+            
+            if(altLimits[a] <= 0) {
+              throw new IllegalArgumentException("Invalid limit in template: " + template);
+            }
+            
+            name = name.substring(0, colon).trim();
+          }
+          
+          altFields[a] = indexOfField(name);
+          
+          if(altFields[a] == -1) {
+            throw new IllegalArgumentException("Unknown placeholder '" + name + "' in template: " + template);
+          }
+        }
+        
+        literals.add(literal.toString());
+        literal.setLength(0);
+        fields.add(altFields);
+        limits.add(altLimits);
+        
+        i = end + 1;
+      }
+      else {
+        literal.append(c);
+      }
+    }
+    
+    literals.add(literal.toString());
+    
+    return new EventTemplate(literals.toArray(new String[literals.size()]), fields.toArray(new int[fields.size()][]), limits.toArray(new int[limits.size()][]));
+  }
+  
+  private static int indexOfField(String name) {
+    for(int i = 0; i < FIELD_NAMES.length; i++) {
+      if(FIELD_NAMES[i].equals(name)) {
+        return i;
+      }
+    }
+    
+    return -1;
+  }
+  
+  /**
+   * Formats the given program with this template.
+   * <p>
+   * @param program The program to format.
+   * @param buffer The buffer to use, its content is replaced.
+   * @return The formatted text or <code>null</code> if the text is empty.
+   */
+  String format(Program program, StringBuilder buffer) {
+    buffer.setLength(0);
+    
+    final int count = mFields.length;
+    
+    if(count == 0) {
+      buffer.append(mLiterals[0]);
+    }
+    
+    boolean last = false;
+    
+    for(int i = 0; i < count; i++) {
+      final int start = buffer.length();
+      
+      if(buffer.length() > 0 || i == 0) {
+        buffer.append(mLiterals[i]);
+      }
+      
+      last = appendPlaceholder(program, i, buffer);
+      
+      if(!last) {
+        buffer.setLength(start);
+      }
+    }
+    
+    if(last) {
+      buffer.append(mLiterals[count]);
+    }
+    
+    return buffer.length() > 0 ? buffer.toString() : null;
+  }
+  
+  private boolean appendPlaceholder(Program program, int index, StringBuilder buffer) {
+    final int[] fields = mFields[index];
+    
+    for(int a = 0; a < fields.length; a++) {
+      String value = getField(program, fields[a]);
+      
+      if(value != null) {
+        value = value.trim();
+        
+        if(value.length() > 0) {
+          final int limit = mLimits[index][a];
+          
+          if(limit > 0 && value.codePointCount(0, value.length()) > limit) {
+            buffer.append(value, 0, value.offsetByCodePoints(0, limit)).append(ELLIPSIS);
+          }
+          else {
+            buffer.append(value);
+          }
+          
+          return true;
+        }
+      }
+    }
+    
+    return false;
+  }
+  
+  private static String getField(Program program, int field) {
+    switch(field) {
+      case FIELD_TITLE: return program.getTitle();
+      case FIELD_CHANNEL: return program.getChannel() != null ? program.getChannel().getChannelName() : null;
+      case FIELD_EPISODE: return program.getEpisodeTitle();
+      case FIELD_SHORT_DESCRIPTION: return program.getShortDescription();
+      case FIELD_DESCRIPTION: return program.getDescription();
+    }
+    
+    return null;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import android.content.ContentValues;
+import android.provider.CalendarContract.Events;
+
+/**
+ * The texts of a calendar event for a program, created
+ * according to the export preferences with
+ * {@link ExportSettings#createEventText(org.tvbrowser.devplugin.Program, StringBuilder)}.
+ */
+final class EventText {
+  private final String mTitle;
+  private final String mLocation;
+  private final String mDescription;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param title The title of the event.
+   * @param location The location of the event or <code>null</code>.
+   * @param description The description of the event or <code>null</code>.
+   */
+  EventText(String title, String location, String description) {
+    mTitle = title;
+    mLocation = location;
+    mDescription = description;
+  }
+  
+  /**
+   * Puts the texts into the given values for an event.
+   * <p>
+   * @param values The values to put the texts into.
+   */
+  void putInto(ContentValues values) {
+    values.put(Events.TITLE, mTitle);
+    values.put(Events.EVENT_LOCATION, mLocation);
+    values.put(Events.DESCRIPTION, mDescription);
+  }
+  
+  /**
+   * @return The title of the event.
+   */
+  String getTitle() {
+    return mTitle;
+  }
+  
+  /**
+   * @return The location of the event or <code>null</code> if the event has no location.
+   */
+  String getLocation() {
+    return mLocation;
+  }
+  
+  /**
+   * @return The description of the event or <code>null</code> if the event has no description.
+   */
+  String getDescription() {
+    return mDescription;
+  }
+}
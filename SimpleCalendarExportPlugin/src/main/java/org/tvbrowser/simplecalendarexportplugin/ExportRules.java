@@ -0,0 +1,490 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * The compiled rules for the automatic export of programs.
+ * <p>
+ * Every line of the rules text is one rule with up to four fields separated
+ * by <code>;</code>, empty or missing fields match every program:
+ * <ol>
+ * <li>Keywords separated by <code>,</code> of which one must be contained in
+ * the title, a keyword starting with <code>=</code> must be the complete title.</li>
+ * <li>Names of channels separated by <code>,</code>.</li>
+ * <li>Days of the week separated by <code>,</code>, either English or German
+ * abbreviations with two letters or ranges like <code>Mo-Fr</code>.</li>
+ * <li>The time window of the start, like <code>20:00-23:30</code>, the window
+ * may span midnight.</li>
+ * </ol>
+ * For example <code>Tatort, =Polizeiruf 110; Das Erste; Su; 20:00-21:00</code>.
+ * A rule needs keywords or channels. A rule starting with <code>!</code>
+ * excludes the programs it matches, even if other rules match them, like
+ * <code>!Tatort; ; Sa</code>. Empty lines and lines starting with
+ * <code>#</code> are ignored. Keywords and channel names are compared
+ * case-insensitive.
+ * <p>
+ * The keywords of all rules are compiled into one {@link KeywordMatcher},
+ * so testing the title of a program takes the same time for any number of
+ * rules. Only the rules with a keyword found in the title are checked for
+ * channel, day and time.
+ * <p>
+ * ExportRules are immutable and can be shared between threads, the
+ * {@link Matcher} to test programs is created for every scan.
+ */
+final class ExportRules {
+  /** The rules of an empty rules text */
+  static final ExportRules NONE = new ExportRules(new String[0], new int[0], new boolean[0], new int[0], new boolean[0], new String[0][], new int[0], new int[0], new int[0]);
+  
+  private static final String[] DAY_NAMES = {"su", "mo", "tu", "we", "th", "fr", "sa"};
+  private static final String[] DAY_NAMES_GERMAN = {"so", "mo", "di", "mi", "do", "fr", "sa"};
+  
+  private final KeywordMatcher mKeywords;
+  /* the rule, the length and if it must be the complete title of every keyword */
+  private final int[] mKeywordRules;
+  private final int[] mKeywordLengths;
+  private final boolean[] mKeywordExact;
+  
+  /* if a rule excludes the programs it matches, and if any rule does */
+  private final boolean[] mExclude;
+  private final boolean mHasExcludes;
+  
+  /* the lower case channel names of every rule, null for all channels */
+  private final String[][] mChannelNames;
+  /* the days of the week of every rule as bits of the Calendar.DAY_OF_WEEK values, 0 for every day */
+  private final int[] mDays;
+  /* the time window of every rule in minutes of the day, -1 for the whole day */
+  private final int[] mFromMinute;
+  private final int[] mToMinute;
+  
+  /* the rules without keywords, checked for every program */
+  private final int[] mRulesWithoutKeywords;
+  
+  private ExportRules(String[] keywords, int[] keywordRules, boolean[] keywordExact, int[] rulesWithoutKeywords, boolean[] exclude, String[][] channelNames, int[] days, int[] fromMinute, int[] toMinute) {
+    mKeywords = new KeywordMatcher(keywords);
+    mKeywordRules = keywordRules;
+    mKeywordExact = keywordExact;
+    mKeywordLengths = new int[keywords.length];
+    
+    for(int i = 0; i < keywords.length; i++) {
+      mKeywordLengths[i] = keywords[i].length();
+    }
+    
+    mRulesWithoutKeywords = rulesWithoutKeywords;
+    mExclude = exclude;
+    
+    boolean hasExcludes = false;
+    
+    for(boolean ruleExcludes : exclude) {
+      hasExcludes |= ruleExcludes;
+    }
+    
+    mHasExcludes = hasExcludes;
+    mChannelNames = channelNames;
+    mDays = days;
+    mFromMinute = fromMinute;
+    mToMinute = toMinute;
+  }
+  
+  /**
+   * Compiles the given rules text.
+   * <p>
+   * @param text The rules, one per line.
+   * @return The compiled rules.
+   * @throws IllegalArgumentException If a rule is not valid.
+   */
+  static ExportRules parse(String text) {
+    final ArrayList<String> keywords = new ArrayList<String>();
+    final ArrayList<Integer> keywordRules = new ArrayList<Integer>();
+    final ArrayList<Boolean> keywordExact = new ArrayList<Boolean>();
+    final ArrayList<Integer> rulesWithoutKeywords = new ArrayList<Integer>();
+    final ArrayList<Boolean> excludes = new ArrayList<Boolean>();
+    final ArrayList<String[]> channelNames = new ArrayList<String[]>();
+    /* the day bits, the start and the end minute of every rule */
+    final ArrayList<int[]> schedules = new ArrayList<int[]>();
+    
+    for(String line : text.split("\n")) {
+      line = line.trim();
+      
+      if(line.length() == 0 || line.startsWith("#")) {
+        continue;
+      }
+      
+      final boolean exclude = line.startsWith("!");
+      
+      if(exclude) {
+        line = line.substring(1).trim();
+      }
+      
+      final String[] fields = line.split(";", -1);
+      
+      if(fields.length > 4) {
+        throw new IllegalArgumentException("Too many fields in rule: " + line);
+      }
+      
+      final int rule = channelNames.size();
+      final String[] ruleKeywords = split(fields[0]);
+      final String[] ruleChannels = fields.length > 1 ? split(fields[1]) : new String[0];
+      
+      if(ruleKeywords.length == 0 && ruleChannels.length == 0) {
+        throw new IllegalArgumentException("Rule without keywords and channels: " + line);
+      }
+      
+      for(String keyword : ruleKeywords) {
+        final boolean exact = keyword.startsWith("=");
+        
+        if(exact) {
+          keyword = keyword.substring(1).trim();
+          
+          if(keyword.length() == 0) {
+            throw new IllegalArgumentException("Empty title in rule: " + line);
+          }
+        }
+        
+        keywords.add(keyword);
+        keywordRules.add(Integer.valueOf(rule));
+        keywordExact.add(Boolean.valueOf(exact));
+      }
+      
+      if(ruleKeywords.length == 0) {
+        rulesWithoutKeywords.add(Integer.valueOf(rule));
+      }
+      
+      for(int i = 0; i < ruleChannels.length; i++) {
+        ruleChannels[i] = ruleChannels[i].toLowerCase(Locale.ROOT);
+      }
+      
+      excludes.add(Boolean.valueOf(exclude));
+      channelNames.add(ruleChannels.length > 0 ? ruleChannels : null);
+      schedules.add(new int[] {fields.length > 2 ? parseDays(fields[2], line) : 0, -1, -1});
+      
+      if(fields.length > 3 && fields[3].trim().length() > 0) {
+        parseTimeWindow(fields[3], line, schedules.get(rule));
+      }
+    }
+    
+    if(channelNames.isEmpty()) {
+      return NONE;
+    }
+    
+    final int[] dayBits = new int[schedules.size()];
+    final int[] fromMinute = new int[schedules.size()];
+    final int[] toMinute = new int[schedules.size()];
+    
+    for(int i = 0; i < dayBits.length; i++) {
+      dayBits[i] = schedules.get(i)[0];
+      fromMinute[i] = schedules.get(i)[1];
+      toMinute[i] = schedules.get(i)[2];
+    }
+    
+    final int[] rules = new int[keywordRules.size()];
+    final boolean[] exact = new boolean[keywordExact.size()];
+    
+    for(int i = 0; i < rules.length; i++) {
+      rules[i] = keywordRules.get(i).intValue();
+      exact[i] = keywordExact.get(i).booleanValue();
+    }
+    
+    final int[] withoutKeywords = new int[rulesWithoutKeywords.size()];
+    
+    for(int i = 0; i < withoutKeywords.length; i++) {
+      withoutKeywords[i] = rulesWithoutKeywords.get(i).intValue();
+    }
+    
+    final boolean[] exclude = new boolean[excludes.size()];
+    
+    for(int i = 0; i < exclude.length; i++) {
+      exclude[i] = excludes.get(i).booleanValue();
+    }
+    
+    return new ExportRules(keywords.toArray(new String[keywords.size()]), rules, exact, withoutKeywords, exclude, channelNames.toArray(new String[channelNames.size()][]), dayBits, fromMinute, toMinute);
+  }
+  
+  /* the trimmed not empty values of a field */
+  private static String[] split(String field) {
+    final ArrayList<String> values = new ArrayList<String>();
+    
+    for(String value : field.split(",")) {
+      value = value.trim();
+      
+      if(value.length() > 0) {
+        values.add(value);
+      }
+    }
+    
+    return values.toArray(new String[values.size()]);
+  }
+  
+  private static int parseDays(String field, String line) {
+    int bits = 0;
+    
+    for(String value : split(field)) {
+      final int dash = value.indexOf('-');
+      
+      if(dash == -1) {
+        bits |= 1 << parseDay(value, line);
+      }
+      else {
+        final int to = parseDay(value.substring(dash + 1), line);
+        int day = parseDay(value.substring(0, dash), line);
+        
+        /* ranges may wrap around the end of the week, like Fr-Mo */
+        while(true) {
+          bits |= 1 << day;
+          
+          if(day == to) {
+            break;
+          }
+          
+          day = day == Calendar.SATURDAY ? Calendar.SUNDAY : day + 1;
+        }
+      }
+    }
+    
+    return bits;
+  }
+  
+  /* the Calendar.DAY_OF_WEEK value of a day name */
+  private static int parseDay(String name, String line) {
+    name = name.trim().toLowerCase(Locale.ROOT);
+    
+    for(int i = 0; i < DAY_NAMES.length; i++) {
+      if(name.equals(DAY_NAMES[i]) || name.equals(DAY_NAMES_GERMAN[i])) {
+        return Calendar.SUNDAY + i;
+      }
+    }
+    
+    throw new IllegalArgumentException("Unknown day '" + name + "' in rule: " + line);
+  }
+  
+  /* stores the start and end minute of the window at index 1 and 2 of the target */
+  private static void parseTimeWindow(String field, String line, int[] target) {
+    final String[] times = field.split("-");
+    
+    if(times.length != 2) {
+      throw new IllegalArgumentException("Invalid time window in rule: " + line);
+    }
+    
+    target[1] = parseTime(times[0], line);
+    target[2] = parseTime(times[1], line);
+  }
+  
+  private static int parseTime(String time, String line) {
+    final String[] parts = time.trim().split(":");
+    
+    try {
+      final int hour = Integer.parseInt(parts[0].trim());
+      final int minute = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 0;
+      
+      if(parts.length <= 2 && hour >= 0 && hour <= 24 && minute >= 0 && minute < 60 && hour * 60 + minute <= 24 * 60) {
+        return hour * 60 + minute;
+      }
+    }catch(NumberFormatException nfe) {}
+    
+    throw new IllegalArgumentException("Invalid time '" + time.trim() + "' in rule: " + line);
+  }
+  
+  /**
+   * Gets the number of rules.
+   * <p>
+   * @return The number of rules.
+   */
+  int size() {
+    return mChannelNames.length;
+  }
+  
+  /**
+   * Creates a matcher to test programs of the given channels.
+   * <p>
+   * @param channels The channels the tested programs belong to.
+   * @return The matcher for the programs.
+   */
+  Matcher createMatcher(List<Channel> channels) {
+    return new Matcher(channels);
+  }
+  
+  /**
+   * Tests programs against the rules. The channel names of the rules are
+   * resolved at creation, a matcher is used for one scan by one thread.
+   */
+  final class Matcher implements KeywordMatcher.MatchHandler {
+    /* the ids of the channels of every rule, null for all channels */
+    private final int[][] mChannelIds;
+    private final int[] mScanChannelIds;
+    
+    /* a rule was already checked for the current program if its stamp is the current one */
+    private final int[] mCheckedStamps;
+    private int mStamp;
+    
+    private final Calendar mCalendar = Calendar.getInstance();
+    private Program mProgram;
+    /* if an include and if an exclude rule matched the current program */
+    private boolean mIncluded;
+    private boolean mExcluded;
+    private int mProgramDay;
+    private int mProgramMinute;
+    
+    private Matcher(List<Channel> channels) {
+      mChannelIds = new int[mChannelNames.length][];
+      mCheckedStamps = new int[mChannelNames.length];
+      
+      final boolean[] scan = new boolean[channels.size()];
+      
+      for(int rule = 0; rule < mChannelNames.length; rule++) {
+        if(mChannelNames[rule] == null) {
+          /* only the channels of include rules have programs to export */
+          if(!mExclude[rule]) {
+            Arrays.fill(scan, true);
+          }
+          
+          continue;
+        }
+        
+        final int[] ids = new int[channels.size()];
+        int count = 0;
+        
+        for(int i = 0; i < channels.size(); i++) {
+          final String name = channels.get(i).getChannelName();
+          
+          if(name != null && Arrays.asList(mChannelNames[rule]).contains(name.toLowerCase(Locale.ROOT))) {
+            ids[count++] = channels.get(i).getChannelId();
+            scan[i] |= !mExclude[rule];
+          }
+        }
+        
+        mChannelIds[rule] = Arrays.copyOf(ids, count);
+        Arrays.sort(mChannelIds[rule]);
+      }
+      
+      final int[] scanIds = new int[channels.size()];
+      int count = 0;
+      
+      for(int i = 0; i < channels.size(); i++) {
+        if(scan[i]) {
+          scanIds[count++] = channels.get(i).getChannelId();
+        }
+      }
+      
+      mScanChannelIds = Arrays.copyOf(scanIds, count);
+    }
+    
+    /**
+     * Gets the channels with programs any rule may match.
+     * <p>
+     * @return The ids of the channels to scan.
+     */
+    int[] getChannelIds() {
+      return mScanChannelIds;
+    }
+    
+    /**
+     * Tests if any include rule and no exclude rule matches the given program.
+     * <p>
+     * @param program The program to test.
+     * @return <code>true</code> if the program should be exported, <code>false</code> otherwise.
+     */
+    boolean matches(Program program) {
+      mProgram = program;
+      mProgramDay = -1;
+      mIncluded = false;
+      mExcluded = false;
+      
+      if(++mStamp == 0) {
+        Arrays.fill(mCheckedStamps, 0);
+        mStamp = 1;
+      }
+      
+      for(int rule : mRulesWithoutKeywords) {
+        if(check(rule)) {
+          return mIncluded && !mExcluded;
+        }
+      }
+      
+      if(program.getTitle() != null) {
+        mKeywords.find(program.getTitle(), this);
+      }
+      
+      return mIncluded && !mExcluded;
+    }
+    
+    @Override
+    public boolean onMatch(int keyword, int end) {
+      final int rule = mKeywordRules[keyword];
+      
+      if(mCheckedStamps[rule] == mStamp || (mKeywordExact[keyword] && (end != mKeywordLengths[keyword] || end != mProgram.getTitle().length()))) {
+        return false;
+      }
+      
+      mCheckedStamps[rule] = mStamp;
+      
+      return check(rule);
+    }
+    
+    /* records if the rule matches, true if the result of the current program is known */
+    private boolean check(int rule) {
+      if(accepts(rule)) {
+        if(mExclude[rule]) {
+          mExcluded = true;
+        }
+        else {
+          mIncluded = true;
+        }
+      }
+      
+      /* an exclude rule may still match after an include rule */
+      return mExcluded || (mIncluded && !mHasExcludes);
+    }
+    
+    /* tests channel, day and time of the current program against the given rule */
+    private boolean accepts(int rule) {
+      if(mChannelIds[rule] != null && Arrays.binarySearch(mChannelIds[rule], mProgram.getChannelId()) < 0) {
+        return false;
+      }
+      
+      if(mDays[rule] == 0 && mFromMinute[rule] == -1) {
+        return true;
+      }
+      
+      if(mProgramDay == -1) {
+        mCalendar.setTimeInMillis(mProgram.getStartTimeInUTC());
+        mProgramDay = mCalendar.get(Calendar.DAY_OF_WEEK);
+        mProgramMinute = mCalendar.get(Calendar.HOUR_OF_DAY) * 60 + mCalendar.get(Calendar.MINUTE);
+      }
+      
+      if(mDays[rule] != 0 && (mDays[rule] & (1 << mProgramDay)) == 0) {
+        return false;
+      }
+      
+      final int from = mFromMinute[rule];
+      final int to = mToMinute[rule];
+      
+      if(from == -1) {
+        return true;
+      }
+      
+      return from <= to ? mProgramMinute >= from && mProgramMinute < to : mProgramMinute >= from || mProgramMinute < to;
+    }
+  }
+}
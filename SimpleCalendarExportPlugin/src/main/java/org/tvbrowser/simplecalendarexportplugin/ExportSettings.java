@@ -0,0 +1,174 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * An immutable snapshot of the export preferences.
+ * <p>
+ * A snapshot is created from the preferences once and then shared between
+ * threads without locking. If a preference changes a new snapshot is created
+ * and replaces the old one.
+ */
+final class ExportSettings {
+  private final EventTemplate mTitleTemplate;
+  private final EventTemplate mLocationTemplate;
+  private final EventTemplate mDescriptionTemplate;
+  private final boolean mInsertDirectly;
+  private final boolean mDeleteOnUnmark;
+  private final long mCalendarId;
+  private final int mBatchSize;
+  private final ExportRules mExportRules;
+  
+  private ExportSettings(EventTemplate titleTemplate, EventTemplate locationTemplate, EventTemplate descriptionTemplate, boolean insertDirectly, boolean deleteOnUnmark, long calendarId, int batchSize, ExportRules exportRules) {
+    mTitleTemplate = titleTemplate;
+    mLocationTemplate = locationTemplate;
+    mDescriptionTemplate = descriptionTemplate;
+    mInsertDirectly = insertDirectly;
+    mDeleteOnUnmark = deleteOnUnmark;
+    mCalendarId = calendarId;
+    mBatchSize = batchSize;
+    mExportRules = exportRules;
+  }
+  
+  /**
+   * Reads the export settings from the given preferences.
+   * <p>
+   * @param context The context to read the preference keys and defaults from.
+   * @param pref The preferences with the export settings.
+   * @return The snapshot of the current export settings.
+   */
+  static ExportSettings read(Context context, SharedPreferences pref) {
+    final Resources res = context.getResources();
+    
+    /* The defaults of the templates are created from the simple settings */
+    final boolean fullDescription = pref.getString(context.getString(R.string.PREF_CALENDAR_EXPORT_DESCRIPTION_TYPE), context.getString(R.string.pref_export_description_type_default)).equals(res.getStringArray(R.array.pref_simple_string_value_array2)[1]);
+    final boolean channelInTitle = pref.getBoolean(context.getString(R.string.PREF_CALENDAR_EXPORT_TITLE_CONTAINS_CHANNEL), res.getBoolean(R.bool.pref_calendar_export_title_contains_channel_default));
+    final boolean channelFirstInTitle = pref.getString(context.getString(R.string.PREF_CALENDAR_EXPORT_TITLE_CHANNEL_POSITION), context.getString(R.string.pref_calendar_export_title_channel_position_default)).equals("0");
+    final boolean channelInLocation = pref.getBoolean(context.getString(R.string.PREF_CALENDAR_EXPORT_LOCATION_CONTAINS_CHANNEL), res.getBoolean(R.bool.pref_calendar_export_location_contains_channel_default));
+    
+    String title = "{title}";
+    
+    if(channelInTitle) {
+      title = channelFirstInTitle ? "{channel}: {title}" : "{title} ({channel})";
+    }
+    
+    String location = !channelInTitle || channelInLocation ? "{channel}" : "";
+    String description = fullDescription ? "{episode}\\n\\n{desc|short}" : "{episode}\\n\\n{short|desc:160}";
+    
+    long calendarId = -1;
+    String value = pref.getString(context.getString(R.string.PREF_CALENDAR_EXPORT_CALENDAR), null);
+    
+    if(value != null && value.length() > 0) {
+      try {
+        calendarId = Long.parseLong(value);
+      }catch(NumberFormatException nfe) {}
+    }
+    
+    return new ExportSettings(compile(pref.getString(context.getString(R.string.PREF_CALENDAR_EXPORT_TEMPLATE_TITLE), null), title),
+        compile(pref.getString(context.getString(R.string.PREF_CALENDAR_EXPORT_TEMPLATE_LOCATION), null), location),
+        compile(pref.getString(context.getString(R.string.PREF_CALENDAR_EXPORT_TEMPLATE_DESCRIPTION), null), description),
+        pref.getBoolean(context.getString(R.string.PREF_CALENDAR_EXPORT_INSERT_DIRECTLY), res.getBoolean(R.bool.pref_calendar_export_insert_directly_default)),
+        pref.getBoolean(context.getString(R.string.PREF_CALENDAR_EXPORT_DELETE_ON_UNMARK), res.getBoolean(R.bool.pref_calendar_export_delete_on_unmark_default)),
+        calendarId,
+        res.getInteger(R.integer.calendar_export_batch_size),
+        parseRules(pref.getString(context.getString(R.string.PREF_AUTO_EXPORT_RULES), null)));
+  }
+  
+  /**
+   * Compiles the export rules of the user, no rules if the
+   * user didn't set rules or the rules aren't valid.
+   */
+  private static ExportRules parseRules(String rules) {
+    if(rules != null && rules.trim().length() > 0) {
+      try {
+        return ExportRules.parse(rules);
+      }catch(IllegalArgumentException iae) {
+        iae.printStackTrace();
+      }
+    }
+    
+    return ExportRules.NONE;
+  }
+  
+  /**
+   * Compiles the template of the user or the default template
+   * if the user didn't set a template or the template isn't valid.
+   */
+  private static EventTemplate compile(String template, String defaultTemplate) {
+    if(template != null && template.trim().length() > 0) {
+      try {
+        return EventTemplate.compile(template);
+      }catch(IllegalArgumentException iae) {
+        iae.printStackTrace();
+      }
+    }
+    
+    return EventTemplate.compile(defaultTemplate);
+  }
+  
+  /**
+   * Creates the event texts for the given program.
+   * <p>
+   * @param program The program to create the texts for.
+   * @param buffer The buffer to format the texts in, can be reused for the next program.
+   * @return The texts of the calendar event.
+   */
+  EventText createEventText(Program program, StringBuilder buffer) {
+    return new EventText(mTitleTemplate.format(program, buffer), mLocationTemplate.format(program, buffer), mDescriptionTemplate.format(program, buffer));
+  }
+  
+  /**
+   * @return If events should be inserted into the calendar without user interaction.
+   */
+  boolean isInsertDirectly() {
+    return mInsertDirectly;
+  }
+  
+  /**
+   * @return If the calendar event of a program should be deleted when the marking is removed.
+   */
+  boolean isDeleteOnUnmark() {
+    return mDeleteOnUnmark;
+  }
+  
+  /**
+   * @return The id of the calendar to export to or <code>-1</code> if no calendar was selected.
+   */
+  long getCalendarId() {
+    return mCalendarId;
+  }
+  
+  /**
+   * @return The number of events to insert with one batch operation.
+   */
+  int getBatchSize() {
+    return mBatchSize;
+  }
+  
+  /**
+   * @return The rules for the automatic export of programs.
+   */
+  ExportRules getExportRules() {
+    return mExportRules;
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import org.tvbrowser.devplugin.Program;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Exports programs as iCalendar file according to RFC 5545, content
+ * lines are folded after 75 octets.
+ * <p>
+ * The summary, location and description of the events are the texts
+ * of the calendar events, so they follow the export preferences.
+ */
+final class ICalendarProgramExporter extends ProgramExporter {
+  private static final int MAX_LINE_OCTETS = 75;
+  
+  private final Calendar mUtc = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+  private final StringBuilder mLine = new StringBuilder(256);
+  private final CalendarBatchExporter.EventTextFactory mEventTexts;
+  
+  private long mTimestamp;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param out The stream to write the export to.
+   * @param eventTexts The factory for the texts of the events.
+   */
+  ICalendarProgramExporter(OutputStream out, CalendarBatchExporter.EventTextFactory eventTexts) {
+    super(out);
+    mEventTexts = eventTexts;
+  }
+  
+  @Override
+  void begin() throws IOException {
+    mTimestamp = System.currentTimeMillis();
+    
+    line().append("BEGIN:VCALENDAR");
+    endLine();
+    line().append("VERSION:2.0");
+    endLine();
+    line().append("PRODID:-//TV-Browser//SimpleCalendarExportPlugin//EN");
+    endLine();
+    
+    flushBuffer();
+  }
+  
+  @Override
+  void write(Program program) throws IOException {
+    final EventText text = mEventTexts.createEventText(program);
+    
+    line().append("BEGIN:VEVENT");
+    endLine();
+    
+    line().append("UID:").append(getUid(program.getId()));
+    endLine();
+    
+    appendTime(line().append("DTSTAMP:"), mTimestamp);
+    endLine();
+    appendTime(line().append("DTSTART:"), program.getStartTimeInUTC());
+    endLine();
+    appendTime(line().append("DTEND:"), program.getEndTimeInUTC());
+    endLine();
+    
+    appendText(line().append("SUMMARY:"), text.getTitle());
+    endLine();
+    
+    if(text.getLocation() != null) {
+      appendText(line().append("LOCATION:"), text.getLocation());
+      endLine();
+    }
+    
+    if(text.getDescription() != null) {
+      appendText(line().append("DESCRIPTION:"), text.getDescription());
+      endLine();
+    }
+    
+    line().append("END:VEVENT");
+    endLine();
+    
+    flushBuffer();
+  }
+  
+  @Override
+  void end() throws IOException {
+    line().append("END:VCALENDAR");
+    endLine();
+    
+    super.end();
+  }
+  
+  private StringBuilder line() {
+    mLine.setLength(0);
+    return mLine;
+  }
+  
+  /* Folds the current content line into the output buffer */
+  private void endLine() {
+    int octets = 0;
+    
+    for(int i = 0; i < mLine.length(); i++) {
+      final char c = mLine.charAt(i);
+      final boolean pair = Character.isHighSurrogate(c) && i + 1 < mLine.length() && Character.isLowSurrogate(mLine.charAt(i + 1));
+      
+      final int length = pair ? 4 : c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+      
+      if(octets + length > MAX_LINE_OCTETS) {
+        /* continuation lines start with a space that counts as octet */
+        mBuffer.append("\r\n ");
+        octets = 1;
+      }
+      
+      mBuffer.append(c);
+      
+      if(pair) {
+        mBuffer.append(mLine.charAt(++i));
+      }
+      
+      octets += length;
+    }
+    
+    mBuffer.append("\r\n");
+  }
+  
+  private void appendTime(StringBuilder target, long time) {
+    mUtc.setTimeInMillis(time);
+    
+    appendDigits(target, mUtc.get(Calendar.YEAR), 4);
+    appendDigits(target, mUtc.get(Calendar.MONTH) + 1, 2);
+    appendDigits(target, mUtc.get(Calendar.DAY_OF_MONTH), 2);
+    target.append('T');
+    appendDigits(target, mUtc.get(Calendar.HOUR_OF_DAY), 2);
+    appendDigits(target, mUtc.get(Calendar.MINUTE), 2);
+    appendDigits(target, mUtc.get(Calendar.SECOND), 2);
+    target.append('Z');
+  }
+  
+  private static void appendDigits(StringBuilder target, int value, int digits) {
+    for(int divisor = digits == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+      target.append((char)('0' + (value / divisor) % 10));
+    }
+  }
+  
+  private static void appendText(StringBuilder target, CharSequence text) {
+    if(text == null) {
+      return;
+    }
+    
+    for(int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      
+      switch(c) {
+        case '\\': target.append("\\\\"); break;
+        case ';': target.append("\\;"); break;
+        case ',': target.append("\\,"); break;
+        case '\n': target.append("\\n"); break;
+        case '\r': break;
+        default: target.append(c);
+      }
+    }
+  }
+}
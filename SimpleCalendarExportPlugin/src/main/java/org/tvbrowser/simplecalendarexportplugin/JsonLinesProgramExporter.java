@@ -0,0 +1,86 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Exports programs as JSON Lines, one JSON object per program and line.
+ */
+final class JsonLinesProgramExporter extends ProgramExporter {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  
+  JsonLinesProgramExporter(OutputStream out) {
+    super(out);
+  }
+  
+  @Override
+  void write(Program program) throws IOException {
+    final Channel channel = program.getChannel();
+    
+    mBuffer.append("{\"id\":").append(program.getId());
+    mBuffer.append(",\"start\":").append(program.getStartTimeInUTC());
+    mBuffer.append(",\"end\":").append(program.getEndTimeInUTC());
+    
+    appendString("title", program.getTitle());
+    appendString("episodeTitle", program.getEpisodeTitle());
+    appendString("shortDescription", program.getShortDescription());
+    appendString("description", program.getDescription());
+    
+    if(channel != null) {
+      mBuffer.append(",\"channelId\":").append(channel.getChannelId());
+      appendString("channel", channel.getChannelName());
+    }
+    
+    mBuffer.append("}\n");
+    
+    flushBuffer();
+  }
+  
+  private void appendString(String name, String value) {
+    if(value == null) {
+      return;
+    }
+    
+    mBuffer.append(",\"").append(name).append("\":\"");
+    
+    for(int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      
+      switch(c) {
+        case '"': mBuffer.append("\\\""); break;
+        case '\\': mBuffer.append("\\\\"); break;
+        case '\n': mBuffer.append("\\n"); break;
+        case '\r': mBuffer.append("\\r"); break;
+        case '\t': mBuffer.append("\\t"); break;
+        default:
+          if(c < 0x20) {
+            mBuffer.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+          }
+          else {
+            mBuffer.append(c);
+          }
+      }
+    }
+    
+    mBuffer.append('"');
+  }
+}
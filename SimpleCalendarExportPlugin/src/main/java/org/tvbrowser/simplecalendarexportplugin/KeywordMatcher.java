@@ -0,0 +1,239 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds the occurrences of many keywords in a text with one pass over
+ * the text, using the automaton of Aho and Corasick.
+ * <p>
+ * The time to search a text only depends on the length of the text and
+ * the number of occurrences, not on the number of keywords. Keywords and
+ * text are compared case-insensitive.
+ * <p>
+ * The states of the automaton are numbered in breadth first order and
+ * stored in flat arrays, the transitions of a state are sorted by character.
+ * The transitions of the start state are also kept in a table for ASCII
+ * characters, since most characters of a text don't continue a keyword
+ * and are looked up there.
+ * <p>
+ * A KeywordMatcher is immutable and can be used from several threads.
+ */
+final class KeywordMatcher {
+  /**
+   * Receives the occurrences of the keywords.
+   */
+  interface MatchHandler {
+    /**
+     * Called for every occurrence of a keyword in the text.
+     * <p>
+     * @param keyword The index of the keyword in the array given at creation.
+     * @param end The index in the text after the last character of the occurrence.
+     * @return <code>true</code> to stop the search, <code>false</code> to continue.
+     */
+    boolean onMatch(int keyword, int end);
+  }
+  
+  private static final int ROOT_TABLE_SIZE = 128;
+  
+  /* the transitions of state s are mEdgeChars/mEdgeTargets[mEdgeStart[s], mEdgeStart[s+1]) */
+  private final int[] mEdgeStart;
+  private final char[] mEdgeChars;
+  private final int[] mEdgeTargets;
+  
+  /* the transitions of the start state for ASCII characters, 0 for none */
+  private final int[] mRootTable;
+  
+  /* the state to continue with if a state has no transition for a character */
+  private final int[] mFail;
+  
+  /* the keywords that end in state s are mOutputs[mOutputStart[s], mOutputStart[s+1]) */
+  private final int[] mOutputStart;
+  private final int[] mOutputs;
+  
+  /**
+   * Creates the automaton for the given keywords.
+   * <p>
+   * @param keywords The keywords to find.
+   * @throws IllegalArgumentException If a keyword is empty.
+   */
+  KeywordMatcher(String[] keywords) {
+    /* the trie of the keywords, with the states numbered in insertion order */
+    final ArrayList<TreeMap<Character, Integer>> children = new ArrayList<TreeMap<Character, Integer>>();
+    final ArrayList<int[]> ends = new ArrayList<int[]>();
+    
+    children.add(new TreeMap<Character, Integer>());
+    ends.add(new int[0]);
+    
+    for(int k = 0; k < keywords.length; k++) {
+      final String keyword = keywords[k];
+      
+      if(keyword.length() == 0) {
+        throw new IllegalArgumentException("Empty keyword");
+      }
+      
+      int state = 0;
+      
+      for(int i = 0; i < keyword.length(); i++) {
+        final Character c = Character.valueOf(Character.toLowerCase(keyword.charAt(i)));
+        Integer next = children.get(state).get(c);
+        
+        if(next == null) {
+          next = Integer.valueOf(children.size());
+          children.get(state).put(c, next);
+          children.add(new TreeMap<Character, Integer>());
+          ends.add(new int[0]);
+        }
+        
+        state = next.intValue();
+      }
+      
+      final int[] stateEnds = ends.get(state);
+      final int[] added = Arrays.copyOf(stateEnds, stateEnds.length + 1);
+      added[stateEnds.length] = k;
+      ends.set(state, added);
+    }
+    
+    final int states = children.size();
+    
+    /* renumber the states in breadth first order */
+    final int[] order = new int[states];
+    final int[] number = new int[states];
+    int tail = 1;
+    
+    for(int head = 0; head < tail; head++) {
+      for(Integer child : children.get(order[head]).values()) {
+        number[child.intValue()] = tail;
+        order[tail++] = child.intValue();
+      }
+    }
+    
+    mEdgeStart = new int[states + 1];
+    mEdgeChars = new char[states - 1];
+    mEdgeTargets = new int[states - 1];
+    
+    int edge = 0;
+    
+    for(int state = 0; state < states; state++) {
+      mEdgeStart[state] = edge;
+      
+      for(Map.Entry<Character, Integer> child : children.get(order[state]).entrySet()) {
+        mEdgeChars[edge] = child.getKey().charValue();
+        mEdgeTargets[edge++] = number[child.getValue().intValue()];
+      }
+    }
+    
+    mEdgeStart[states] = edge;
+    
+    mRootTable = new int[ROOT_TABLE_SIZE];
+    
+    for(int e = mEdgeStart[0]; e < mEdgeStart[1]; e++) {
+      if(mEdgeChars[e] < ROOT_TABLE_SIZE) {
+        mRootTable[mEdgeChars[e]] = mEdgeTargets[e];
+      }
+    }
+    
+    /* the failure state of a state is always before it in breadth first order */
+    mFail = new int[states];
+    
+    final int[][] outputs = new int[states][];
+    outputs[0] = ends.get(0);
+    
+    for(int state = 0; state < states; state++) {
+      for(int e = mEdgeStart[state]; e < mEdgeStart[state + 1]; e++) {
+        final int target = mEdgeTargets[e];
+        
+        if(state != 0) {
+          int fail = mFail[state];
+          int next;
+          
+          while((next = getTransition(fail, mEdgeChars[e])) == -1 && fail != 0) {
+            fail = mFail[fail];
+          }
+          
+          mFail[target] = next != -1 ? next : 0;
+        }
+        
+        /* a state also ends all keywords of its failure state */
+        final int[] own = ends.get(order[target]);
+        final int[] inherited = outputs[mFail[target]];
+        
+        outputs[target] = Arrays.copyOf(own, own.length + inherited.length);
+        System.arraycopy(inherited, 0, outputs[target], own.length, inherited.length);
+      }
+    }
+    
+    mOutputStart = new int[states + 1];
+    
+    for(int state = 0; state < states; state++) {
+      mOutputStart[state + 1] = mOutputStart[state] + outputs[state].length;
+    }
+    
+    mOutputs = new int[mOutputStart[states]];
+    
+    for(int state = 0; state < states; state++) {
+      System.arraycopy(outputs[state], 0, mOutputs, mOutputStart[state], outputs[state].length);
+    }
+  }
+  
+  /* the state reached from the given one with the given character or -1 */
+  private int getTransition(int state, char c) {
+    if(state == 0 && c < ROOT_TABLE_SIZE) {
+      final int target = mRootTable[c];
+      return target != 0 ? target : -1;
+    }
+    
+    final int index = Arrays.binarySearch(mEdgeChars, mEdgeStart[state], mEdgeStart[state + 1], c);
+    
+    return index >= 0 ? mEdgeTargets[index] : -1;
+  }
+  
+  /**
+   * Searches the given text for the keywords.
+   * <p>
+   * @param text The text to search.
+   * @param handler The handler to inform about the occurrences.
+   * @return <code>true</code> if the handler stopped the search, <code>false</code> otherwise.
+   */
+  boolean find(CharSequence text, MatchHandler handler) {
+    final int length = text.length();
+    int state = 0;
+    
+    for(int i = 0; i < length; i++) {
+      final char c = Character.toLowerCase(text.charAt(i));
+      int next;
+      
+      while((next = getTransition(state, c)) == -1 && state != 0) {
+        state = mFail[state];
+      }
+      
+      state = next != -1 ? next : 0;
+      
+      for(int o = mOutputStart[state]; o < mOutputStart[state + 1]; o++) {
+        if(handler.onMatch(mOutputs[o], i + 1)) {
+          return true;
+        }
+      }
+    }
+    
+    return false;
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash set for primitive long values.
+ * <p>
+ * Lookups don't allocate any objects, so the set can be queried
+ * for every program TV-Browser draws without creating garbage.
+ * Linear probing with backward shift deletion is used, so no
+ * tombstones are necessary.
+ */
+final class LongHashSet {
+  /* The value that marks an empty slot, stored separately if added */
+  private static final long EMPTY = 0;
+  
+  private static final int MIN_CAPACITY = 16;
+  
+  private long[] mKeys;
+  private int mMask;
+  private int mSize;
+  private int mResizeAt;
+  private boolean mContainsEmpty;
+  
+  /**
+   * Creates an empty LongHashSet.
+   */
+  LongHashSet() {
+    this(MIN_CAPACITY);
+  }
+  
+  /**
+   * Creates an empty LongHashSet that can hold the given number
+   * of values without resizing.
+   * <p>
+   * @param expectedSize The expected number of values.
+   */
+  LongHashSet(int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+  
+  /**
+   * Creates a LongHashSet with the same values as the given one.
+   * <p>
+   * @param source The set to copy.
+   */
+  LongHashSet(LongHashSet source) {
+    mKeys = source.mKeys.clone();
+    mMask = source.mMask;
+    mSize = source.mSize;
+    mResizeAt = source.mResizeAt;
+    mContainsEmpty = source.mContainsEmpty;
+  }
+  
+  private static int capacityFor(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    
+    /* keep the load factor at or below 0.5 */
+    while(capacity < expectedSize * 2L && capacity < (1 << 30)) {
+      capacity <<= 1;
+    }
+    
+    return capacity;
+  }
+  
+  private void allocate(int capacity) {
+    mKeys = new long[capacity];
+    mMask = capacity - 1;
+    mResizeAt = capacity / 2;
+  }
+  
+  private static int hash(long value) {
+    long h = value * 0x9E3779B97F4A7C15L;
+    return (int)(h ^ (h >>> 32));
+  }
+  
+  /**
+   * Gets if the given value is contained in this set.
+   * <p>
+   * @param value The value to check.
+   * @return <code>true</code> if the value is contained, <code>false</code> otherwise.
+   */
+  boolean contains(long value) {
+    if(value == EMPTY) {
+      return mContainsEmpty;
+    }
+    
+    final long[] keys = mKeys;
+    final int mask = mMask;
+    
+    int index = hash(value) & mask;
+    long key;
+    
+    while((key = keys[index]) != EMPTY) {
+      if(key == value) {
+        return true;
+      }
+      
+      index = (index + 1) & mask;
+    }
+    
+    return false;
+  }
+  
+  /**
+   * Adds the given value to this set.
+   * <p>
+   * @param value The value to add.
+   * @return <code>true</code> if the value was added, <code>false</code> if it was already contained.
+   */
+  boolean add(long value) {
+    if(value == EMPTY) {
+      if(mContainsEmpty) {
+        return false;
+      }
+      
+      mContainsEmpty = true;
+      mSize++;
+      
+      return true;
+    }
+    
+    int index = hash(value) & mMask;
+    long key;
+    
+    while((key = mKeys[index]) != EMPTY) {
+      if(key == value) {
+        return false;
+      }
+      
+      index = (index + 1) & mMask;
+    }
+    
+    mKeys[index] = value;
+    
+    if(++mSize > mResizeAt) {
+      rehash(mKeys.length << 1);
+    }
+    
+    return true;
+  }
+  
+  /**
+   * Adds all given values to this set.
+   * <p>
+   * @param values The values to add.
+   */
+  void addAll(long[] values) {
+    ensureCapacity(mSize + values.length);
+    
+    for(long value : values) {
+      add(value);
+    }
+  }
+  
+  /**
+   * Removes the given value from this set.
+   * <p>
+   * @param value The value to remove.
+   * @return <code>true</code> if the value was removed, <code>false</code> if it wasn't contained.
+   */
+  boolean remove(long value) {
+    if(value == EMPTY) {
+      if(!mContainsEmpty) {
+        return false;
+      }
+      
+      mContainsEmpty = false;
+      mSize--;
+      
+      return true;
+    }
+    
+    int index = hash(value) & mMask;
+    long key;
+    
+    while((key = mKeys[index]) != EMPTY) {
+      if(key == value) {
+        shiftKeys(index);
+        mSize--;
+        
+        return true;
+      }
+      
+      index = (index + 1) & mMask;
+    }
+    
+    return false;
+  }
+  
+  /* Moves following entries of the probe sequence into the freed slot */
+  private void shiftKeys(int free) {
+    int index = free;
+    
+    while(true) {
+      index = (index + 1) & mMask;
+      
+      final long key = mKeys[index];
+      
+      if(key == EMPTY) {
+        break;
+      }
+      
+      final int home = hash(key) & mMask;
+      
+      /* entry can be moved if its home slot isn't in the range (free, index] */
+      if(free <= index ? (home <= free || home > index) : (home <= free && home > index)) {
+        mKeys[free] = key;
+        free = index;
+      }
+    }
+    
+    mKeys[free] = EMPTY;
+  }
+  
+  private void ensureCapacity(int expectedSize) {
+    if(expectedSize > mResizeAt) {
+      rehash(capacityFor(expectedSize));
+    }
+  }
+  
+  private void rehash(int capacity) {
+    final long[] oldKeys = mKeys;
+    
+    allocate(capacity);
+    
+    for(long key : oldKeys) {
+      if(key != EMPTY) {
+        int index = hash(key) & mMask;
+        
+        while(mKeys[index] != EMPTY) {
+          index = (index + 1) & mMask;
+        }
+        
+        mKeys[index] = key;
+      }
+    }
+  }
+  
+  /**
+   * Gets the number of values in this set.
+   * <p>
+   * @return The number of values in this set.
+   */
+  int size() {
+    return mSize;
+  }
+  
+  /**
+   * Gets if this set is empty.
+   * <p>
+   * @return <code>true</code> if this set contains no values, <code>false</code> otherwise.
+   */
+  boolean isEmpty() {
+    return mSize == 0;
+  }
+  
+  /**
+   * Removes all values from this set.
+   */
+  void clear() {
+    Arrays.fill(mKeys, EMPTY);
+    mContainsEmpty = false;
+    mSize = 0;
+  }
+  
+  /**
+   * Gets the values of this set in no particular order.
+   * <p>
+   * @return A new array with the values of this set.
+   */
+  long[] toArray() {
+    final long[] result = new long[mSize];
+    int n = 0;
+    
+    if(mContainsEmpty) {
+      result[n++] = EMPTY;
+    }
+    
+    for(long key : mKeys) {
+      if(key != EMPTY) {
+        result[n++] = key;
+      }
+    }
+    
+    return result;
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from primitive long keys to primitive long values.
+ * <p>
+ * Works like {@link LongHashSet}, lookups don't allocate any objects.
+ */
+final class LongLongHashMap {
+  /* The key that marks an empty slot, its value is stored separately */
+  private static final long EMPTY = 0;
+  
+  private static final int MIN_CAPACITY = 16;
+  
+  private long[] mKeys;
+  private long[] mValues;
+  private int mMask;
+  private int mSize;
+  private int mResizeAt;
+  private boolean mContainsEmpty;
+  private long mEmptyValue;
+  
+  /**
+   * Creates an empty LongLongHashMap.
+   */
+  LongLongHashMap() {
+    allocate(MIN_CAPACITY);
+  }
+  
+  private void allocate(int capacity) {
+    mKeys = new long[capacity];
+    mValues = new long[capacity];
+    mMask = capacity - 1;
+    mResizeAt = capacity / 2;
+  }
+  
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int)(h ^ (h >>> 32));
+  }
+  
+  /**
+   * Gets the value for the given key.
+   * <p>
+   * @param key The key to get the value for.
+   * @param defaultValue The value to return if the key isn't contained.
+   * @return The value for the key or the default value.
+   */
+  long get(long key, long defaultValue) {
+    if(key == EMPTY) {
+      return mContainsEmpty ? mEmptyValue : defaultValue;
+    }
+    
+    final long[] keys = mKeys;
+    final int mask = mMask;
+    
+    int index = hash(key) & mask;
+    long k;
+    
+    while((k = keys[index]) != EMPTY) {
+      if(k == key) {
+        return mValues[index];
+      }
+      
+      index = (index + 1) & mask;
+    }
+    
+    return defaultValue;
+  }
+  
+  /**
+   * Sets the value for the given key.
+   * <p>
+   * @param key The key to set the value for.
+   * @param value The value to set.
+   */
+  void put(long key, long value) {
+    if(key == EMPTY) {
+      if(!mContainsEmpty) {
+        mContainsEmpty = true;
+        mSize++;
+      }
+      
+      mEmptyValue = value;
+      return;
+    }
+    
+    int index = hash(key) & mMask;
+    long k;
+    
+    while((k = mKeys[index]) != EMPTY) {
+      if(k == key) {
+        mValues[index] = value;
+        return;
+      }
+      
+      index = (index + 1) & mMask;
+    }
+    
+    mKeys[index] = key;
+    mValues[index] = value;
+    
+    if(++mSize > mResizeAt) {
+      rehash(mKeys.length << 1);
+    }
+  }
+  
+  /**
+   * Removes the given key.
+   * <p>
+   * @param key The key to remove.
+   * @param defaultValue The value to return if the key isn't contained.
+   * @return The value of the removed key or the default value.
+   */
+  long remove(long key, long defaultValue) {
+    if(key == EMPTY) {
+      if(!mContainsEmpty) {
+        return defaultValue;
+      }
+      
+      mContainsEmpty = false;
+      mSize--;
+      
+      return mEmptyValue;
+    }
+    
+    int index = hash(key) & mMask;
+    long k;
+    
+    while((k = mKeys[index]) != EMPTY) {
+      if(k == key) {
+        final long value = mValues[index];
+        
+        shiftKeys(index);
+        mSize--;
+        
+        return value;
+      }
+      
+      index = (index + 1) & mMask;
+    }
+    
+    return defaultValue;
+  }
+  
+  /**
+   * Removes all keys that are smaller than the given one.
+   * <p>
+   * @param key The first key to keep.
+   */
+  void removeKeysBelow(long key) {
+    if(mContainsEmpty && EMPTY < key) {
+      mContainsEmpty = false;
+      mSize--;
+    }
+    
+    for(int i = 0; i < mKeys.length; i++) {
+      /* a shifted entry may land on the current slot, so check it again */
+      while(mKeys[i] != EMPTY && mKeys[i] < key) {
+        shiftKeys(i);
+        mSize--;
+      }
+    }
+  }
+  
+  /* Moves following entries of the probe sequence into the freed slot */
+  private void shiftKeys(int free) {
+    int index = free;
+    
+    while(true) {
+      index = (index + 1) & mMask;
+      
+      final long key = mKeys[index];
+      
+      if(key == EMPTY) {
+        break;
+      }
+      
+      final int home = hash(key) & mMask;
+      
+      /* entry can be moved if its home slot isn't in the range (free, index] */
+      if(free <= index ? (home <= free || home > index) : (home <= free && home > index)) {
+        mKeys[free] = key;
+        mValues[free] = mValues[index];
+        free = index;
+      }
+    }
+    
+    mKeys[free] = EMPTY;
+  }
+  
+  private void rehash(int capacity) {
+    final long[] oldKeys = mKeys;
+    final long[] oldValues = mValues;
+    
+    allocate(capacity);
+    
+    for(int i = 0; i < oldKeys.length; i++) {
+      final long key = oldKeys[i];
+      
+      if(key != EMPTY) {
+        int index = hash(key) & mMask;
+        
+        while(mKeys[index] != EMPTY) {
+          index = (index + 1) & mMask;
+        }
+        
+        mKeys[index] = key;
+        mValues[index] = oldValues[i];
+      }
+    }
+  }
+  
+  /**
+   * Gets the number of keys in this map.
+   * <p>
+   * @return The number of keys in this map.
+   */
+  int size() {
+    return mSize;
+  }
+  
+  /**
+   * Gets all keys of this map.
+   * <p>
+   * @return A new array with the keys in no particular order.
+   */
+  long[] keys() {
+    final long[] keys = new long[mSize];
+    int count = 0;
+    
+    if(mContainsEmpty) {
+      keys[count++] = EMPTY;
+    }
+    
+    for(int i = 0; i < mKeys.length; i++) {
+      if(mKeys[i] != EMPTY) {
+        keys[count++] = mKeys[i];
+      }
+    }
+    
+    return keys;
+  }
+  
+  /**
+   * Removes all keys from this map.
+   */
+  void clear() {
+    Arrays.fill(mKeys, EMPTY);
+    mContainsEmpty = false;
+    mSize = 0;
+  }
+}
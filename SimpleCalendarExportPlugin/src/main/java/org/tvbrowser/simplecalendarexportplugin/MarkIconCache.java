@@ -0,0 +1,185 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Cache for the PNG data of the mark icon.
+ * <p>
+ * The icon is the same for all themes, it's only decoded and encoded once
+ * per screen density. The encoded data is kept in memory and in the cache
+ * directory, the file name contains the version code of the app so the
+ * file is recreated after an update. The version code is resolved once,
+ * so returning the icon from memory doesn't call the package manager.
+ */
+final class MarkIconCache {
+  private static final String FILE_PREFIX = "mark_icon_";
+  
+  private final Context mContext;
+  private final int mIconResource;
+  
+  /* the version code of the app, resolved at the first load */
+  private int mVersionCode = -1;
+  /* the screen density the icon in memory was loaded for */
+  private int mDensity;
+  
+  private volatile byte[] mIcon;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param context The context to use for loading the icon.
+   * @param iconResource The drawable resource id of the icon.
+   */
+  MarkIconCache(Context context, int iconResource) {
+    mContext = context;
+    mIconResource = iconResource;
+  }
+  
+  /**
+   * Gets the PNG data of the mark icon.
+   * <p>
+   * The returned array is shared and must not be changed.
+   * <p>
+   * @return The PNG data of the mark icon.
+   */
+  byte[] get() {
+    final byte[] icon = mIcon;
+    
+    if(icon != null) {
+      return icon;
+    }
+    
+    return load();
+  }
+  
+  /**
+   * Drops the icon from memory if the screen density has changed,
+   * so the icon for the new density is loaded at the next request.
+   */
+  synchronized void onConfigurationChanged() {
+    if(mContext.getResources().getDisplayMetrics().densityDpi != mDensity) {
+      mIcon = null;
+    }
+  }
+  
+  private synchronized byte[] load() {
+    if(mIcon == null) {
+      if(mVersionCode == -1) {
+        mVersionCode = 0;
+        
+        try {
+          mVersionCode = mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0).versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+          e.printStackTrace();
+        }
+      }
+      
+      mDensity = mContext.getResources().getDisplayMetrics().densityDpi;
+      
+      final File file = new File(mContext.getCacheDir(), FILE_PREFIX + mDensity + "_" + mVersionCode + ".png");
+      
+      byte[] icon = read(file);
+      
+      if(icon == null) {
+        icon = encode();
+        write(file, icon);
+      }
+      
+      mIcon = icon;
+    }
+    
+    return mIcon;
+  }
+  
+  private byte[] encode() {
+    Bitmap icon = BitmapFactory.decodeResource(mContext.getResources(), mIconResource);
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    icon.compress(Bitmap.CompressFormat.PNG, 100, stream);
+    icon.recycle();
+    
+    return stream.toByteArray();
+  }
+  
+  private static byte[] read(File file) {
+    byte[] data = null;
+    
+    if(file.isFile() && file.length() > 0) {
+      try {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        
+        try {
+          data = new byte[(int)file.length()];
+          in.readFully(data);
+        }
+        finally {
+          in.close();
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+        data = null;
+      }
+    }
+    
+    return data;
+  }
+  
+  private static void write(File file, byte[] icon) {
+    final File dir = file.getParentFile();
+    final File[] old = dir.listFiles();
+    
+    /* icons of other versions or densities aren't needed anymore */
+    if(old != null) {
+      for(File f : old) {
+        if(f.getName().startsWith(FILE_PREFIX)) {
+          f.delete();
+        }
+      }
+    }
+    
+    final File temp = new File(dir, file.getName() + ".tmp");
+    
+    try {
+      FileOutputStream out = new FileOutputStream(temp);
+      
+      try {
+        out.write(icon);
+      }
+      finally {
+        out.close();
+      }
+      
+      if(!temp.renameTo(file)) {
+        temp.delete();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      temp.delete();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+/**
+ * Publishes the state of a {@link MarkingSet} to readers on other threads.
+ * <p>
+ * Writers change the set with the lock that guards it held and call
+ * {@link #publish(MarkingSet)} after every change, before they release
+ * the lock. The snapshot is replaced right there, so a reader that runs
+ * after a writer has returned always sees the change, also on the thread
+ * of the writer. Readers never wait for the lock, {@link #getSnapshot()}
+ * only reads one volatile field.
+ * <p>
+ * Changes of many ids at once should be published once at the end, every
+ * publish copies the whole set.
+ */
+final class MarkingPublisher {
+  /* only used with the lock of the set held */
+  private long mVersion;
+  
+  private volatile MarkingSet.Snapshot mSnapshot = MarkingSet.Snapshot.EMPTY;
+  
+  /**
+   * Publishes the current state of the given set, must be called
+   * with the lock that guards the set held.
+   * <p>
+   * @param markings The changed set, may be another set than the one published before.
+   * @return The published snapshot.
+   */
+  MarkingSet.Snapshot publish(MarkingSet markings) {
+    final MarkingSet.Snapshot snapshot = markings.snapshot(++mVersion);
+    
+    mSnapshot = snapshot;
+    
+    return snapshot;
+  }
+  
+  /**
+   * Gets the last published snapshot, contains every change whose
+   * writer returned before this was called.
+   * <p>
+   * @return The last published snapshot.
+   */
+  MarkingSet.Snapshot getSnapshot() {
+    return mSnapshot;
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.Arrays;
+
+/**
+ * The set of marked program ids.
+ * <p>
+ * The ids are kept in a {@link LongHashSet} for lookups and additionally
+ * in a sorted array. Since program ids are growing, new markings are
+ * usually appended at the end of the array and removing all ids below
+ * a given one only moves the start of the array.
+ * <p>
+ * A MarkingSet isn't thread safe. It is only changed by one thread at a time
+ * and readers on other threads use a {@link Snapshot} of it instead.
+ */
+final class MarkingSet {
+  /**
+   * An unmodifiable copy of the marked program ids, that can be
+   * read by any number of threads without synchronization.
+   */
+  static final class Snapshot {
+    /** The snapshot of an empty set with version <code>0</code> */
+    static final Snapshot EMPTY = new Snapshot(new LongHashSet(), new long[0], 0);
+    
+    private final LongHashSet mLookup;
+    private final long[] mSorted;
+    private final long mVersion;
+    
+    private Snapshot(LongHashSet lookup, long[] sorted, long version) {
+      mLookup = lookup;
+      mSorted = sorted;
+      mVersion = version;
+    }
+    
+    /**
+     * Gets the version of the set this snapshot was created from.
+     * <p>
+     * @return The version given to {@link MarkingSet#snapshot(long)}.
+     */
+    long getVersion() {
+      return mVersion;
+    }
+    
+    /**
+     * Gets if the program with the given id is marked.
+     * <p>
+     * @param programId The id of the program to check.
+     * @return <code>true</code> if the program is marked, <code>false</code> otherwise.
+     */
+    boolean contains(long programId) {
+      return mLookup.contains(programId);
+    }
+    
+    /**
+     * Gets the number of marked programs.
+     * <p>
+     * @return The number of marked programs.
+     */
+    int size() {
+      return mSorted.length;
+    }
+    
+    /**
+     * Gets the marked program ids in ascending order.
+     * <p>
+     * The array is shared by all callers and must not be changed.
+     * <p>
+     * @return The sorted ids.
+     */
+    long[] getIds() {
+      return mSorted;
+    }
+  }
+  
+  private LongHashSet mLookup;
+  
+  /* the sorted ids are stored in mSorted[mStart, mEnd) */
+  private long[] mSorted;
+  private int mStart;
+  private int mEnd;
+  
+  /**
+   * Creates an empty MarkingSet.
+   */
+  MarkingSet() {
+    mLookup = new LongHashSet();
+    mSorted = new long[16];
+  }
+  
+  /**
+   * Gets if the program with the given id is marked.
+   * <p>
+   * @param programId The id of the program to check.
+   * @return <code>true</code> if the program is marked, <code>false</code> otherwise.
+   */
+  boolean contains(long programId) {
+    return mLookup.contains(programId);
+  }
+  
+  /**
+   * Adds the given program id.
+   * <p>
+   * @param programId The id of the program to add.
+   * @return <code>true</code> if the id was added, <code>false</code> if it was already contained.
+   */
+  boolean add(long programId) {
+    if(!mLookup.add(programId)) {
+      return false;
+    }
+    
+    if(mEnd == mSorted.length) {
+      final int size = mEnd - mStart;
+      
+      /* reuse the space of pruned ids before growing */
+      final long[] target = size < mSorted.length / 2 ? mSorted : new long[mSorted.length * 2];
+      
+      System.arraycopy(mSorted, mStart, target, 0, size);
+      
+      mSorted = target;
+      mStart = 0;
+      mEnd = size;
+    }
+    
+    if(mEnd == mStart || mSorted[mEnd-1] < programId) {
+      mSorted[mEnd++] = programId;
+    }
+    else {
+      final int index = -(Arrays.binarySearch(mSorted, mStart, mEnd, programId) + 1);
+      
+      System.arraycopy(mSorted, index, mSorted, index + 1, mEnd - index);
+      mSorted[index] = programId;
+      mEnd++;
+    }
+    
+    return true;
+  }
+  
+  /**
+   * Removes the given program id.
+   * <p>
+   * @param programId The id of the program to remove.
+   * @return <code>true</code> if the id was removed, <code>false</code> if it wasn't contained.
+   */
+  boolean remove(long programId) {
+    if(!mLookup.remove(programId)) {
+      return false;
+    }
+    
+    final int index = Arrays.binarySearch(mSorted, mStart, mEnd, programId);
+    
+    if(index == mStart) {
+      mStart++;
+    }
+    else {
+      System.arraycopy(mSorted, index + 1, mSorted, index, mEnd - index - 1);
+      mEnd--;
+    }
+    
+    return true;
+  }
+  
+  /**
+   * Removes all program ids that are smaller than the given one.
+   * <p>
+   * @param programId The first program id to keep.
+   * @return The number of removed ids.
+   */
+  int pruneBelow(long programId) {
+    int index = Arrays.binarySearch(mSorted, mStart, mEnd, programId);
+    
+    if(index < 0) {
+      index = -(index + 1);
+    }
+    
+    final int removed = index - mStart;
+    
+    if(removed > mEnd - index) {
+      /* cheaper to rebuild the lookup from the remaining ids */
+      mLookup = new LongHashSet(mEnd - index);
+      
+      for(int i = index; i < mEnd; i++) {
+        mLookup.add(mSorted[i]);
+      }
+    }
+    else {
+      for(int i = mStart; i < index; i++) {
+        mLookup.remove(mSorted[i]);
+      }
+    }
+    
+    mStart = index;
+    
+    return removed;
+  }
+  
+  /**
+   * Removes all program ids.
+   */
+  void clear() {
+    mLookup.clear();
+    mStart = 0;
+    mEnd = 0;
+  }
+  
+  /**
+   * Gets the number of marked programs.
+   * <p>
+   * @return The number of marked programs.
+   */
+  int size() {
+    return mEnd - mStart;
+  }
+  
+  /**
+   * Gets the marked program ids in ascending order.
+   * <p>
+   * @return A new array with the sorted ids.
+   */
+  long[] toArray() {
+    return Arrays.copyOfRange(mSorted, mStart, mEnd);
+  }
+  
+  /**
+   * Creates an unmodifiable copy of the current state of this set.
+   * <p>
+   * @param version The version of the set to store in the snapshot.
+   * @return The snapshot of this set.
+   */
+  Snapshot snapshot(long version) {
+    if(mEnd == mStart) {
+      return new Snapshot(Snapshot.EMPTY.mLookup, Snapshot.EMPTY.mSorted, version);
+    }
+    
+    return new Snapshot(new LongHashSet(mLookup), toArray(), version);
+  }
+}
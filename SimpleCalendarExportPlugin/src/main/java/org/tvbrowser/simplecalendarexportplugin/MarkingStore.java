@@ -0,0 +1,462 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Persistence for the marked program ids.
+ * <p>
+ * Every change is appended as a small record to a journal file, so marking
+ * and unmarking costs the same regardless of the number of markings.
+ * Every append is synced to the disk, so a change that was appended
+ * survives a crash.
+ * From time to time the journal is compacted into a snapshot file that
+ * contains the sorted ids delta and varint encoded, together with the
+ * ids of the calendar events that were created for the programs.
+ * <p>
+ * At load the snapshot is read and the journal is replayed on top of it.
+ * An incomplete or damaged record at the end of the journal is dropped,
+ * the snapshot itself is only ever replaced by renaming a completely
+ * written {@link ChecksummedFile}. A snapshot that can't be read is moved
+ * aside and kept, the journal is replayed nevertheless and the loss is
+ * reported with a {@link DamagedSnapshotException}.
+ */
+final class MarkingStore {
+  private static final String SNAPSHOT_FILE = "markings.snapshot";
+  private static final String JOURNAL_FILE = "markings.journal";
+  private static final String DAMAGED_SUFFIX = ".damaged";
+  
+  private static final int SNAPSHOT_MAGIC = 0x54564D4B; // TVMK
+  private static final int SNAPSHOT_VERSION = 2;
+  
+  static final byte OP_ADD = 1;
+  static final byte OP_REMOVE = 2;
+  static final byte OP_PRUNE = 3;
+  static final byte OP_CLEAR = 4;
+  static final byte OP_EVENT = 5;
+  
+  /* op byte, 8 bytes id, check byte */
+  private static final int RECORD_SIZE = 10;
+  /* op byte, 8 bytes id, 8 bytes event id, check byte */
+  private static final int EVENT_RECORD_SIZE = 18;
+  
+  /**
+   * The state of the markings that is written as snapshot.
+   */
+  static final class Snapshot {
+    private final long[] mProgramIds;
+    private final long[] mEventIds;
+    
+    /**
+     * Creates an instance of this class.
+     * <p>
+     * @param programIds The ids of all marked programs in ascending order.
+     * @param eventIds The ids of the calendar events of the programs in the same order, <code>-1</code> if not known.
+     */
+    Snapshot(long[] programIds, long[] eventIds) {
+      mProgramIds = programIds;
+      mEventIds = eventIds;
+    }
+  }
+  
+  /**
+   * Thrown by {@link MarkingStore#load(MarkingSet, LongLongHashMap)} if the
+   * snapshot could not be read, the markings it contained are lost.
+   */
+  static final class DamagedSnapshotException extends IOException {
+    private final File mKeptFile;
+    
+    private DamagedSnapshotException(File snapshotFile, File keptFile) {
+      super("Snapshot damaged: " + snapshotFile + (keptFile != null ? ", kept as " + keptFile : ""));
+      mKeptFile = keptFile;
+    }
+    
+    /**
+     * @return The file the damaged snapshot was moved to or <code>null</code> if it could not be moved.
+     */
+    File getKeptFile() {
+      return mKeptFile;
+    }
+  }
+  
+  /* journal size that is always allowed before compaction */
+  private static final int MIN_COMPACT_RECORDS = 1024;
+  
+  private final File mSnapshotFile;
+  private final ChecksummedFile mSnapshot;
+  private final File mJournalFile;
+  
+  private byte[] mRecords = new byte[EVENT_RECORD_SIZE * 16];
+  private FileOutputStream mJournal;
+  private int mJournalRecords;
+  
+  /* set if a damaged snapshot could not be moved aside, it must not be replaced then */
+  private boolean mSnapshotDamaged;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param dir The directory for the snapshot and the journal file.
+   */
+  MarkingStore(File dir) {
+    mSnapshotFile = new File(dir, SNAPSHOT_FILE);
+    mSnapshot = new ChecksummedFile(mSnapshotFile, SNAPSHOT_MAGIC, SNAPSHOT_VERSION);
+    mJournalFile = new File(dir, JOURNAL_FILE);
+  }
+  
+  /**
+   * Gets if this store was already written.
+   * <p>
+   * @return <code>true</code> if snapshot or journal exist, <code>false</code> otherwise.
+   */
+  boolean exists() {
+    return mSnapshotFile.isFile() || mJournalFile.isFile();
+  }
+  
+  /**
+   * Loads the markings from the snapshot and replays the journal.
+   * <p>
+   * If the snapshot can't be read, it's renamed to keep it for recovery and
+   * the journal is replayed on an empty set. A {@link DamagedSnapshotException}
+   * is thrown after the journal was replayed, so the target contains all
+   * markings that could be loaded.
+   * <p>
+   * @param target The set to add the loaded markings to.
+   * @param eventIds The map to put the calendar event ids of the marked programs into.
+   * @throws DamagedSnapshotException If the snapshot could not be read.
+   * @throws IOException If the journal could not be read.
+   */
+  synchronized void load(MarkingSet target, LongLongHashMap eventIds) throws IOException {
+    closeJournal();
+    
+    IOException snapshotError = null;
+    
+    if(mSnapshotFile.isFile() && !readSnapshot(target, eventIds)) {
+      /* don't keep the part that was read before the error */
+      target.clear();
+      eventIds.clear();
+      
+      final File damaged = new File(mSnapshotFile.getPath() + "." + System.currentTimeMillis() + DAMAGED_SUFFIX);
+      
+      mSnapshotDamaged = !mSnapshotFile.renameTo(damaged);
+      snapshotError = new DamagedSnapshotException(mSnapshotFile, mSnapshotDamaged ? null : damaged);
+    }
+    
+    mJournalRecords = 0;
+    
+    if(mJournalFile.isFile()) {
+      long valid = replayJournal(target, eventIds);
+      
+      if(valid < mJournalFile.length()) {
+        /* drop torn record at the end, so new records are not appended behind it */
+        RandomAccessFile journal = new RandomAccessFile(mJournalFile, "rw");
+        
+        try {
+          journal.setLength(valid);
+        }
+        finally {
+          journal.close();
+        }
+      }
+    }
+    
+    if(snapshotError != null) {
+      throw snapshotError;
+    }
+  }
+  
+  /* Reads the snapshot into the given set and map, returns false if it is damaged */
+  private boolean readSnapshot(final MarkingSet target, final LongLongHashMap eventIds) {
+    return mSnapshot.read(new ChecksummedFile.Reader() {
+      @Override
+      public void read(DataInputStream in, int version) throws IOException {
+        final long count = readVarLong(in);
+        
+        long value = 0;
+        
+        for(long i = 0; i < count; i++) {
+          long delta = readVarLong(in);
+          
+          /* first value is zigzag encoded, it may be negative */
+          value = i == 0 ? (delta >>> 1) ^ -(delta & 1) : value + delta;
+          
+          target.add(value);
+          
+          if(version >= 2) {
+            /* stored with offset, 0 means no event */
+            final long eventId = readVarLong(in) - 1;
+            
+            if(eventId != -1) {
+              eventIds.put(value, eventId);
+            }
+          }
+        }
+      }
+    });
+  }
+  
+  private long replayJournal(MarkingSet target, LongLongHashMap eventIds) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(mJournalFile));
+    
+    long valid = 0;
+    
+    try {
+      final byte[] record = new byte[EVENT_RECORD_SIZE];
+      int size;
+      
+      while((size = readRecord(in, record)) > 0) {
+        final long programId = readLong(record, 1);
+        
+        switch(record[0]) {
+          case OP_ADD: target.add(programId); break;
+          case OP_REMOVE: target.remove(programId); eventIds.remove(programId, -1); break;
+          case OP_PRUNE: target.pruneBelow(programId); eventIds.removeKeysBelow(programId); break;
+          case OP_CLEAR: target.clear(); eventIds.clear(); break;
+          case OP_EVENT:
+            if(target.contains(programId)) {
+              eventIds.put(programId, readLong(record, 9));
+            }
+            break;
+        }
+        
+        valid += size;
+        mJournalRecords++;
+      }
+    }
+    finally {
+      in.close();
+    }
+    
+    return valid;
+  }
+  
+  private static int recordSize(byte op) {
+    return op == OP_EVENT ? EVENT_RECORD_SIZE : RECORD_SIZE;
+  }
+  
+  /* Reads the next record, returns its size or -1 if no complete and valid record is left */
+  private static int readRecord(InputStream in, byte[] record) throws IOException {
+    int op = in.read();
+    
+    if(op < OP_ADD || op > OP_EVENT) {
+      return -1;
+    }
+    
+    record[0] = (byte)op;
+    
+    final int size = recordSize(record[0]);
+    int read = 1;
+    
+    while(read < size) {
+      int n = in.read(record, read, size - read);
+      
+      if(n < 0) {
+        return -1;
+      }
+      
+      read += n;
+    }
+    
+    return record[size-1] == check(record, 0, size) ? size : -1;
+  }
+  
+  /**
+   * Appends several changes to the journal with a single write.
+   * <p>
+   * @param ops The operations, one of {@link #OP_ADD}, {@link #OP_REMOVE}, {@link #OP_PRUNE} or {@link #OP_CLEAR}.
+   * @param programIds The ids of the programs that were changed.
+   * @param eventIds The ids of the calendar events for {@link #OP_EVENT}, ignored for other operations.
+   * @param count The number of changes to append from the given arrays.
+   * @throws IOException If the records could not be written.
+   */
+  synchronized void appendAll(byte[] ops, long[] programIds, long[] eventIds, int count) throws IOException {
+    if(count == 0) {
+      return;
+    }
+    
+    if(mJournal == null) {
+      mJournal = new FileOutputStream(mJournalFile, true);
+    }
+    
+    if(mRecords.length < count * EVENT_RECORD_SIZE) {
+      mRecords = new byte[count * EVENT_RECORD_SIZE];
+    }
+    
+    int offset = 0;
+    
+    for(int i = 0; i < count; i++) {
+      final int size = recordSize(ops[i]);
+      
+      mRecords[offset] = ops[i];
+      writeLong(mRecords, offset+1, programIds[i]);
+      
+      if(ops[i] == OP_EVENT) {
+        writeLong(mRecords, offset+9, eventIds[i]);
+      }
+      
+      mRecords[offset+size-1] = check(mRecords, offset, size);
+      offset += size;
+    }
+    
+    mJournal.write(mRecords, 0, offset);
+    
+    /* once per batch, the records must be on the disk when the writer returns */
+    mJournal.getFD().sync();
+    mJournalRecords += count;
+  }
+  
+  /**
+   * Gets if the journal has grown large enough compared to the
+   * number of markings that it should be compacted.
+   * <p>
+   * @param markingCount The current number of markings.
+   * @return <code>true</code> if {@link #compact(Snapshot)} should be called.
+   */
+  synchronized boolean needsCompaction(int markingCount) {
+    return mJournalRecords > Math.max(MIN_COMPACT_RECORDS, markingCount);
+  }
+  
+  /**
+   * Writes a new snapshot with the given markings and clears the journal.
+   * <p>
+   * @param snapshot The current state of the markings.
+   * @throws IOException If the snapshot could not be written.
+   */
+  synchronized void compact(Snapshot snapshot) throws IOException {
+    if(mSnapshotDamaged) {
+      throw new IOException("Damaged snapshot could not be moved aside, not replacing it: " + mSnapshotFile);
+    }
+    
+    final long[] programIds = snapshot.mProgramIds;
+    final long[] eventIds = snapshot.mEventIds;
+    
+    mSnapshot.write(new ChecksummedFile.Writer() {
+      @Override
+      public void write(DataOutputStream out) throws IOException {
+        final byte[] buffer = new byte[10];
+        
+        out.write(buffer, 0, writeVarLong(buffer, programIds.length));
+        
+        long previous = 0;
+        
+        for(int i = 0; i < programIds.length; i++) {
+          long value = programIds[i];
+          long delta = i == 0 ? (value << 1) ^ (value >> 63) : value - previous;
+          
+          out.write(buffer, 0, writeVarLong(buffer, delta));
+          out.write(buffer, 0, writeVarLong(buffer, eventIds[i] + 1));
+          previous = value;
+        }
+      }
+    });
+    
+    /* the snapshot contains every journal record now */
+    closeJournal();
+    
+    new FileOutputStream(mJournalFile).close();
+    mJournalRecords = 0;
+  }
+  
+  /**
+   * Closes the journal file, it is reopened at the next append.
+   */
+  synchronized void close() {
+    try {
+      closeJournal();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+  
+  private void closeJournal() throws IOException {
+    if(mJournal != null) {
+      try {
+        mJournal.close();
+      }
+      finally {
+        mJournal = null;
+      }
+    }
+  }
+  
+  private static byte check(byte[] records, int offset, int size) {
+    byte check = 0x5A;
+    
+    for(int i = offset; i < offset+size-1; i++) {
+      check ^= records[i];
+    }
+    
+    return check;
+  }
+  
+  private static int writeVarLong(byte[] buffer, long value) {
+    int n = 0;
+    
+    while((value & ~0x7FL) != 0) {
+      buffer[n++] = (byte)((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    
+    buffer[n++] = (byte)value;
+    
+    return n;
+  }
+  
+  private static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+    
+    for(int shift = 0; shift < 64; shift += 7) {
+      final byte b = in.readByte();
+      value |= (long)(b & 0x7F) << shift;
+      
+      if((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    
+    throw new IOException("Malformed varint in snapshot");
+  }
+  
+  private static void writeInt(byte[] buffer, int offset, int value) {
+    buffer[offset] = (byte)(value >>> 24);
+    buffer[offset+1] = (byte)(value >>> 16);
+    buffer[offset+2] = (byte)(value >>> 8);
+    buffer[offset+3] = (byte)value;
+  }
+  
+  private static int readInt(byte[] data, int offset) {
+    return ((data[offset] & 0xFF) << 24) | ((data[offset+1] & 0xFF) << 16) | ((data[offset+2] & 0xFF) << 8) | (data[offset+3] & 0xFF);
+  }
+  
+  private static void writeLong(byte[] buffer, int offset, long value) {
+    writeInt(buffer, offset, (int)(value >>> 32));
+    writeInt(buffer, offset+4, (int)value);
+  }
+  
+  private static long readLong(byte[] data, int offset) {
+    return ((long)readInt(data, offset) << 32) | (readInt(data, offset+4) & 0xFFFFFFFFL);
+  }
+}
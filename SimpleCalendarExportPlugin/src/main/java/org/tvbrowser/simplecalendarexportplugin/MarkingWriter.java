@@ -0,0 +1,337 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind scheduler for marking changes.
+ * <p>
+ * Changes are only held in memory by the calling thread. They are written
+ * to the {@link MarkingStore} on a background thread with a single write,
+ * after no further change happened for the quiet period or as soon as
+ * the given number of changes is pending.
+ * <p>
+ * If changes could not be appended, the next write replaces the store
+ * with a compacted snapshot of the current markings, so the store
+ * doesn't lose the changes that failed.
+ */
+final class MarkingWriter {
+  private static final String TAG = "MarkingWriter";
+  
+  /**
+   * Provides the current markings for compaction of the store.
+   */
+  interface MarkingSource {
+    /**
+     * @return The current state of the markings.
+     */
+    MarkingStore.Snapshot getSnapshot();
+    
+    /**
+     * @return The number of currently marked programs.
+     */
+    int getMarkingCount();
+  }
+  
+  private final MarkingStore mStore;
+  private final MarkingSource mSource;
+  private final long mQuietPeriodNanos;
+  private final int mMaxPending;
+  private final ScheduledExecutorService mExecutor;
+  
+  private final Object mLock = new Object();
+  
+  /* changes that are not written yet, guarded by mLock */
+  private byte[] mOps;
+  private long[] mProgramIds;
+  private long[] mEventIds;
+  private int mPending;
+  private long mLastChange;
+  private boolean mScheduled;
+  /* set if writing failed, the next write compacts the store from the source */
+  private boolean mCompactNeeded;
+  
+  /* the buffers that are written, only used on the executor thread */
+  private byte[] mWriteOps;
+  private long[] mWriteProgramIds;
+  private long[] mWriteEventIds;
+  
+  private final Runnable mWrite = new Runnable() {
+    @Override
+    public void run() {
+      write();
+    }
+  };
+  
+  private final Runnable mDelayedWrite = new Runnable() {
+    @Override
+    public void run() {
+      synchronized(mLock) {
+        final long quiet = System.nanoTime() - mLastChange;
+        
+        if(mPending > 0 && mPending < mMaxPending && quiet < mQuietPeriodNanos) {
+          mExecutor.schedule(this, mQuietPeriodNanos - quiet, TimeUnit.NANOSECONDS);
+          return;
+        }
+        
+        mScheduled = false;
+      }
+      
+      write();
+    }
+  };
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param store The store to write the changes to.
+   * @param source The source of the markings for compaction of the store.
+   * @param quietPeriodMillis The time in milliseconds without changes after that pending changes are written.
+   * @param maxPending The number of pending changes that are written without waiting for the quiet period.
+   */
+  MarkingWriter(MarkingStore store, MarkingSource source, long quietPeriodMillis, int maxPending) {
+    mStore = store;
+    mSource = source;
+    mQuietPeriodNanos = TimeUnit.MILLISECONDS.toNanos(quietPeriodMillis);
+    mMaxPending = Math.max(1, maxPending);
+    
+    mOps = new byte[mMaxPending];
+    mProgramIds = new long[mMaxPending];
+    mEventIds = new long[mMaxPending];
+    mWriteOps = new byte[mMaxPending];
+    mWriteProgramIds = new long[mMaxPending];
+    mWriteEventIds = new long[mMaxPending];
+    
+    mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread writer = new Thread(r, "MarkingWriter");
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.setDaemon(true);
+        
+        return writer;
+      }
+    });
+  }
+  
+  /**
+   * Schedules the writing of a marking change.
+   * <p>
+   * @param op The operation, one of the <code>OP_</code> constants of {@link MarkingStore}.
+   * @param programId The id of the changed program or the first id to keep for {@link MarkingStore#OP_PRUNE}.
+   */
+  void enqueue(byte op, long programId) {
+    synchronized(mLock) {
+      add(op, programId, 0);
+      schedule();
+    }
+  }
+  
+  /**
+   * Schedules the writing of the calendar event id of a marked program.
+   * <p>
+   * @param programId The id of the marked program.
+   * @param eventId The id of the calendar event that was created for the program.
+   */
+  void enqueueEvent(long programId, long eventId) {
+    synchronized(mLock) {
+      add(MarkingStore.OP_EVENT, programId, eventId);
+      schedule();
+    }
+  }
+  
+  /**
+   * Schedules the writing of several new markings together with the
+   * ids of their calendar events, they are written with a single write.
+   * <p>
+   * @param programIds The ids of the marked programs.
+   * @param eventIds The ids of the calendar events of the programs, <code>-1</code> if not known.
+   * @param count The number of ids to use from the given arrays.
+   */
+  void enqueueMarkings(long[] programIds, long[] eventIds, int count) {
+    synchronized(mLock) {
+      for(int i = 0; i < count; i++) {
+        add(MarkingStore.OP_ADD, programIds[i], 0);
+        
+        if(eventIds[i] != -1) {
+          add(MarkingStore.OP_EVENT, programIds[i], eventIds[i]);
+        }
+      }
+      
+      schedule();
+    }
+  }
+  
+  private void add(byte op, long programId, long eventId) {
+    if(mPending == mOps.length) {
+      byte[] ops = new byte[mOps.length * 2];
+      long[] programIds = new long[ops.length];
+      long[] eventIds = new long[ops.length];
+      
+      System.arraycopy(mOps, 0, ops, 0, mPending);
+      System.arraycopy(mProgramIds, 0, programIds, 0, mPending);
+      System.arraycopy(mEventIds, 0, eventIds, 0, mPending);
+      
+      mOps = ops;
+      mProgramIds = programIds;
+      mEventIds = eventIds;
+    }
+    
+    mOps[mPending] = op;
+    mProgramIds[mPending] = programId;
+    mEventIds[mPending] = eventId;
+    mPending++;
+    mLastChange = System.nanoTime();
+  }
+  
+  private void schedule() {
+    if(mPending > 0) {
+      try {
+        if(mPending >= mMaxPending) {
+          mExecutor.execute(mWrite);
+        }
+        else if(!mScheduled) {
+          mExecutor.schedule(mDelayedWrite, mQuietPeriodNanos, TimeUnit.NANOSECONDS);
+          mScheduled = true;
+        }
+      }catch(RejectedExecutionException ree) {
+        /* already shut down, the change is written by the final flush */
+      }
+    }
+  }
+  
+  /**
+   * Starts writing all pending changes in the background without waiting
+   * for them, to be used on binder and UI threads.
+   */
+  void requestFlush() {
+    try {
+      mExecutor.execute(mWrite);
+    }catch(RejectedExecutionException ree) {
+      /* already shut down, the changes are written by the shutdown */
+    }
+  }
+  
+  /**
+   * Writes all pending changes and waits until they are written,
+   * must not be called on binder or UI threads.
+   */
+  void flush() {
+    try {
+      mExecutor.submit(mWrite).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      Log.w(TAG, "Writing the marking changes failed", e);
+    } catch (RejectedExecutionException ree) {
+      write();
+    }
+  }
+  
+  /**
+   * Writes all pending changes, stops the background thread and closes the store,
+   * must not be called on binder or UI threads.
+   */
+  void shutdown() {
+    flush();
+    
+    /* the delayed writes are not needed anymore, the changes are written below */
+    mExecutor.shutdownNow();
+    
+    try {
+      mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    
+    /* changes that came in during shutdown */
+    write();
+    
+    mStore.close();
+  }
+  
+  private void write() {
+    byte[] ops;
+    long[] programIds;
+    long[] eventIds;
+    int count;
+    boolean compact;
+    
+    synchronized(mLock) {
+      count = mPending;
+      compact = mCompactNeeded;
+      
+      if(count == 0 && !compact) {
+        return;
+      }
+      
+      ops = mOps;
+      programIds = mProgramIds;
+      eventIds = mEventIds;
+      
+      if(mWriteOps.length < count) {
+        mWriteOps = new byte[ops.length];
+        mWriteProgramIds = new long[ops.length];
+        mWriteEventIds = new long[ops.length];
+      }
+      
+      /* swap buffers, so new changes can be collected while writing */
+      mOps = mWriteOps;
+      mProgramIds = mWriteProgramIds;
+      mEventIds = mWriteEventIds;
+      mWriteOps = ops;
+      mWriteProgramIds = programIds;
+      mWriteEventIds = eventIds;
+      mPending = 0;
+      mCompactNeeded = false;
+    }
+    
+    try {
+      if(!compact) {
+        final long start = CallStatistics.start();
+        mStore.appendAll(ops, programIds, eventIds, count);
+        CallStatistics.end(CallStatistics.MARKINGS_APPEND, start);
+        
+        compact = mStore.needsCompaction(mSource.getMarkingCount());
+      }
+      
+      /* the source contains the changes that were taken from the buffers,
+         changes made after them are appended later, the records of the
+         journal set the state of an id, so replaying them again is harmless */
+      if(compact) {
+        final long start = CallStatistics.start();
+        mStore.compact(mSource.getSnapshot());
+        CallStatistics.end(CallStatistics.MARKINGS_COMPACT, start);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Writing " + count + " marking changes failed, compacting the markings with the next write", e);
+      
+      synchronized(mLock) {
+        mCompactNeeded = true;
+      }
+    }
+  }
+}
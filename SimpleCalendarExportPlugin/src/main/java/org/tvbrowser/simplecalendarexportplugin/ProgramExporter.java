@@ -0,0 +1,158 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import org.tvbrowser.devplugin.Program;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Base class for exporters that stream programs into a file.
+ * <p>
+ * Each program is formatted into a reused buffer that is written to
+ * the output stream right away, so the memory needed for an export
+ * doesn't depend on the number of exported programs.
+ * <p>
+ * Usage: {@link #begin()}, {@link #write(Program)} for every program,
+ * {@link #end()} and finally {@link #close()}.
+ */
+abstract class ProgramExporter {
+  static final int FORMAT_ICALENDAR = 1;
+  static final int FORMAT_JSON_LINES = 2;
+  static final int FORMAT_CSV = 3;
+  
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  
+  /* The domain part of the unique ids of exported events */
+  private static final String UID_DOMAIN = "@simplecalendarexportplugin.tvbrowser.org";
+  
+  private final Writer mOut;
+  private char[] mChars = new char[1024];
+  
+  /** The buffer to format the current record into, written by {@link #flushBuffer()} */
+  protected final StringBuilder mBuffer = new StringBuilder(1024);
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param out The stream to write the UTF-8 encoded export to.
+   */
+  ProgramExporter(OutputStream out) {
+    mOut = new BufferedWriter(new OutputStreamWriter(out, UTF_8), 8192);
+  }
+  
+  /**
+   * Gets the unique id of the event for the given program, that is the same
+   * for files and events inserted into the calendar.
+   * <p>
+   * @param programId The id of the program.
+   * @return The unique id of the event.
+   */
+  static String getUid(long programId) {
+    return programId + UID_DOMAIN;
+  }
+  
+  /**
+   * Creates an exporter for the given format.
+   * <p>
+   * @param format One of the <code>FORMAT_</code> constants.
+   * @param out The stream to write the export to.
+   * @param eventTexts The factory for the texts of calendar events, so events in files get the same texts as events in the calendar.
+   * @return The exporter for the format.
+   */
+  static ProgramExporter create(int format, OutputStream out, CalendarBatchExporter.EventTextFactory eventTexts) {
+    switch(format) {
+      case FORMAT_ICALENDAR: return new ICalendarProgramExporter(out, eventTexts);
+      case FORMAT_JSON_LINES: return new JsonLinesProgramExporter(out);
+      case FORMAT_CSV: return new CsvProgramExporter(out);
+    }
+    
+    throw new IllegalArgumentException("Unknown export format: " + format);
+  }
+  
+  /**
+   * Gets the file extension of the given format.
+   * <p>
+   * @param format One of the <code>FORMAT_</code> constants.
+   * @return The file extension without dot.
+   */
+  static String getFileExtension(int format) {
+    switch(format) {
+      case FORMAT_ICALENDAR: return "ics";
+      case FORMAT_JSON_LINES: return "jsonl";
+      case FORMAT_CSV: return "csv";
+    }
+    
+    throw new IllegalArgumentException("Unknown export format: " + format);
+  }
+  
+  /**
+   * Writes the start of the export.
+   * <p>
+   * @throws IOException If writing failed.
+   */
+  void begin() throws IOException {}
+  
+  /**
+   * Writes one program.
+   * <p>
+   * @param program The program to write.
+   * @throws IOException If writing failed.
+   */
+  abstract void write(Program program) throws IOException;
+  
+  /**
+   * Writes the end of the export and flushes all buffered data.
+   * <p>
+   * @throws IOException If writing failed.
+   */
+  void end() throws IOException {
+    flushBuffer();
+    mOut.flush();
+  }
+  
+  /**
+   * Closes the output stream.
+   * <p>
+   * @throws IOException If closing failed.
+   */
+  void close() throws IOException {
+    mOut.close();
+  }
+  
+  /**
+   * Writes the content of {@link #mBuffer} and clears it.
+   * <p>
+   * @throws IOException If writing failed.
+   */
+  protected final void flushBuffer() throws IOException {
+    final int length = mBuffer.length();
+    
+    if(mChars.length < length) {
+      mChars = new char[Math.max(length, mChars.length * 2)];
+    }
+    
+    mBuffer.getChars(0, length, mChars, 0);
+    mOut.write(mChars, 0, length);
+    mBuffer.setLength(0);
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import android.os.DeadObjectException;
+import android.os.RemoteException;
+
+import org.tvbrowser.devplugin.PluginManager;
+import org.tvbrowser.devplugin.Program;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the programs of many channels with several calls to TV-Browser
+ * at the same time, since fetching them one after another is limited by
+ * the time of the binder round trips.
+ * <p>
+ * The work is split into one task per channel and time window. The tasks
+ * are ordered by window, so the first window of every channel is fetched
+ * before the second one of any channel. Windows are at most
+ * {@link #MAX_WINDOW} long, since the replies of all calls at the same time
+ * share the binder transaction buffer of the process.
+ * <p>
+ * A window whose call fails is split in half and the halves are fetched
+ * again, down to {@link #MIN_WINDOW}. A window that still fails is given
+ * to {@link Consumer#onFailed(int, long, long, Exception)} and the fetch
+ * continues with the other windows. Only if TV-Browser is gone, the fetch
+ * ends with an exception.
+ * <p>
+ * A fixed number of workers run the tasks on the given executor and put
+ * the fetched programs into a bounded queue. The consumer gets them on the
+ * thread that called {@link #fetch(int[], long[], long, Consumer)}. Workers
+ * wait while the queue is full, so only a few windows of programs are in
+ * memory at any time.
+ */
+final class ProgramFetcher {
+  /**
+   * Receives the fetched programs, always on the thread that started the fetch.
+   */
+  interface Consumer {
+    /**
+     * Called for every window with programs, in no particular order.
+     * <p>
+     * @param channelId The id of the channel of the programs.
+     * @param start The start of the window in milliseconds since 1970 in UTC timezone.
+     * @param end The end of the window in milliseconds since 1970 in UTC timezone.
+     * @param programs The programs of the channel in the window, not empty.
+     * @throws RemoteException If TV-Browser could not be called.
+     */
+    void onPrograms(int channelId, long start, long end, Program[] programs) throws RemoteException;
+    
+    /**
+     * Called for every window whose programs could not be fetched.
+     * <p>
+     * @param channelId The id of the channel of the window.
+     * @param start The start of the window in milliseconds since 1970 in UTC timezone.
+     * @param end The end of the window in milliseconds since 1970 in UTC timezone.
+     * @param error The error of the last call for the window.
+     */
+    void onFailed(int channelId, long start, long end, Exception error);
+  }
+  
+  /* the result of one task or the end of a worker if channel index is -1 */
+  private static final class Result {
+    private final int mChannel;
+    private final long mStart;
+    private final long mEnd;
+    private final Program[] mPrograms;
+    private final Exception mError;
+    
+    private Result(int channel, long start, long end, Program[] programs, Exception error) {
+      mChannel = channel;
+      mStart = start;
+      mEnd = end;
+      mPrograms = programs;
+      mError = error;
+    }
+  }
+  
+  /* time a worker waits for space in the queue before checking for cancellation */
+  private static final long OFFER_TIMEOUT_MILLIS = 100;
+  
+  /** The longest window, same as the longest range {@link ChangedProgramFinder} fetches */
+  static final long MAX_WINDOW = 24 * 60 * 60000L;
+  /** Failing windows aren't split below this length */
+  static final long MIN_WINDOW = 60 * 60000L;
+  
+  private final PluginManager mPluginManager;
+  private final ExecutorService mExecutor;
+  private final int mParallelism;
+  private final int mQueueCapacity;
+  private final long mWindow;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param pluginManager The plugin manager to fetch the programs from.
+   * @param executor The executor to run the workers on, must be able to run all workers at the same time.
+   * @param parallelism The number of calls to TV-Browser at the same time.
+   * @param queueCapacity The number of fetched windows that may wait for the consumer.
+   * @param window The time span in milliseconds of the programs fetched with one call, at most {@link #MAX_WINDOW}.
+   */
+  ProgramFetcher(PluginManager pluginManager, ExecutorService executor, int parallelism, int queueCapacity, long window) {
+    mPluginManager = pluginManager;
+    mExecutor = executor;
+    mParallelism = Math.max(1, parallelism);
+    mQueueCapacity = Math.max(1, queueCapacity);
+    mWindow = Math.max(1, Math.min(window, MAX_WINDOW));
+  }
+  
+  /**
+   * Fetches the programs of the given channels and returns when all
+   * fetched programs were given to the consumer.
+   * <p>
+   * @param channelIds The ids of the channels to fetch.
+   * @param from The start time of every channel in milliseconds since 1970 in UTC timezone.
+   * @param to The end time for all channels in milliseconds since 1970 in UTC timezone.
+   * @param consumer The consumer for the programs.
+   * @throws RemoteException If TV-Browser is gone or the fetch was interrupted, remaining tasks are not run then.
+   */
+  void fetch(final int[] channelIds, final long[] from, final long to, Consumer consumer) throws RemoteException {
+    long first = to;
+    
+    for(long start : from) {
+      first = Math.min(first, start);
+    }
+    
+    final int windows = first < to ? (int)((to - first + mWindow - 1) / mWindow) : 0;
+    final int tasks = windows * channelIds.length;
+    
+    if(tasks == 0) {
+      return;
+    }
+    
+    final BlockingQueue<Result> queue = new ArrayBlockingQueue<Result>(mQueueCapacity);
+    final AtomicInteger nextTask = new AtomicInteger();
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    
+    final long windowBase = first;
+    final int workers = Math.min(mParallelism, tasks);
+    
+    for(int w = 0; w < workers; w++) {
+      mExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            runTasks();
+          }finally {
+            offer(queue, new Result(-1, 0, 0, null, null), cancelled);
+          }
+        }
+        
+        private void runTasks() {
+          int task;
+          
+          while(!cancelled.get() && (task = nextTask.getAndIncrement()) < tasks) {
+            final int channel = task % channelIds.length;
+            final long start = Math.max(from[channel], windowBase + (task / channelIds.length) * mWindow);
+            final long end = Math.min(windowBase + (task / channelIds.length + 1) * mWindow, to);
+            
+            if(start < end && !fetchWindow(channel, start, end)) {
+              return;
+            }
+          }
+        }
+        
+        /* fetches the window and splits it if that fails, false if the fetch ends */
+        private boolean fetchWindow(int channel, long start, long end) {
+          try {
+            final Program[] programs = mPluginManager.getProgramsForChannelInRange(channelIds[channel], start, end);
+            
+            /* an empty window doesn't end the data of the channel, later windows may have programs */
+            return programs == null || programs.length == 0 || offer(queue, new Result(channel, start, end, programs, null), cancelled);
+          } catch (DeadObjectException e) {
+            /* TV-Browser is gone, no other call can succeed */
+            offer(queue, new Result(channel, start, end, null, e), cancelled);
+            return false;
+          } catch (RemoteException e) {
+            return retry(channel, start, end, e);
+          } catch (RuntimeException e) {
+            return retry(channel, start, end, e);
+          }
+        }
+        
+        /* fetches the halves of a failed window, the failure is given to the consumer if it can't be split anymore */
+        private boolean retry(int channel, long start, long end, Exception error) {
+          if(end - start <= MIN_WINDOW) {
+            return offer(queue, new Result(channel, start, end, null, error), cancelled);
+          }
+          
+          final long middle = start + (end - start) / 2;
+          
+          return fetchWindow(channel, start, middle) && fetchWindow(channel, middle, end);
+        }
+      });
+    }
+    
+    int running = workers;
+    
+    try {
+      while(running > 0) {
+        final Result result = queue.take();
+        
+        if(result.mChannel == -1) {
+          running--;
+        }
+        else if(result.mError instanceof DeadObjectException) {
+          throw (DeadObjectException)result.mError;
+        }
+        else if(result.mError != null) {
+          consumer.onFailed(channelIds[result.mChannel], result.mStart, result.mEnd, result.mError);
+        }
+        else {
+          consumer.onPrograms(channelIds[result.mChannel], result.mStart, result.mEnd, result.mPrograms);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      
+      final RemoteException interrupted = new RemoteException();
+      interrupted.initCause(e);
+      
+      throw interrupted;
+    } finally {
+      /* let waiting workers end */
+      cancelled.set(true);
+    }
+  }
+  
+  /* waits for space in the queue, false if the fetch was cancelled before */
+  private static boolean offer(BlockingQueue<Result> queue, Result result, AtomicBoolean cancelled) {
+    try {
+      while(!queue.offer(result, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+        if(cancelled.get()) {
+          return false;
+        }
+      }
+      
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
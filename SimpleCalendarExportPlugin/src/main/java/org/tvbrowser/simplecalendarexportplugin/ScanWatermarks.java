@@ -0,0 +1,164 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The state of the scans of the program data for the automatic export.
+ * <p>
+ * For every channel the end time of the last scanned program is kept as
+ * watermark, the next scan of the channel starts there. Together with the
+ * last known program id of TV-Browser at the time of the scan, a scan only
+ * fetches data that wasn't scanned before and is skipped completely if
+ * TV-Browser has no new programs.
+ * <p>
+ * The state is kept in memory and written to one small file.
+ * Access to an instance must be synchronized by the caller.
+ */
+final class ScanWatermarks {
+  private static final int MAGIC = 0x54565357;
+  private static final int VERSION = 1;
+  
+  private final ChecksummedFile mFile;
+  
+  /* the watermark by channel id */
+  private final LongLongHashMap mWatermarks = new LongLongHashMap();
+  private long mLastProgramId = -1;
+  
+  private boolean mChanged;
+  
+  /**
+   * Creates an instance of this class.
+   * <p>
+   * @param dir The directory for the watermark file.
+   */
+  ScanWatermarks(File dir) {
+    mFile = new ChecksummedFile(new File(dir, "scan_watermarks"), MAGIC, VERSION);
+  }
+  
+  /**
+   * @param channelId The id of the channel.
+   * @param defaultValue The value to return if the channel wasn't scanned yet.
+   * @return The end time of the last scanned program of the channel in milliseconds since 1970 in UTC or the default value.
+   */
+  long get(int channelId, long defaultValue) {
+    return mWatermarks.get(channelId, defaultValue);
+  }
+  
+  /**
+   * Moves the watermark of the given channel forward.
+   * <p>
+   * @param channelId The id of the channel.
+   * @param watermark The end time of the last scanned program in milliseconds since 1970 in UTC.
+   */
+  void advance(int channelId, long watermark) {
+    if(watermark > mWatermarks.get(channelId, Long.MIN_VALUE)) {
+      mWatermarks.put(channelId, watermark);
+      mChanged = true;
+    }
+  }
+  
+  /**
+   * @return The last known program id of TV-Browser at the last scan or <code>-1</code> if there was no scan.
+   */
+  long getLastProgramId() {
+    return mLastProgramId;
+  }
+  
+  /**
+   * @param programId The last known program id of TV-Browser at the current scan.
+   */
+  void setLastProgramId(long programId) {
+    if(mLastProgramId != programId) {
+      mLastProgramId = programId;
+      mChanged = true;
+    }
+  }
+  
+  /**
+   * Removes all watermarks, so the next scan fetches all data.
+   */
+  void clear() {
+    if(mWatermarks.size() > 0 || mLastProgramId != -1) {
+      mWatermarks.clear();
+      mLastProgramId = -1;
+      mChanged = true;
+    }
+  }
+  
+  /**
+   * Loads the watermarks from the file, a missing or damaged file is ignored.
+   */
+  void load() {
+    mWatermarks.clear();
+    mLastProgramId = -1;
+    
+    final boolean read = mFile.read(new ChecksummedFile.Reader() {
+      @Override
+      public void read(DataInputStream in, int version) throws IOException {
+        mLastProgramId = in.readLong();
+        
+        final int count = in.readInt();
+        
+        for(int i = 0; i < count; i++) {
+          final int channelId = in.readInt();
+          
+          mWatermarks.put(channelId, in.readLong());
+        }
+      }
+    });
+    
+    if(!read) {
+      mWatermarks.clear();
+      mLastProgramId = -1;
+    }
+    
+    mChanged = false;
+  }
+  
+  /**
+   * Writes the watermarks to the file if they were changed since the last load or save.
+   * <p>
+   * @throws IOException If the file could not be written.
+   */
+  void save() throws IOException {
+    if(!mChanged) {
+      return;
+    }
+    
+    mFile.write(new ChecksummedFile.Writer() {
+      @Override
+      public void write(DataOutputStream out) throws IOException {
+        final long[] channelIds = mWatermarks.keys();
+        
+        out.writeLong(mLastProgramId);
+        out.writeInt(channelIds.length);
+        
+        for(long channelId : channelIds) {
+          out.writeInt((int)channelId);
+          out.writeLong(mWatermarks.get(channelId, 0));
+        }
+      }
+    });
+    
+    mChanged = false;
+  }
+}
@@ -16,34 +16,54 @@
  */
 package org.tvbrowser.simplecalendarexportplugin;
 
+import android.Manifest;
 import android.app.Service;
 import android.content.ActivityNotFoundException;
 import android.content.ContentUris;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.content.SharedPreferences.Editor;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.res.Configuration;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Process;
 import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.provider.CalendarContract;
 import android.provider.CalendarContract.Events;
+import android.util.Log;
+import android.widget.Toast;
 
 import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.ChannelCache;
 import org.tvbrowser.devplugin.Plugin;
 import org.tvbrowser.devplugin.PluginManager;
 import org.tvbrowser.devplugin.PluginMenu;
 import org.tvbrowser.devplugin.Program;
 import org.tvbrowser.devplugin.ReceiveTarget;
+import org.tvbrowser.devplugin.TvBrowserSettings;
 
-import java.io.ByteArrayOutputStream;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A service class that provides a calendar export functionality for TV-Browser for Android.
@@ -56,14 +76,199 @@ public class SimpleCalendarExportPlugin extends Service {
   /* The id for the remove marking PluginMenu*/
   private static final int PLUGIN_MENU_REMOVE_MARKING = 2;
   
+  /* The id for the export all to calendar ReceiveTarget */
+  private static final int RECEIVE_TARGET_EXPORT_CALENDAR = 1;
+  /* The ids for the export to file ReceiveTargets */
+  private static final int RECEIVE_TARGET_EXPORT_ICALENDAR = 2;
+  private static final int RECEIVE_TARGET_EXPORT_JSON_LINES = 3;
+  private static final int RECEIVE_TARGET_EXPORT_CSV = 4;
+  
+  /* The sub directory of the external files directory for exported files */
+  private static final String EXPORT_DIRECTORY = "exports";
+  
+  private static final String TAG = "SimpleCalendarExport";
+  
   /* The preferences key for the marking set */
   private static final String PREF_MARKINGS = "PREF_MARKINGS";
   
+  /* The preferences key for the date of the TV-Browser data the events were last checked for */
+  private static final String PREF_LAST_KNOWN_DATA_DATE = "PREF_LAST_KNOWN_DATA_DATE";
+  
+  /* The preferences key for the id of the last program whose event was checked by the reconciliation */
+  private static final String PREF_LAST_RECONCILED_PROGRAM_ID = "PREF_LAST_RECONCILED_PROGRAM_ID";
+  
   /* The plugin manager of TV-Browser */
   private PluginManager mPluginManager;
   
-  /* The set with the marking ids */
-  private Set<String> mMarkingProgramIds;
+  /* The set with the marking ids, only used with the marking lock held */
+  private MarkingSet mMarkingProgramIds = new MarkingSet();
+  
+  /* The ids of the calendar events that were inserted directly, by program id */
+  private LongLongHashMap mEventIds = new LongLongHashMap();
+  
+  /* Guards changes of the marking set */
+  private final Object mMarkingLock = new Object();
+  
+  /* The marked ids for readers on the binder threads, published with every change of the marking set */
+  private final MarkingPublisher mMarkingPublisher = new MarkingPublisher();
+  
+  /* The program that is unmarked right now, TV-Browser asks for it while it is unmarked */
+  private volatile long mRemovingProgramId = -1;
+  
+  /* Counted down when the marking writer of the last destroyed instance has written all changes */
+  private static volatile CountDownLatch sStopped = new CountDownLatch(0);
+  
+  /* Counted down when the stored markings are loaded, closed before any binder call can come in */
+  private final CountDownLatch mMarkingsLoaded = new CountDownLatch(1);
+  
+  /* The System.nanoTime() until readers wait for the markings to be loaded */
+  private volatile long mMarkingsDeadline;
+  
+  /* The journal and snapshot files of the marking ids */
+  private MarkingStore mMarkingStore;
+  
+  /* Writes the marking changes in the background */
+  private MarkingWriter mMarkingWriter;
+  
+  /* The encoded mark icon */
+  private MarkIconCache mMarkIconCache;
+  
+  /* Runs the exports into the calendar provider */
+  private ExecutorService mExportExecutor;
+  
+  /* Runs the parallel calls of the program fetches started by the exports */
+  private ExecutorService mFetchExecutor;
+  
+  /* The fingerprints of the exported programs, only used on the export executor */
+  private EventFingerprints mEventFingerprints;
+  
+  /* The state of the scans for the automatic export, only used on the export executor */
+  private ScanWatermarks mScanWatermarks;
+  
+  /* If the calendar provider is available, probed once per process */
+  private static final boolean CALENDAR_SUPPORTED = isCalendarSupported();
+  
+  /* The context menus, recreated if the locale changes */
+  private volatile PluginMenu[] mExportMenu;
+  private volatile PluginMenu[] mUnmarkMenu;
+  
+  /* The current export settings, replaced when a preference changes */
+  private volatile ExportSettings mExportSettings;
+  
+  /* Kept as field, the preferences only hold a weak reference to the listener */
+  private final OnSharedPreferenceChangeListener mPreferenceListener = new OnSharedPreferenceChangeListener() {
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+      mExportSettings = ExportSettings.read(SimpleCalendarExportPlugin.this, sharedPreferences);
+      readCallStatisticsEnabled(sharedPreferences);
+      
+      final PluginManager pluginManager = mPluginManager;
+      
+      /* check all data for new rules */
+      if(pluginManager != null && key.equals(getString(R.string.PREF_AUTO_EXPORT_RULES))) {
+        autoExport(pluginManager, true);
+      }
+    }
+  };
+  
+  @Override
+  public void onCreate() {
+    super.onCreate();
+    
+    SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(SimpleCalendarExportPlugin.this);
+    pref.registerOnSharedPreferenceChangeListener(mPreferenceListener);
+    mExportSettings = ExportSettings.read(SimpleCalendarExportPlugin.this, pref);
+    readCallStatisticsEnabled(pref);
+    
+    mMarkingStore = new MarkingStore(getFilesDir());
+    mMarkingWriter = new MarkingWriter(mMarkingStore, new MarkingWriter.MarkingSource() {
+      @Override
+      public MarkingStore.Snapshot getSnapshot() {
+        synchronized(mMarkingLock) {
+          long[] programIds = mMarkingProgramIds.toArray();
+          long[] eventIds = new long[programIds.length];
+          
+          for(int i = 0; i < programIds.length; i++) {
+            eventIds[i] = mEventIds.get(programIds[i], -1);
+          }
+          
+          return new MarkingStore.Snapshot(programIds, eventIds);
+        }
+      }
+      
+      @Override
+      public int getMarkingCount() {
+        return mMarkingPublisher.getSnapshot().size();
+      }
+    }, getResources().getInteger(R.integer.marking_write_quiet_period), getResources().getInteger(R.integer.marking_write_max_pending));
+    
+    mMarkIconCache = new MarkIconCache(SimpleCalendarExportPlugin.this, R.drawable.ic_event_white);
+    
+    mExportExecutor = Executors.newSingleThreadExecutor();
+    mFetchExecutor = Executors.newFixedThreadPool(getResources().getInteger(R.integer.program_fetch_parallelism));
+    
+    mEventFingerprints = new EventFingerprints(getFilesDir());
+    mScanWatermarks = new ScanWatermarks(getFilesDir());
+    
+    /* The markings are loaded once for the lifetime of the service, as first task of the
+       export executor, so changes queued there and all exports run after the load */
+    final long created = System.nanoTime();
+    final long start = CallStatistics.start();
+    final CountDownLatch previousStopped = sStopped;
+    
+    mMarkingsDeadline = created + getResources().getInteger(R.integer.marking_load_max_wait) * 1000000L;
+    mExportExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          /* a previous instance may still write its last changes */
+          try {
+            previousStopped.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          
+          load();
+        }finally {
+          mMarkingsLoaded.countDown();
+          CallStatistics.end(CallStatistics.MARKINGS_READY, start);
+        }
+        
+        Log.i(TAG, "Markings ready " + (System.nanoTime() - created) / 1000000 + " ms after the start of the service");
+        
+        mEventFingerprints.load();
+        mScanWatermarks.load();
+      }
+    });
+    
+    createMenus();
+  }
+  
+  private void readCallStatisticsEnabled(SharedPreferences pref) {
+    CallStatistics.setEnabled(pref.getBoolean(getString(R.string.PREF_CALL_STATISTICS), getResources().getBoolean(R.bool.pref_call_statistics_default)));
+  }
+  
+  @Override
+  public void onConfigurationChanged(Configuration newConfig) {
+    super.onConfigurationChanged(newConfig);
+    
+    createMenus();
+    mMarkIconCache.onConfigurationChanged();
+  }
+  
+  private static boolean isCalendarSupported() {
+    try {
+      Class.forName("android.provider.CalendarContract$Events");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+  
+  private void createMenus() {
+    mExportMenu = CALENDAR_SUPPORTED ? new PluginMenu[] {new PluginMenu(PLUGIN_MENU_EXPORT_CALENDAR, getString(R.string.service_simple_calendar_export_context_title))} : null;
+    mUnmarkMenu = new PluginMenu[] {new PluginMenu(PLUGIN_MENU_REMOVE_MARKING, getString(R.string.service_simple_calendar_export_context_unmark))};
+  }
   
   /**
    * At onBind the Plugin for TV-Browser is loaded.
@@ -73,11 +278,26 @@ public class SimpleCalendarExportPlugin extends Service {
     return getBinder;
   }
   
+  /**
+   * Prints the call statistics and the state of the caches for
+   * <code>adb shell dumpsys activity service</code>.
+   */
+  @Override
+  protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+    CallStatistics.dump(writer);
+    
+    writer.println();
+    writer.println("Markings: " + mMarkingPublisher.getSnapshot().size());
+    writer.println("Interned channels: " + ChannelCache.getInternedCount() + " (hits " + ChannelCache.getHitCount() + ", misses " + ChannelCache.getMissCount() + ", evictions " + ChannelCache.getEvictionCount() + ")");
+  }
+  
   @Override
   public boolean onUnbind(Intent intent) {
     /* Don't keep instance of plugin manager*/
     mPluginManager = null;
     
+    mMarkingWriter.requestFlush();
+    
     stopSelf();
     
     return false;
@@ -88,139 +308,833 @@ public class SimpleCalendarExportPlugin extends Service {
     /* Don't keep instance of plugin manager*/
     mPluginManager = null;
     
+    PreferenceManager.getDefaultSharedPreferences(SimpleCalendarExportPlugin.this).unregisterOnSharedPreferenceChangeListener(mPreferenceListener);
+    
+    /* Running exports add markings, so the writer is stopped after them
+       as last task of the export executor instead of on the main thread */
+    final CountDownLatch stopped = new CountDownLatch(1);
+    
+    sStopped = stopped;
+    
+    mExportExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          mFetchExecutor.shutdown();
+          mMarkingWriter.shutdown();
+        }finally {
+          stopped.countDown();
+        }
+      }
+    });
+    
+    mExportExecutor.shutdown();
+    
     super.onDestroy();
   }
   
-  private void save() {
-    Editor edit = PreferenceManager.getDefaultSharedPreferences(SimpleCalendarExportPlugin.this).edit();
+  /**
+   * Waits until the stored markings are loaded, but at most until
+   * the deadline set at the start of the service, so a slow load
+   * doesn't block TV-Browser for long. Readers answer from the markings
+   * known so far after it.
+   * <p>
+   * @return <code>true</code> if the markings are loaded.
+   */
+  private boolean awaitMarkings() {
+    final CountDownLatch loaded = mMarkingsLoaded;
+    
+    if(loaded.getCount() == 0) {
+      return true;
+    }
     
-    edit.putStringSet(PREF_MARKINGS, mMarkingProgramIds);
-    edit.commit();
+    final long start = CallStatistics.start();
+    
+    try {
+      return loaded.await(mMarkingsDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }finally {
+      CallStatistics.end(CallStatistics.MARKINGS_WAIT, start);
+    }
   }
-
-  private Plugin.Stub getBinder = new Plugin.Stub() {
-    private long mRemovingProgramId = -1;
-    @Override
-    public void openPreferences(List<Channel> subscribedChannels) throws RemoteException {
-      Intent startPref = new Intent(SimpleCalendarExportPlugin.this, SimpleCalendarExportPluginPreferencesActivity.class);
-      startPref.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+  
+  /**
+   * Runs a change of the markings from a binder thread.
+   * <p>
+   * The loaded markings would replace changes made before the load is
+   * finished. If the markings aren't loaded until the deadline, the change
+   * is queued on the export executor, which runs it after the load.
+   * <p>
+   * @param change The change to run.
+   */
+  private void changeMarkings(Runnable change) {
+    if(awaitMarkings()) {
+      change.run();
+    }
+    else {
+      mExportExecutor.execute(change);
+    }
+  }
+  
+  private void save(byte op, long programId) {
+    mMarkingWriter.enqueue(op, programId);
+  }
+  
+  /**
+   * Publishes the current state of the marking set to the readers,
+   * must be called with the marking lock held after every change.
+   */
+  private void publishMarkings() {
+    mMarkingPublisher.publish(mMarkingProgramIds);
+  }
+  
+  /**
+   * Gets the snapshot of the marking set, it contains all
+   * changes that were made before this is called.
+   * <p>
+   * @return The current snapshot.
+   */
+  private MarkingSet.Snapshot getMarkedSnapshot() {
+    return mMarkingPublisher.getSnapshot();
+  }
+  
+  /**
+   * Deletes the calendar event of the given program in the background
+   * if the user wants the events of unmarked programs to be deleted.
+   */
+  private void deleteEvent(final long programId, final long eventId, final ExportSettings settings) {
+    if(settings.isDeleteOnUnmark() && (eventId != -1 || settings.getCalendarId() != -1) && canWriteCalendar()) {
+      mExportExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          if(!new CalendarBatchExporter(getContentResolver(), settings.getCalendarId(), 1).delete(programId, eventId)) {
+            Log.i(TAG, "No calendar event found for program " + programId);
+          }
+        }
+      });
+    }
+  }
+  
+  /**
+   * Reloads the subscribed channels from TV-Browser if the channel of one
+   * of the given programs is unresolved. Programs in parcel version 2 only
+   * contain the id of their channel, until the channel is in the
+   * {@link ChannelCache} they return a channel without name. Must be called
+   * right before the texts of the programs are created, not on the main thread.
+   */
+  private void resolveChannels(Program... programs) {
+    for(Program program : programs) {
+      if(program.getChannel().getChannelName() == null) {
+        final PluginManager pluginManager = mPluginManager;
+        
+        if(pluginManager != null) {
+          try {
+            ChannelCache.putAll(pluginManager.getSubscribedChannels());
+          } catch (RemoteException e) {
+            Log.w(TAG, "Could not load the channels", e);
+          }
+        }
+        
+        if(program.getChannel().getChannelName() == null) {
+          Log.w(TAG, "Channel " + program.getChannelId() + " unknown, exporting without channel name");
+        }
+        
+        return;
+      }
+    }
+  }
+  
+  private boolean canWriteCalendar() {
+    return checkPermission(Manifest.permission.WRITE_CALENDAR, Process.myPid(), Process.myUid()) == PackageManager.PERMISSION_GRANTED;
+  }
+  
+  /**
+   * Marks all given programs with one persistence transaction
+   * and informs TV-Browser about the markings.
+   */
+  private void markPrograms(PluginManager pluginManager, Program[] programs, long[] eventIds) {
+    final long[] programIds = new long[programs.length];
+    final long[] addedEventIds = new long[programs.length];
+    int count = 0;
+    
+    synchronized(mMarkingLock) {
+      for(int i = 0; i < programs.length; i++) {
+        if(eventIds[i] != -1 && mMarkingProgramIds.add(programs[i].getId())) {
+          mEventIds.put(programs[i].getId(), eventIds[i]);
+          
+          programIds[count] = programs[i].getId();
+          addedEventIds[count++] = eventIds[i];
+        }
+      }
       
-      if(mPluginManager != null) {
-        startPref.putExtra(SimpleCalendarExportPluginPreferencesActivity.DARK_THEME_EXTRA_KEY, mPluginManager.getTvBrowserSettings().isUsingDarkTheme());
+      if(count > 0) {
+        publishMarkings();
       }
       
-      startActivity(startPref);
+      mMarkingWriter.enqueueMarkings(programIds, addedEventIds, count);
     }
     
-    @Override
-    public boolean onProgramContextMenuSelected(Program program, PluginMenu pluginMenu) throws RemoteException {
-      if(pluginMenu.getId() == PLUGIN_MENU_EXPORT_CALENDAR) {
-        // Create a new insertion Intent.
-        Intent addCalendarEntry = new Intent(Intent.ACTION_EDIT);
+    if(pluginManager != null) {
+      try {
+        final boolean withIcon = pluginManager.getTvBrowserSettings().getTvbVersionCode() >= 308;
         
-        addCalendarEntry.setType(getContentResolver().getType(ContentUris.withAppendedId(CalendarContract.Events.CONTENT_URI,1)));
+        for(int i = 0; i < programs.length; i++) {
+          if(eventIds[i] != -1) {
+            if(withIcon) {
+              pluginManager.markProgramWithIcon(programs[i], SimpleCalendarExportPlugin.class.getCanonicalName());
+            }
+            else {
+              pluginManager.markProgram(programs[i]);
+            }
+          }
+        }
+      } catch (RemoteException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+  
+  /**
+   * Inserts the event for the given program into the calendar in the background
+   * and stores the id of the event. If the event could not be inserted the
+   * marking is removed again.
+   */
+  private void insertEvent(final Program program, final ExportSettings settings) {
+    final PluginManager pluginManager = mPluginManager;
+    
+    mExportExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        resolveChannels(program);
+        
+        CalendarBatchExporter exporter = new CalendarBatchExporter(getContentResolver(), settings.getCalendarId(), 1);
         
-        String desc = null;
+        long eventId = exporter.export(new Program[] {program}, new CalendarBatchExporter.EventTextFactory() {
+          @Override
+          public EventText createEventText(Program program) {
+            return settings.createEventText(program, new StringBuilder());
+          }
+        })[0];
         
-        SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(SimpleCalendarExportPlugin.this);
+        recordFingerprints(new Program[] {program}, new long[] {eventId});
         
-        String type = pref.getString(getString(R.string.PREF_CALENDAR_EXPORT_DESCRIPTION_TYPE), getString(R.string.pref_export_description_type_default));
+        boolean removed = false;
         
-        if(type.equals(getResources().getStringArray(R.array.pref_simple_string_value_array2)[1])) {
-          if(program.getDescription() != null) {
-            desc = program.getDescription();
+        synchronized(mMarkingLock) {
+          if(eventId != -1) {
+            if(mMarkingProgramIds.contains(program.getId())) {
+              mEventIds.put(program.getId(), eventId);
+              mMarkingWriter.enqueueEvent(program.getId(), eventId);
+            }
+          }
+          else if(mMarkingProgramIds.remove(program.getId())) {
+            publishMarkings();
+            save(MarkingStore.OP_REMOVE, program.getId());
+            removed = true;
           }
         }
         
-        if(desc == null && program.getShortDescription() != null) {
-          desc = program.getShortDescription();
+        if(removed && pluginManager != null) {
+          try {
+            unmarkProgram(pluginManager, program);
+          } catch (RemoteException e) {
+            e.printStackTrace();
+          }
+        }
+      }
+    });
+  }
+  
+  /**
+   * Adds the marking of a program that was exported from the context menu.
+   */
+  private final class MarkingAdd implements Runnable {
+    private final long mProgramId;
+    
+    private MarkingAdd(long programId) {
+      mProgramId = programId;
+    }
+    
+    @Override
+    public void run() {
+      synchronized(mMarkingLock) {
+        if(mMarkingProgramIds.add(mProgramId)) {
+          publishMarkings();
+          save(MarkingStore.OP_ADD, mProgramId);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Removes the marking of a program for which the user selected to
+   * unmark it in the context menu and deletes its event.
+   */
+  private void unmarkFromMenu(PluginManager pluginManager, Program program) throws RemoteException {
+    synchronized(mMarkingLock) {
+      if(!mMarkingProgramIds.contains(program.getId())) {
+        return;
+      }
+    }
+    
+    mRemovingProgramId = program.getId();
+    
+    try {
+      if(unmarkProgram(pluginManager, program)) {
+        boolean removed = false;
+        long eventId = -1;
+        
+        synchronized(mMarkingLock) {
+          if(mMarkingProgramIds.remove(program.getId())) {
+            publishMarkings();
+            eventId = mEventIds.remove(program.getId(), -1);
+            save(MarkingStore.OP_REMOVE, program.getId());
+            removed = true;
+          }
+        }
+        
+        if(removed) {
+          deleteEvent(program.getId(), eventId, mExportSettings);
+        }
+      }
+    }finally {
+      /* the removal is published already, so the program isn't reported as marked again */
+      mRemovingProgramId = -1;
+    }
+  }
+  
+  private boolean unmarkProgram(PluginManager pluginManager, Program program) throws RemoteException {
+    if(pluginManager.getTvBrowserSettings().getTvbVersionCode() >= 308) {
+      return pluginManager.unmarkProgramWithIcon(program, SimpleCalendarExportPlugin.class.getCanonicalName());
+    }
+    
+    return pluginManager.unmarkProgram(program);
+  }
+  
+  /**
+   * Checks in the background if the calendar events of the markings still
+   * exist and removes the markings whose events were deleted in the calendar.
+   */
+  private void reconcileMarkings() {
+    if(checkPermission(Manifest.permission.READ_CALENDAR, Process.myPid(), Process.myUid()) != PackageManager.PERMISSION_GRANTED) {
+      return;
+    }
+    
+    final PluginManager pluginManager = mPluginManager;
+    
+    mExportExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        long[] programIds;
+        long[] eventIds;
+        int count = 0;
+        
+        synchronized(mMarkingLock) {
+          programIds = mMarkingProgramIds.toArray();
+          eventIds = new long[programIds.length];
           
-          if(desc == null && program.getDescription() != null) {
-            if(program.getDescription().trim().length() > 160) {
-              desc = program.getDescription().trim().substring(0,160)+"\u2026";
+          /* Sorted, so the check can continue after the program checked last */
+          Arrays.sort(programIds);
+          
+          for(long programId : programIds) {
+            final long eventId = mEventIds.get(programId, -1);
+            
+            if(eventId != -1) {
+              programIds[count] = programId;
+              eventIds[count++] = eventId;
             }
-            else if(program.getDescription().trim().length() > 0) {
-              desc = program.getDescription();
+          }
+        }
+        
+        if(count == 0) {
+          return;
+        }
+        
+        programIds = Arrays.copyOf(programIds, count);
+        eventIds = Arrays.copyOf(eventIds, count);
+        
+        /* With the time budget only a part of the events may be checked,
+           over several runs the events of all markings are checked */
+        final SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(SimpleCalendarExportPlugin.this);
+        final int next = Arrays.binarySearch(programIds, pref.getLong(PREF_LAST_RECONCILED_PROGRAM_ID, Long.MIN_VALUE));
+        final int start = (next >= 0 ? next + 1 : -next - 1) % count;
+        
+        final boolean[] missing = new boolean[count];
+        final int checked = new CalendarEventChecker(getContentResolver(), getResources().getInteger(R.integer.calendar_reconcile_chunk_size)).check(eventIds, missing, start, getResources().getInteger(R.integer.calendar_reconcile_time_budget));
+        
+        if(checked > 0) {
+          pref.edit().putLong(PREF_LAST_RECONCILED_PROGRAM_ID, programIds[(start + checked - 1) % count]).apply();
+        }
+        
+        final long[] removedIds = new long[checked];
+        int removed = 0;
+        
+        synchronized(mMarkingLock) {
+          for(int n = 0; n < checked; n++) {
+            final int i = (start + n) % count;
+            
+            /* Only if the marking wasn't changed since the check */
+            if(missing[i] && mEventIds.get(programIds[i], -1) == eventIds[i] && mMarkingProgramIds.remove(programIds[i])) {
+              mEventIds.remove(programIds[i], -1);
+              save(MarkingStore.OP_REMOVE, programIds[i]);
+              removedIds[removed++] = programIds[i];
             }
           }
+          
+          if(removed > 0) {
+            publishMarkings();
+          }
         }
         
-        String title = program.getTitle();
+        Log.i(TAG, "Removed " + removed + " markings of deleted calendar events");
+        
+        if(pluginManager != null) {
+          try {
+            for(int i = 0; i < removed; i++) {
+              final Program program = pluginManager.getProgramWithId(removedIds[i]);
+              
+              if(program != null) {
+                unmarkProgram(pluginManager, program);
+              }
+            }
+          } catch (RemoteException e) {
+            e.printStackTrace();
+          }
+        }
+      }
+    });
+  }
+  
+  /**
+   * Inserts events for the given programs into the calendar and marks the
+   * programs, must be called on the export executor.
+   */
+  private void insertEvents(PluginManager pluginManager, Program[] programs, final ExportSettings settings) {
+    resolveChannels(programs);
+    
+    CalendarBatchExporter exporter = new CalendarBatchExporter(getContentResolver(), settings.getCalendarId(), settings.getBatchSize());
+    
+    long[] eventIds = exporter.export(programs, new CalendarBatchExporter.EventTextFactory() {
+      private final StringBuilder mBuffer = new StringBuilder();
+      
+      @Override
+      public EventText createEventText(Program program) {
+        return settings.createEventText(program, mBuffer);
+      }
+    });
+    
+    markPrograms(pluginManager, programs, eventIds);
+    recordFingerprints(programs, eventIds);
+  }
+  
+  /**
+   * Inserts the programs that match the automatic export rules
+   * and aren't marked yet in the background.
+   * <p>
+   * Only the data that is new since the last scan is checked,
+   * unless all data should be checked again.
+   */
+  private void autoExport(final PluginManager pluginManager, final boolean rescan) {
+    final ExportSettings settings = mExportSettings;
+    
+    if(settings.getExportRules().size() == 0 || settings.getCalendarId() == -1 || !canWriteCalendar()) {
+      return;
+    }
+    
+    mExportExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final long now = System.currentTimeMillis();
+        final long window = getResources().getInteger(R.integer.auto_export_scan_window_hours) * 60 * 60000L;
+        final ProgramFetcher fetcher = new ProgramFetcher(pluginManager, mFetchExecutor, getResources().getInteger(R.integer.program_fetch_parallelism), getResources().getInteger(R.integer.program_fetch_queue_capacity), window);
         
-        boolean channelInTitle = pref.getBoolean(getString(R.string.PREF_CALENDAR_EXPORT_TITLE_CONTAINS_CHANNEL), getResources().getBoolean(R.bool.pref_calendar_export_title_contains_channel_default));
+        if(rescan) {
+          mScanWatermarks.clear();
+        }
         
-        if(channelInTitle) {
-          if(pref.getString(getString(R.string.PREF_CALENDAR_EXPORT_TITLE_CHANNEL_POSITION), getString(R.string.pref_calendar_export_title_channel_position_default)).equals("0")) {
-            title = program.getChannel().getChannelName() + ": " + title;
+        try {
+          final TvBrowserSettings tvBrowserSettings = pluginManager.getTvBrowserSettings();
+          final long lastProgramId = tvBrowserSettings.getLastKnownProgramId();
+          
+          if(lastProgramId == mScanWatermarks.getLastProgramId()) {
+            /* no new programs since the last scan */
+            return;
           }
-          else {
-            title = title + " (" + program.getChannel().getChannelName() + ")";
+          
+          long to = now + getResources().getInteger(R.integer.auto_export_scan_days) * 24 * 60 * 60000L;
+          
+          /* there are no programs after the end of the last known data date, it's 0 if TV-Browser doesn't know it */
+          if(tvBrowserSettings.getLastKnownDataDate() > 0) {
+            to = Math.min(to, tvBrowserSettings.getLastKnownDataDate() + 24 * 60 * 60000L);
           }
+          
+          final ArrayList<Program> found = new AutoExportScanner(pluginManager, fetcher).scan(settings.getExportRules(), now, to, getMarkedSnapshot(), mScanWatermarks);
+          
+          mScanWatermarks.setLastProgramId(lastProgramId);
+          
+          Log.i(TAG, "Found " + found.size() + " programs for " + settings.getExportRules().size() + " export rules");
+          
+          if(!found.isEmpty()) {
+            insertEvents(pluginManager, found.toArray(new Program[found.size()]), settings);
+          }
+        } catch (RemoteException e) {
+          e.printStackTrace();
         }
         
-        if(!channelInTitle || pref.getBoolean(getString(R.string.PREF_CALENDAR_EXPORT_LOCATION_CONTAINS_CHANNEL), getResources().getBoolean(R.bool.pref_calendar_export_location_contains_channel_default))) {
-          addCalendarEntry.putExtra(Events.EVENT_LOCATION, program.getChannel().getChannelName());
+        try {
+          mScanWatermarks.save();
+        } catch (IOException e) {
+          e.printStackTrace();
         }
+      }
+    });
+  }
+  
+  /**
+   * Removes the watermarks of the automatic export scans in the background.
+   */
+  private void resetScanWatermarks() {
+    mExportExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        mScanWatermarks.clear();
         
-        // Add the calendar event details
-        addCalendarEntry.putExtra(Events.TITLE, title);
+        try {
+          mScanWatermarks.save();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    });
+  }
+  
+  /**
+   * Records the fingerprints of the programs whose events were inserted,
+   * must be called on the export executor.
+   */
+  private void recordFingerprints(Program[] programs, long[] eventIds) {
+    for(int i = 0; i < programs.length; i++) {
+      if(eventIds[i] != -1) {
+        mEventFingerprints.put(programs[i]);
+      }
+    }
+    
+    try {
+      mEventFingerprints.save();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+  
+  /**
+   * Starts the update of the events of changed programs and the automatic
+   * export if TV-Browser has got new data since the last check.
+   */
+  private void checkForDataUpdate(PluginManager pluginManager) throws RemoteException {
+    final long dataDate = pluginManager.getTvBrowserSettings().getLastKnownDataDate();
+    final SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(SimpleCalendarExportPlugin.this);
+    
+    if(pref.getLong(PREF_LAST_KNOWN_DATA_DATE, 0) != dataDate && canWriteCalendar()) {
+      pref.edit().putLong(PREF_LAST_KNOWN_DATA_DATE, dataDate).apply();
+      updateChangedEvents(pluginManager, dataDate);
+      autoExport(pluginManager, false);
+    }
+  }
+  
+  /**
+   * Updates the events of the exported programs whose times,
+   * title or episode title were changed by TV-Browser.
+   * <p>
+   * Only programs that are in the data delivered by the update are checked,
+   * from the programs running now up to the end of the last known data date.
+   */
+  private void updateChangedEvents(final PluginManager pluginManager, final long dataDate) {
+    final ExportSettings settings = mExportSettings;
+    
+    mExportExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final long minStart = System.currentTimeMillis() - 6 * 60 * 60000L;
+        final long maxStart = dataDate + 24 * 60 * 60000L;
+        final long[] programIds = mEventFingerprints.getProgramIds();
+        final LongLongHashMap eventIdMap = new LongLongHashMap();
+        int count = 0;
+        
+        synchronized(mMarkingLock) {
+          for(long programId : programIds) {
+            final long eventId = mMarkingProgramIds.contains(programId) ? mEventIds.get(programId, -1) : -1;
+            
+            if(eventId == -1) {
+              mEventFingerprints.remove(programId);
+            }
+            else if(mEventFingerprints.getStartTime(programId) >= minStart && mEventFingerprints.getStartTime(programId) < maxStart) {
+              eventIdMap.put(programId, eventId);
+              programIds[count++] = programId;
+            }
+          }
+        }
+        
+        try {
+          final ArrayList<Program> changed = new ChangedProgramFinder(pluginManager).find(Arrays.copyOf(programIds, count), mEventFingerprints);
+          
+          if(!changed.isEmpty()) {
+            final Program[] programs = changed.toArray(new Program[changed.size()]);
+            final long[] changedEventIds = new long[programs.length];
+            
+            for(int i = 0; i < programs.length; i++) {
+              changedEventIds[i] = eventIdMap.get(programs[i].getId(), -1);
+            }
+            
+            final boolean[] updated = new CalendarBatchExporter(getContentResolver(), settings.getCalendarId(), settings.getBatchSize()).update(programs, changedEventIds, new CalendarBatchExporter.EventTextFactory() {
+              private final StringBuilder mBuffer = new StringBuilder();
+              
+              @Override
+              public EventText createEventText(Program program) {
+                return settings.createEventText(program, mBuffer);
+              }
+            });
+            
+            int updatedCount = 0;
+            
+            for(int i = 0; i < programs.length; i++) {
+              if(updated[i]) {
+                mEventFingerprints.put(programs[i]);
+                updatedCount++;
+              }
+            }
+            
+            Log.i(TAG, "Updated " + updatedCount + " of " + programs.length + " changed events, checked " + count + " programs");
+          }
+        } catch (RemoteException e) {
+          e.printStackTrace();
+        }
+        
+        try {
+          mEventFingerprints.save();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    });
+  }
+  
+  /**
+   * Writes the given programs in the background into a new file
+   * in the exports directory of the external files directory.
+   */
+  private void exportToFile(final Program[] programs, final int format) {
+    final ExportSettings settings = mExportSettings;
+    
+    mExportExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        File dir = getExternalFilesDir(null);
         
-        String description = null;
+        if(dir == null) {
+          Log.w(TAG, "External storage not available for export");
+          return;
+        }
+        
+        dir = new File(dir, EXPORT_DIRECTORY);
         
-        if(program.getEpisodeTitle() != null) {
-          description = program.getEpisodeTitle();
+        if(!dir.isDirectory() && !dir.mkdirs()) {
+          Log.w(TAG, "Could not create export directory " + dir);
+          return;
         }
         
-        if(desc != null) {
-          if(description != null) {
-            description += "\n\n" + desc;
+        File file = new File(dir, "programs_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + "." + ProgramExporter.getFileExtension(format));
+        
+        resolveChannels(programs);
+        
+        try {
+          final long start = System.nanoTime();
+          
+          ProgramExporter exporter = ProgramExporter.create(format, new FileOutputStream(file), new CalendarBatchExporter.EventTextFactory() {
+            private final StringBuilder mBuffer = new StringBuilder();
+            
+            @Override
+            public EventText createEventText(Program program) {
+              return settings.createEventText(program, mBuffer);
+            }
+          });
+          
+          try {
+            exporter.begin();
+            
+            for(Program program : programs) {
+              exporter.write(program);
+            }
+            
+            exporter.end();
           }
-          else {
-            description = desc;
+          finally {
+            exporter.close();
           }
+          
+          Log.i(TAG, "Exported " + programs.length + " programs to " + file + " in " + ((System.nanoTime() - start) / 1000000) + " ms");
+        } catch (IOException e) {
+          Log.w(TAG, "Export to " + file + " failed", e);
+          file.delete();
+        }
+      }
+    });
+  }
+  
+  /* Tells the user that markings were lost, may be called from any thread */
+  private void showMarkingsDamaged(final int restored) {
+    new Handler(Looper.getMainLooper()).post(new Runnable() {
+      @Override
+      public void run() {
+        Toast.makeText(SimpleCalendarExportPlugin.this, getString(R.string.service_simple_calendar_export_markings_damaged, restored), Toast.LENGTH_LONG).show();
+      }
+    });
+  }
+  
+  private void load() {
+    MarkingSet markings = new MarkingSet();
+    LongLongHashMap eventIds = new LongLongHashMap();
+    
+    if(mMarkingStore.exists()) {
+      final long start = CallStatistics.start();
+      
+      try {
+        mMarkingStore.load(markings, eventIds);
+      } catch (MarkingStore.DamagedSnapshotException e) {
+        Log.w(TAG, "Markings lost, " + markings.size() + " restored from journal", e);
+        showMarkingsDamaged(markings.size());
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      
+      CallStatistics.end(CallStatistics.MARKINGS_LOAD, start);
+    }
+    else {
+      /* Migrate markings of older versions from the preferences */
+      SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(SimpleCalendarExportPlugin.this);
+      Set<String> values = pref.getStringSet(PREF_MARKINGS, null);
+      
+      if(values != null) {
+        for(String value : values) {
+          markings.add(Long.parseLong(value));
+        }
+      }
+      
+      try {
+        long[] programIds = markings.toArray();
+        long[] noEvents = new long[programIds.length];
+        Arrays.fill(noEvents, -1);
+        
+        mMarkingStore.compact(new MarkingStore.Snapshot(programIds, noEvents));
+        
+        if(values != null) {
+          Editor edit = pref.edit();
+          edit.remove(PREF_MARKINGS);
+          edit.commit();
         }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    
+    synchronized(mMarkingLock) {
+      mMarkingProgramIds = markings;
+      mEventIds = eventIds;
+      publishMarkings();
+    }
+  }
+
+  private Plugin.Stub getBinder = new Plugin.Stub() {
+    /* every call of TV-Browser is counted here by its transaction code */
+    @Override
+    public boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+      final long start = CallStatistics.start();
+      
+      try {
+        return super.onTransact(code, data, reply, flags);
+      }finally {
+        CallStatistics.endTransaction(code, start);
+      }
+    }
+    
+    @Override
+    public void openPreferences(List<Channel> subscribedChannels) throws RemoteException {
+      ChannelCache.putAll(subscribedChannels);
+    
+      Intent startPref = new Intent(SimpleCalendarExportPlugin.this, SimpleCalendarExportPluginPreferencesActivity.class);
+      startPref.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+    
+      if(mPluginManager != null) {
+        startPref.putExtra(SimpleCalendarExportPluginPreferencesActivity.DARK_THEME_EXTRA_KEY, mPluginManager.getTvBrowserSettings().isUsingDarkTheme());
+      }
+    
+      startActivity(startPref);
+    }
+    
+    @Override
+    public boolean onProgramContextMenuSelected(final Program program, PluginMenu pluginMenu) throws RemoteException {
+      if(pluginMenu.getId() == PLUGIN_MENU_EXPORT_CALENDAR) {
+        final ExportSettings settings = mExportSettings;
+      
+        if(settings.isInsertDirectly() && settings.getCalendarId() != -1 && canWriteCalendar()) {
+          changeMarkings(new MarkingAdd(program.getId()));
+          insertEvent(program, settings);
         
-        if(description != null) {
-          addCalendarEntry.putExtra(Events.DESCRIPTION, description);
+          return true;
         }
+      
+        // Create a new insertion Intent.
+        Intent addCalendarEntry = new Intent(Intent.ACTION_EDIT);
+      
+        addCalendarEntry.setType(getContentResolver().getType(ContentUris.withAppendedId(CalendarContract.Events.CONTENT_URI,1)));
+      
+        resolveChannels(program);
         
+        EventText text = settings.createEventText(program, new StringBuilder());
+      
+        if(text.getLocation() != null) {
+          addCalendarEntry.putExtra(Events.EVENT_LOCATION, text.getLocation());
+        }
+      
+        // Add the calendar event details
+        addCalendarEntry.putExtra(Events.TITLE, text.getTitle());
+      
+        if(text.getDescription() != null) {
+          addCalendarEntry.putExtra(Events.DESCRIPTION, text.getDescription());
+        }
+      
         addCalendarEntry.putExtra(CalendarContract.EXTRA_EVENT_BEGIN_TIME, program.getStartTimeInUTC());
         addCalendarEntry.putExtra(CalendarContract.EXTRA_EVENT_END_TIME,program.getEndTimeInUTC());
-        
+      
         try {
           // Use the Calendar app to add the new event.
           addCalendarEntry.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
           startActivity(addCalendarEntry);
-          mMarkingProgramIds.add(String.valueOf(program.getId()));
-          save();
+          changeMarkings(new MarkingAdd(program.getId()));
         }catch(ActivityNotFoundException anfe) {
           return false;
         }
-        
+      
         return true;
       }
       else {
-        if(mMarkingProgramIds.contains(String.valueOf(program.getId()))) {
-          mRemovingProgramId = program.getId();
-
-          boolean unmarked = false;
-
-          if(mPluginManager.getTvBrowserSettings().getTvbVersionCode() >= 308) {
-            unmarked = mPluginManager.unmarkProgramWithIcon(program,SimpleCalendarExportPlugin.class.getCanonicalName());
-          }
-          else {
-            unmarked = mPluginManager.unmarkProgram(program);
-          }
-
-          if(unmarked) {
-            mMarkingProgramIds.remove(String.valueOf(program.getId()));
-            save();
-          }
-
-          mRemovingProgramId = -1;
+        final PluginManager pluginManager = mPluginManager;
+        
+        if(pluginManager != null) {
+          changeMarkings(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                unmarkFromMenu(pluginManager, program);
+              } catch (RemoteException e) {
+                e.printStackTrace();
+              }
+            }
+          });
         }
       }
-      
+    
       return false;
     }
     
@@ -228,13 +1142,39 @@ public class SimpleCalendarExportPlugin extends Service {
     public void onDeactivation() throws RemoteException {
       /* Don't keep instance of plugin manager*/
       mPluginManager = null;
+      
+      /* TV-Browser may unbind right after, so the changes are written now, but not waited for */
+      mMarkingWriter.requestFlush();
     }
     
     @Override
-    public void onActivation(PluginManager pluginManager) throws RemoteException {
+    public void onActivation(final PluginManager pluginManager) throws RemoteException {
+      final long start = System.nanoTime();
+      
       mPluginManager = pluginManager;
       
-      mMarkingProgramIds = PreferenceManager.getDefaultSharedPreferences(SimpleCalendarExportPlugin.this).getStringSet(PREF_MARKINGS, new HashSet<String>());
+      /* TV-Browser waits for the activation, so everything else is done in the background,
+         after the markings are loaded, the export executor runs the load first */
+      mExportExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            ChannelCache.putAll(pluginManager.getSubscribedChannels());
+            
+            reconcileMarkings();
+            checkForDataUpdate(pluginManager);
+          } catch (RemoteException e) {
+            e.printStackTrace();
+          }
+        }
+      });
+      
+      Log.i(TAG, "Activation returned after " + (System.nanoTime() - start) / 1000 + " microseconds");
+    }
+    
+    @Override
+    public int getProgramParcelVersion() throws RemoteException {
+      return Program.getSupportedParcelVersion();
     }
     
     @Override
@@ -243,19 +1183,48 @@ public class SimpleCalendarExportPlugin extends Service {
     }
     
     @Override
-    public void handleFirstKnownProgramId(long programId) throws RemoteException {
+    public void handleFirstKnownProgramId(final long programId) throws RemoteException {
+      /* the data was wiped, the next scan must fetch all new data */
       if(programId == -1) {
-        mMarkingProgramIds.clear();
+        resetScanWatermarks();
       }
-      else {
-        String[] knownIds = mMarkingProgramIds.toArray(new String[mMarkingProgramIds.size()]);
-        
-        for(int i = knownIds.length-1; i >= 0; i--) {
-          if(Long.parseLong(knownIds[i]) < programId) {
-            mMarkingProgramIds.remove(knownIds[i]);
+      
+      final PluginManager pluginManager = mPluginManager;
+    
+      /* the check calls TV-Browser and reads the preferences, so it's done in the background */
+      if(pluginManager != null) {
+        mExportExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              checkForDataUpdate(pluginManager);
+            } catch (RemoteException e) {
+              e.printStackTrace();
+            }
           }
-        }
+        });
       }
+    
+      changeMarkings(new Runnable() {
+        @Override
+        public void run() {
+          synchronized(mMarkingLock) {
+            if(programId == -1) {
+              if(mMarkingProgramIds.size() > 0) {
+                mMarkingProgramIds.clear();
+                mEventIds.clear();
+                publishMarkings();
+                save(MarkingStore.OP_CLEAR, programId);
+              }
+            }
+            else if(mMarkingProgramIds.pruneBelow(programId) > 0) {
+              mEventIds.removeKeysBelow(programId);
+              publishMarkings();
+              save(MarkingStore.OP_PRUNE, programId);
+            }
+          }
+        }
+      });
     }
     
     @Override
@@ -278,24 +1247,15 @@ public class SimpleCalendarExportPlugin extends Service {
     
     @Override
     public long[] getMarkedPrograms() throws RemoteException {
-      long[] markings = new long[mMarkingProgramIds.size()];
-      
-      Iterator<String> values = mMarkingProgramIds.iterator();
+      awaitMarkings();
       
-      for(int i = 0; i < markings.length; i++) {
-        markings[i] = Long.parseLong(values.next());
-      }
-      
-      return markings;
+      /* sent as copy through the binder, so the shared array can be returned */
+      return getMarkedSnapshot().getIds();
     }
     
     @Override
     public byte[] getMarkIcon() throws RemoteException {
-      Bitmap icon = BitmapFactory.decodeResource(getResources(), R.drawable.ic_event_white);
-      ByteArrayOutputStream stream = new ByteArrayOutputStream();
-      icon.compress(Bitmap.CompressFormat.PNG, 100, stream);
-
-      return stream.toByteArray();
+      return mMarkIconCache.get();
     }
     
     @Override
@@ -310,27 +1270,13 @@ public class SimpleCalendarExportPlugin extends Service {
     
     @Override
     public PluginMenu[] getContextMenuActionsForProgram(Program program) throws RemoteException {
-      PluginMenu calendarExport = null;
+      awaitMarkings();
       
-      if(!mMarkingProgramIds.contains(String.valueOf(program.getId()))) {
-        boolean isFutureCalendar = program.getStartTimeInUTC() > System.currentTimeMillis();
-        
-        boolean showCalender = false;
-        
-        try {
-          Class.forName("android.provider.CalendarContract$Events");
-          showCalender = true;
-        } catch (ClassNotFoundException e) {}
-        
-        if(isFutureCalendar && showCalender) {
-          calendarExport = new PluginMenu(PLUGIN_MENU_EXPORT_CALENDAR, getString(R.string.service_simple_calendar_export_context_title));
-        }
-      }
-      else {
-        calendarExport = new PluginMenu(PLUGIN_MENU_REMOVE_MARKING, getString(R.string.service_simple_calendar_export_context_unmark));
+      if(getMarkedSnapshot().contains(program.getId())) {
+        return mUnmarkMenu;
       }
-      
-      return calendarExport != null ? new PluginMenu[] {calendarExport} : null;
+    
+      return program.getStartTimeInUTC() > System.currentTimeMillis() ? mExportMenu : null;
     }
     
     @Override
@@ -340,15 +1286,54 @@ public class SimpleCalendarExportPlugin extends Service {
 
     @Override
     public boolean isMarked(long programId) throws RemoteException {
-      return programId != mRemovingProgramId && mMarkingProgramIds.contains(String.valueOf(programId));
+      awaitMarkings();
+      
+      return programId != mRemovingProgramId && getMarkedSnapshot().contains(programId);
     }
     
     @Override
     public ReceiveTarget[] getAvailableProgramReceiveTargets() throws RemoteException {
-      return null;
+      ArrayList<ReceiveTarget> targets = new ArrayList<ReceiveTarget>(4);
+    
+      if(mExportSettings.getCalendarId() != -1 && canWriteCalendar()) {
+        targets.add(new ReceiveTarget(SimpleCalendarExportPlugin.this, getString(R.string.service_simple_calendar_export_receive_target_calendar), RECEIVE_TARGET_EXPORT_CALENDAR));
+      }
+    
+      targets.add(new ReceiveTarget(SimpleCalendarExportPlugin.this, getString(R.string.service_simple_calendar_export_receive_target_icalendar), RECEIVE_TARGET_EXPORT_ICALENDAR));
+      targets.add(new ReceiveTarget(SimpleCalendarExportPlugin.this, getString(R.string.service_simple_calendar_export_receive_target_json_lines), RECEIVE_TARGET_EXPORT_JSON_LINES));
+      targets.add(new ReceiveTarget(SimpleCalendarExportPlugin.this, getString(R.string.service_simple_calendar_export_receive_target_csv), RECEIVE_TARGET_EXPORT_CSV));
+    
+      return targets.toArray(new ReceiveTarget[targets.size()]);
     }
 
     @Override
-    public void receivePrograms(Program[] programs, ReceiveTarget target) throws RemoteException {}
+    public void receivePrograms(final Program[] programs, ReceiveTarget target) throws RemoteException {
+      if(programs == null || programs.length == 0) {
+        return;
+      }
+    
+      if(target.isReceiveTargetOfServiceWithId(SimpleCalendarExportPlugin.this, RECEIVE_TARGET_EXPORT_ICALENDAR)) {
+        exportToFile(programs, ProgramExporter.FORMAT_ICALENDAR);
+      }
+      else if(target.isReceiveTargetOfServiceWithId(SimpleCalendarExportPlugin.this, RECEIVE_TARGET_EXPORT_JSON_LINES)) {
+        exportToFile(programs, ProgramExporter.FORMAT_JSON_LINES);
+      }
+      else if(target.isReceiveTargetOfServiceWithId(SimpleCalendarExportPlugin.this, RECEIVE_TARGET_EXPORT_CSV)) {
+        exportToFile(programs, ProgramExporter.FORMAT_CSV);
+      }
+      else if(target.isReceiveTargetOfServiceWithId(SimpleCalendarExportPlugin.this, RECEIVE_TARGET_EXPORT_CALENDAR)) {
+        final ExportSettings settings = mExportSettings;
+        final PluginManager pluginManager = mPluginManager;
+      
+        if(settings.getCalendarId() != -1 && canWriteCalendar()) {
+          mExportExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              insertEvents(pluginManager, programs, settings);
+            }
+          });
+        }
+      }
+    }
   };
 }
@@ -18,7 +18,9 @@ package org.tvbrowser.simplecalendarexportplugin;
 
 import java.util.List;
 
+import android.Manifest;
 import android.annotation.TargetApi;
+import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceActivity;
@@ -31,6 +33,8 @@ import android.preference.PreferenceActivity;
 public class SimpleCalendarExportPluginPreferencesActivity extends PreferenceActivity {
   public static final String DARK_THEME_EXTRA_KEY = "DARK_THEME_EXTRA";
   
+  private static final int PERMISSION_REQUEST_CALENDAR = 1;
+  
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     if(getIntent().getBooleanExtra(DARK_THEME_EXTRA_KEY, false)) {
@@ -38,6 +42,10 @@ public class SimpleCalendarExportPluginPreferencesActivity extends PreferenceAct
     }
     
     super.onCreate(savedInstanceState);
+    
+    if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && checkSelfPermission(Manifest.permission.WRITE_CALENDAR) != PackageManager.PERMISSION_GRANTED) {
+      requestPermissions(new String[] {Manifest.permission.READ_CALENDAR, Manifest.permission.WRITE_CALENDAR}, PERMISSION_REQUEST_CALENDAR);
+    }
   }
   
   @Override
@@ -16,14 +16,23 @@
  */
 package org.tvbrowser.simplecalendarexportplugin;
 
+import android.Manifest;
 import android.app.Activity;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Process;
 import android.preference.CheckBoxPreference;
 import android.preference.ListPreference;
+import android.preference.Preference;
+import android.preference.Preference.OnPreferenceClickListener;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
+import android.provider.CalendarContract.Calendars;
+
+import java.util.ArrayList;
 
 /**
  * The preferences fragment for the SimpleCalenderExportPlugin.
@@ -36,9 +45,72 @@ public class SimpleCalendarExportPluginPreferencesFragment extends PreferenceFra
     super.onCreate(savedInstanceState);
     addPreferencesFromResource(R.xml.preferences_calendar_export);
     
+    Preference resetStatistics = findPreference(getString(R.string.PREF_CALL_STATISTICS_RESET));
+    
+    if(resetStatistics != null) {
+      resetStatistics.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+        @Override
+        public boolean onPreferenceClick(Preference preference) {
+          CallStatistics.reset();
+          preference.setSummary(getString(R.string.pref_call_statistics_reset_done));
+          
+          return true;
+        }
+      });
+    }
+    
     onSharedPreferenceChanged(PreferenceManager.getDefaultSharedPreferences(getActivity()), getString(R.string.PREF_CALENDAR_EXPORT_TITLE_CONTAINS_CHANNEL));
   }
 
+  @Override
+  public void onResume() {
+    super.onResume();
+    
+    /* permission may have been granted while paused */
+    updateCalendars();
+  }
+  
+  private void updateCalendars() {
+    ListPreference calendar = (ListPreference)findPreference(getString(R.string.PREF_CALENDAR_EXPORT_CALENDAR));
+    
+    if(calendar != null) {
+      ArrayList<String> names = new ArrayList<String>();
+      ArrayList<String> ids = new ArrayList<String>();
+      
+      boolean granted = getActivity().checkPermission(Manifest.permission.READ_CALENDAR, Process.myPid(), Process.myUid()) == PackageManager.PERMISSION_GRANTED;
+      
+      if(granted) {
+        Cursor calendars = getActivity().getContentResolver().query(Calendars.CONTENT_URI, new String[] {Calendars._ID, Calendars.CALENDAR_DISPLAY_NAME}, Calendars.CALENDAR_ACCESS_LEVEL + ">=" + Calendars.CAL_ACCESS_CONTRIBUTOR, null, Calendars.CALENDAR_DISPLAY_NAME);
+        
+        if(calendars != null) {
+          try {
+            while(calendars.moveToNext()) {
+              ids.add(String.valueOf(calendars.getLong(0)));
+              names.add(calendars.getString(1));
+            }
+          }
+          finally {
+            calendars.close();
+          }
+        }
+      }
+      
+      calendar.setEntries(names.toArray(new String[names.size()]));
+      calendar.setEntryValues(ids.toArray(new String[ids.size()]));
+      calendar.setEnabled(granted && !ids.isEmpty());
+      
+      if(!granted) {
+        calendar.setSummary(getString(R.string.pref_export_calendar_no_permission));
+      }
+      else if(calendar.getEntry() == null) {
+        calendar.setSummary(getString(R.string.pref_export_calendar_none));
+      }
+      else {
+        calendar.setSummary(calendar.getEntry());
+      }
+    }
+  }
+  
   @Override
   public void onAttach(Activity activity) {
     super.onAttach(activity);
@@ -72,6 +144,10 @@ public class SimpleCalendarExportPluginPreferencesFragment extends PreferenceFra
       }
     }
   
+    if(key.equals(getString(R.string.PREF_CALENDAR_EXPORT_CALENDAR))) {
+      updateCalendars();
+    }
+  
     if(key.equals(getString(R.string.PREF_CALENDAR_EXPORT_TITLE_CONTAINS_CHANNEL))) {
       CheckBoxPreference channelInTitle = (CheckBoxPreference)findPreference(key);
       CheckBoxPreference channelInLocation = (CheckBoxPreference)findPreference(getString(R.string.PREF_CALENDAR_EXPORT_LOCATION_CONTAINS_CHANNEL));
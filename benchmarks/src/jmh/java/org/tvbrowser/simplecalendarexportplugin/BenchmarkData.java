@@ -0,0 +1,84 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.Random;
+
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Creates the test data for the benchmarks.
+ */
+final class BenchmarkData {
+  private static final String WORDS = "Der Kommissar ermittelt in einem neuen Fall der ihn quer durch die Stadt führt und am Ende zu einer überraschenden Wendung kommt ";
+  
+  /* Channel logos sent by TV-Browser have a few kilobytes */
+  private static final byte[] CHANNEL_ICON = new byte[3000];
+  
+  private BenchmarkData() {}
+  
+  /**
+   * Creates a text of the given length.
+   */
+  static String text(int length) {
+    final StringBuilder text = new StringBuilder(length);
+    
+    while(text.length() < length) {
+      text.append(WORDS);
+    }
+    
+    text.setLength(length);
+    
+    return text.toString();
+  }
+  
+  /**
+   * Creates a program with the given id, starting one hour from now.
+   */
+  static Program program(long id, int descriptionLength) {
+    final long start = System.currentTimeMillis() + 60 * 60000L;
+    final String description = descriptionLength > 0 ? text(descriptionLength) : null;
+    final String shortDescription = descriptionLength > 0 ? text(Math.min(descriptionLength, 200)) : null;
+    
+    return new Program(id, start, start + 45 * 60000L, "Tatort: Die Wahrheit", shortDescription, description, "Folge " + id, channel((int)(id % 100)));
+  }
+  
+  /**
+   * Creates the channel with the given id.
+   */
+  static Channel channel(int id) {
+    return new Channel(id, "Das Erste HD", CHANNEL_ICON);
+  }
+  
+  /**
+   * Creates the given number of unique sorted program ids, like they are
+   * given by TV-Browser with gaps between the ids.
+   */
+  static long[] programIds(int count, long seed) {
+    final Random random = new Random(seed);
+    final long[] ids = new long[count];
+    long id = 1000000;
+    
+    for(int i = 0; i < count; i++) {
+      id += 1 + random.nextInt(20);
+      ids[i] = id;
+    }
+    
+    return ids;
+  }
+}
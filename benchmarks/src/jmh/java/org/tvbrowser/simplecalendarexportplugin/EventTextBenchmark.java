@@ -0,0 +1,111 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Benchmarks for building the texts of a calendar event, compares the
+ * compiled templates with the former string concatenation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventTextBenchmark {
+  @Param({"0", "160", "4000"})
+  public int descriptionLength;
+  
+  private Program mProgram;
+  private EventTemplate mTitle;
+  private EventTemplate mLocation;
+  private EventTemplate mDescription;
+  private final StringBuilder mBuffer = new StringBuilder();
+  
+  @Setup
+  public void setUp() {
+    mProgram = BenchmarkData.program(1, descriptionLength);
+    mTitle = EventTemplate.compile("{channel}: {title}");
+    mLocation = EventTemplate.compile("{channel}");
+    mDescription = EventTemplate.compile("{episode}\\n\\n{short|desc:160}");
+  }
+  
+  @Benchmark
+  public void template(Blackhole blackhole) {
+    blackhole.consume(mTitle.format(mProgram, mBuffer));
+    blackhole.consume(mLocation.format(mProgram, mBuffer));
+    blackhole.consume(mDescription.format(mProgram, mBuffer));
+  }
+  
+  @Benchmark
+  public EventTemplate compile() {
+    return EventTemplate.compile("{episode}\\n\\n{short|desc:160}");
+  }
+  
+  /**
+   * The text building of onProgramContextMenuSelected before the templates,
+   * with the channel in front of the title and the short description.
+   */
+  @Benchmark
+  public void concatenation(Blackhole blackhole) {
+    final Program program = mProgram;
+    String desc = null;
+    
+    if(program.getShortDescription() != null) {
+      desc = program.getShortDescription();
+    }
+    else if(program.getDescription() != null) {
+      if(program.getDescription().trim().length() > 160) {
+        desc = program.getDescription().trim().substring(0,160)+"…";
+      }
+      else if(program.getDescription().trim().length() > 0) {
+        desc = program.getDescription();
+      }
+    }
+    
+    String title = program.getChannel().getChannelName() + ": " + program.getTitle();
+    String location = program.getChannel().getChannelName();
+    String description = null;
+    
+    if(program.getEpisodeTitle() != null) {
+      description = program.getEpisodeTitle();
+    }
+    
+    if(desc != null) {
+      if(description != null) {
+        description += "\n\n" + desc;
+      }
+      else {
+        description = desc;
+      }
+    }
+    
+    blackhole.consume(title);
+    blackhole.consume(location);
+    blackhole.consume(description);
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Benchmarks for testing a week of programs of 60 channels against the
+ * automatic export rules, compares the compiled rules with testing every
+ * keyword of every rule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExportRulesBenchmark {
+  private static final String[] WORDS = {"Tatort", "Polizeiruf", "Nachrichten", "Wetter", "Sport", "Krimi", "Doku", "Reise", "Kochen", "Quiz", "Show", "Natur", "Tiere", "Geschichte", "Musik", "Film", "Serie", "Magazin", "Talk", "Kinder"};
+  
+  private static final int CHANNELS = 60;
+  private static final int PROGRAMS_PER_DAY = 32;
+  
+  @Param({"10", "100", "500"})
+  public int rules;
+  
+  private Program[] mPrograms;
+  private List<Channel> mChannels;
+  private ExportRules mRules;
+  
+  /* the rules for the naive matching, lower case keywords and channel ids, null for all channels */
+  private String[][] mKeywords;
+  private int[][] mChannelIds;
+  
+  @Setup
+  public void setUp() {
+    final Random random = new Random(42);
+    
+    mChannels = new ArrayList<Channel>();
+    
+    for(int i = 0; i < CHANNELS; i++) {
+      mChannels.add(new Channel(i, "Channel " + i, null));
+    }
+    
+    final long start = System.currentTimeMillis();
+    final long duration = 24 * 60 * 60000L / PROGRAMS_PER_DAY;
+    
+    mPrograms = new Program[CHANNELS * 7 * PROGRAMS_PER_DAY];
+    
+    for(int i = 0; i < mPrograms.length; i++) {
+      final String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000);
+      final long programStart = start + (i / CHANNELS) * duration;
+      
+      mPrograms[i] = new Program(i, programStart, programStart + duration, title, null, null, null, mChannels.get(i % CHANNELS));
+    }
+    
+    /* keywords that rarely match, like the titles of series, on some channels */
+    final StringBuilder text = new StringBuilder();
+    
+    mKeywords = new String[rules][];
+    mChannelIds = new int[rules][];
+    
+    for(int rule = 0; rule < rules; rule++) {
+      final int keywords = 1 + random.nextInt(3);
+      
+      mKeywords[rule] = new String[keywords];
+      
+      for(int k = 0; k < keywords; k++) {
+        mKeywords[rule][k] = WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000);
+        text.append(k > 0 ? ", " : "").append(mKeywords[rule][k]);
+        mKeywords[rule][k] = mKeywords[rule][k].toLowerCase(Locale.ROOT);
+      }
+      
+      if(random.nextBoolean()) {
+        mChannelIds[rule] = new int[] {random.nextInt(CHANNELS), random.nextInt(CHANNELS)};
+        text.append("; Channel ").append(mChannelIds[rule][0]).append(", Channel ").append(mChannelIds[rule][1]);
+      }
+      
+      text.append('\n');
+    }
+    
+    mRules = ExportRules.parse(text.toString());
+  }
+  
+  @Benchmark
+  public int compiledRules() {
+    final ExportRules.Matcher matcher = mRules.createMatcher(mChannels);
+    int count = 0;
+    
+    for(Program program : mPrograms) {
+      if(matcher.matches(program)) {
+        count++;
+      }
+    }
+    
+    return count;
+  }
+  
+  /**
+   * Tests every keyword of every rule with String.contains.
+   */
+  @Benchmark
+  public int everyRule() {
+    int count = 0;
+    
+    for(Program program : mPrograms) {
+      final String title = program.getTitle().toLowerCase(Locale.ROOT);
+      
+      rules:
+      for(int rule = 0; rule < mKeywords.length; rule++) {
+        if(mChannelIds[rule] != null && mChannelIds[rule][0] != program.getChannelId() && mChannelIds[rule][1] != program.getChannelId()) {
+          continue;
+        }
+        
+        for(String keyword : mKeywords[rule]) {
+          if(title.contains(keyword)) {
+            count++;
+            break rules;
+          }
+        }
+      }
+    }
+    
+    return count;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Benchmarks for the file exporters with a large selection of programs.
+ * <p>
+ * The score is the number of exported programs per second and with the
+ * gc profiler <code>gc.alloc.rate.norm</code> is the number of bytes
+ * allocated per program. The iCalendar export allocates the texts of
+ * the events, the other formats only reuse their buffers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ExporterBenchmark {
+  private static final int PROGRAM_COUNT = 10000;
+  
+  @Param({"1", "2", "3"})
+  public int format;
+  
+  private Program[] mPrograms;
+  private CalendarBatchExporter.EventTextFactory mEventTexts;
+  
+  @Setup
+  public void setUp() {
+    mPrograms = new Program[PROGRAM_COUNT];
+    
+    for(int i = 0; i < PROGRAM_COUNT; i++) {
+      mPrograms[i] = BenchmarkData.program(i, 600);
+    }
+    
+    /* the default templates of the calendar export */
+    final EventTemplate title = EventTemplate.compile("{title}");
+    final EventTemplate location = EventTemplate.compile("{channel}");
+    final EventTemplate description = EventTemplate.compile("{episode}\\n\\n{short|desc:160}");
+    
+    mEventTexts = new CalendarBatchExporter.EventTextFactory() {
+      private final StringBuilder mBuffer = new StringBuilder();
+      
+      @Override
+      public EventText createEventText(Program program) {
+        return new EventText(title.format(program, mBuffer), location.format(program, mBuffer), description.format(program, mBuffer));
+      }
+    };
+  }
+  
+  @Benchmark
+  @OperationsPerInvocation(PROGRAM_COUNT)
+  public long export() throws IOException {
+    final CountingOutputStream out = new CountingOutputStream();
+    final ProgramExporter exporter = ProgramExporter.create(format, out, mEventTexts);
+    
+    exporter.begin();
+    
+    for(Program program : mPrograms) {
+      exporter.write(program);
+    }
+    
+    exporter.end();
+    exporter.close();
+    
+    return out.mCount;
+  }
+  
+  private static final class CountingOutputStream extends OutputStream {
+    private long mCount;
+    
+    @Override
+    public void write(int b) {
+      mCount++;
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) {
+      mCount += len;
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.util.DisplayMetrics;
+
+/**
+ * Benchmarks for getMarkIcon: the icon in memory, a cold start that reads
+ * the cached file and the first start that has to encode the icon.
+ * <p>
+ * The package manager stand-in counts its calls, the warm path must not make any.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MarkIconCacheBenchmark {
+  @Param({"160", "480"})
+  public int densityDpi;
+  
+  private File mCacheDir;
+  private BenchmarkContext mContext;
+  private MarkIconCache mWarm;
+  
+  @Setup
+  public void setUp() throws IOException {
+    mCacheDir = Files.createTempDirectory("mark_icon").toFile();
+    
+    final DisplayMetrics metrics = new DisplayMetrics();
+    metrics.densityDpi = densityDpi;
+    
+    mContext = new BenchmarkContext(mCacheDir, new Resources(metrics));
+    mWarm = new MarkIconCache(mContext, 1);
+    mWarm.get();
+  }
+  
+  @TearDown
+  public void tearDown() {
+    final File[] files = mCacheDir.listFiles();
+    
+    if(files != null) {
+      for(File file : files) {
+        file.delete();
+      }
+    }
+    
+    mCacheDir.delete();
+    
+    if(mContext.mPackageInfoCalls != 1) {
+      throw new IllegalStateException("Package manager called " + mContext.mPackageInfoCalls + " times");
+    }
+  }
+  
+  @Benchmark
+  public byte[] warm() {
+    return mWarm.get();
+  }
+  
+  @Benchmark
+  public byte[] coldCachedFile() {
+    final BenchmarkContext context = new BenchmarkContext(mCacheDir, mContext.getResources());
+    
+    return new MarkIconCache(context, 1).get();
+  }
+  
+  @Benchmark
+  public byte[] coldEncode(EmptyCache empty) {
+    return new MarkIconCache(empty.mContext, 1).get();
+  }
+  
+  /**
+   * A cache directory that is emptied before every invocation.
+   */
+  @State(Scope.Thread)
+  public static class EmptyCache {
+    private BenchmarkContext mContext;
+    
+    @Setup(Level.Invocation)
+    public void setUp(MarkIconCacheBenchmark benchmark) {
+      final File[] files = benchmark.mCacheDir.listFiles();
+      
+      if(files != null) {
+        for(File file : files) {
+          file.delete();
+        }
+      }
+      
+      mContext = new BenchmarkContext(benchmark.mCacheDir, benchmark.mContext.getResources());
+    }
+  }
+  
+  private static final class BenchmarkContext extends Context {
+    private final File mCacheDir;
+    private final Resources mResources;
+    private int mPackageInfoCalls;
+    
+    private final PackageManager mPackageManager = new PackageManager() {
+      @Override
+      public PackageInfo getPackageInfo(String packageName, int flags) {
+        mPackageInfoCalls++;
+        
+        final PackageInfo info = new PackageInfo();
+        info.packageName = packageName;
+        info.versionCode = 42;
+        
+        return info;
+      }
+    };
+    
+    BenchmarkContext(File cacheDir, Resources resources) {
+      mCacheDir = cacheDir;
+      mResources = resources;
+    }
+    
+    @Override
+    public File getCacheDir() {
+      return mCacheDir;
+    }
+    
+    @Override
+    public Resources getResources() {
+      return mResources;
+    }
+    
+    @Override
+    public PackageManager getPackageManager() {
+      return mPackageManager;
+    }
+    
+    @Override
+    public String getPackageName() {
+      return "org.tvbrowser.simplecalendarexportplugin";
+    }
+  }
+}
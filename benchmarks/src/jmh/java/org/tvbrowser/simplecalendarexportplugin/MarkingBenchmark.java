@@ -0,0 +1,100 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.tvbrowser.devplugin.PluginMenu;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Benchmarks for the marking lookups behind isMarked, getMarkedPrograms,
+ * and getContextMenuActionsForProgram.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MarkingBenchmark {
+  private static final int LOOKUPS = 1024;
+  
+  @Param({"100", "10000", "1000000"})
+  public int markingCount;
+  
+  private long[] mIds;
+  private MarkingSet mMarkings;
+  
+  /* Ids to look up, half of them marked */
+  private long[] mLookups;
+  private int mLookupIndex;
+  
+  private Program mMarkedProgram;
+  private Program mUnmarkedProgram;
+  private PluginMenu[] mExportMenu;
+  private PluginMenu[] mUnmarkMenu;
+  
+  @Setup
+  public void setUp() {
+    mIds = BenchmarkData.programIds(markingCount, 42);
+    mLookups = new long[LOOKUPS];
+    
+    for(int i = 0; i < LOOKUPS; i++) {
+      final long id = mIds[(int)((i * 7919L) % markingCount)];
+      mLookups[i] = (i & 1) == 0 ? id : -id;
+    }
+    
+    mMarkedProgram = BenchmarkData.program(mIds[markingCount / 2], 0);
+    mUnmarkedProgram = BenchmarkData.program(-1, 0);
+    mExportMenu = new PluginMenu[] {new PluginMenu(1, "Export to calendar")};
+    mUnmarkMenu = new PluginMenu[] {new PluginMenu(2, "Remove marking")};
+    
+    mMarkings = new MarkingSet();
+    
+    for(long id : mIds) {
+      mMarkings.add(id);
+    }
+  }
+  
+  @Benchmark
+  public boolean isMarked() {
+    final long id = mLookups[mLookupIndex++ & (LOOKUPS - 1)];
+    return mMarkings.contains(id);
+  }
+  
+  @Benchmark
+  public long[] getMarkedPrograms() {
+    return mMarkings.toArray();
+  }
+  
+  @Benchmark
+  public PluginMenu[] getContextMenuActionsForProgram() {
+    final Program program = (mLookupIndex++ & 1) == 0 ? mMarkedProgram : mUnmarkedProgram;
+    
+    if(mMarkings.contains(program.getId())) {
+      return mUnmarkMenu;
+    }
+    
+    return program.getStartTimeInUTC() > System.currentTimeMillis() ? mExportMenu : null;
+  }
+}
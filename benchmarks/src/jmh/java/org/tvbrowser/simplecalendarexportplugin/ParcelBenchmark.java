@@ -0,0 +1,140 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tvbrowser.devplugin.ChannelCache;
+import org.tvbrowser.devplugin.Program;
+
+import android.os.Parcel;
+
+/**
+ * Benchmarks for writing programs into and reading them from a Parcel,
+ * like it is done for every program TV-Browser gives to the plugin.
+ * <p>
+ * The array benchmarks use programs of the same channel, like the
+ * programs TV-Browser gives to receivePrograms. decodeArray only reads
+ * the id and start time of the programs like the menu and marking calls,
+ * decodeArrayWithTexts also reads all texts like an export.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ParcelBenchmark {
+  private static final int ARRAY_SIZE = 200;
+  
+  @Param({"0", "160", "4000"})
+  public int descriptionLength;
+  
+  @Param({"1", "2", "3"})
+  public int parcelVersion;
+  
+  private Program mProgram;
+  private Program[] mPrograms;
+  private Parcel mWriteParcel;
+  private Parcel mReadParcel;
+  private Parcel mReadArrayParcel;
+  private long mSum;
+  
+  @Setup
+  public void setUp() {
+    ChannelCache.put(BenchmarkData.channel(1));
+    
+    mProgram = BenchmarkData.program(1, descriptionLength);
+    mPrograms = new Program[ARRAY_SIZE];
+    
+    for(int i = 0; i < ARRAY_SIZE; i++) {
+      mPrograms[i] = BenchmarkData.program(i * 100 + 1, descriptionLength);
+    }
+    
+    mWriteParcel = Parcel.obtain();
+    mReadParcel = Parcel.obtain();
+    mProgram.writeToParcel(mReadParcel, 0, parcelVersion);
+    mReadArrayParcel = Parcel.obtain();
+    writeArray(mReadArrayParcel);
+  }
+  
+  private void writeArray(Parcel dest) {
+    dest.writeInt(mPrograms.length);
+    
+    for(Program program : mPrograms) {
+      program.writeToParcel(dest, 0, parcelVersion);
+    }
+  }
+  
+  @Benchmark
+  public int encode() {
+    mWriteParcel.setDataPosition(0);
+    mProgram.writeToParcel(mWriteParcel, 0, parcelVersion);
+    
+    return mWriteParcel.dataPosition();
+  }
+  
+  @Benchmark
+  public Program decode() {
+    mReadParcel.setDataPosition(0);
+    
+    return Program.CREATOR.createFromParcel(mReadParcel);
+  }
+  
+  @Benchmark
+  public int encodeArray() {
+    mWriteParcel.setDataPosition(0);
+    writeArray(mWriteParcel);
+    
+    return mWriteParcel.dataPosition();
+  }
+  
+  @Benchmark
+  public Program[] decodeArray() {
+    mReadArrayParcel.setDataPosition(0);
+    
+    final Program[] programs = Program.CREATOR.newArray(mReadArrayParcel.readInt());
+    
+    for(int i = 0; i < programs.length; i++) {
+      programs[i] = Program.CREATOR.createFromParcel(mReadArrayParcel);
+      mSum += programs[i].getId() + programs[i].getStartTimeInUTC();
+    }
+    
+    return programs;
+  }
+  
+  @Benchmark
+  public long decodeArrayWithTexts(Blackhole blackhole) {
+    final Program[] programs = decodeArray();
+    long sum = 0;
+    
+    for(Program program : programs) {
+      blackhole.consume(program.getShortDescription());
+      blackhole.consume(program.getDescription());
+      blackhole.consume(program.getEpisodeTitle());
+      sum += program.getStartTimeInUTC();
+    }
+    
+    return sum;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for handleFirstKnownProgramId, that prunes the markings
+ * of programs TV-Browser has deleted. The markings are created again
+ * for every call, so every call prunes the same part of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+public class PruneBenchmark {
+  @Param({"100", "10000", "1000000"})
+  public int markingCount;
+  
+  /* The part of the markings that is pruned in percent */
+  @Param({"1", "50"})
+  public int prunePercent;
+  
+  private long[] mIds;
+  private long mFirstKnownId;
+  private MarkingSet mMarkings;
+  private LongLongHashMap mEventIds;
+  
+  @Setup
+  public void setUp() {
+    mIds = BenchmarkData.programIds(markingCount, 42);
+    mFirstKnownId = mIds[(int)((long)markingCount * prunePercent / 100)];
+  }
+  
+  @Setup(Level.Invocation)
+  public void fill() {
+    mMarkings = new MarkingSet();
+    mEventIds = new LongLongHashMap();
+    
+    for(long id : mIds) {
+      mMarkings.add(id);
+      mEventIds.put(id, id + 1);
+    }
+  }
+  
+  @Benchmark
+  public int handleFirstKnownProgramId() {
+    final int removed = mMarkings.pruneBelow(mFirstKnownId);
+    
+    if(removed > 0) {
+      mEventIds.removeKeysBelow(mFirstKnownId);
+    }
+    
+    return removed;
+  }
+}
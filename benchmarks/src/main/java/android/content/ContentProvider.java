@@ -0,0 +1,29 @@
+package android.content;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.util.ArrayList;
+
+/**
+ * Stand-in for the Android ContentProvider with the methods used by batches and queries.
+ */
+public abstract class ContentProvider {
+  public abstract Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder);
+  
+  public abstract Uri insert(Uri uri, ContentValues values);
+  
+  public abstract int update(Uri uri, ContentValues values, String selection, String[] selectionArgs);
+  
+  public abstract int delete(Uri uri, String selection, String[] selectionArgs);
+  
+  public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+    final ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+    
+    for(int i = 0; i < results.length; i++) {
+      results[i] = operations.get(i).apply(this, results, i);
+    }
+    
+    return results;
+  }
+}
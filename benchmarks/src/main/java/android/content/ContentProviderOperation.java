@@ -0,0 +1,128 @@
+package android.content;
+
+import android.net.Uri;
+
+/**
+ * Stand-in for the Android ContentProviderOperation.
+ * <p>
+ * Like on a device an operation is applied by calling the matching method
+ * of the provider, an insert without result and an update or delete with
+ * an unexpected count fail with an {@link OperationApplicationException}.
+ */
+public class ContentProviderOperation {
+  private static final int TYPE_INSERT = 1;
+  private static final int TYPE_UPDATE = 2;
+  private static final int TYPE_DELETE = 3;
+  
+  private final int mType;
+  private final Uri mUri;
+  private final ContentValues mValues;
+  private final Integer mExpectedCount;
+  
+  private ContentProviderOperation(Builder builder) {
+    mType = builder.mType;
+    mUri = builder.mUri;
+    mValues = builder.mValues;
+    mExpectedCount = builder.mExpectedCount;
+  }
+  
+  public static Builder newInsert(Uri uri) {
+    return new Builder(TYPE_INSERT, uri);
+  }
+  
+  public static Builder newUpdate(Uri uri) {
+    return new Builder(TYPE_UPDATE, uri);
+  }
+  
+  public static Builder newDelete(Uri uri) {
+    return new Builder(TYPE_DELETE, uri);
+  }
+  
+  public Uri getUri() {
+    return mUri;
+  }
+  
+  public boolean isInsert() {
+    return mType == TYPE_INSERT;
+  }
+  
+  public boolean isUpdate() {
+    return mType == TYPE_UPDATE;
+  }
+  
+  public boolean isDelete() {
+    return mType == TYPE_DELETE;
+  }
+  
+  public ContentProviderResult apply(ContentProvider provider, ContentProviderResult[] backRefs, int numBackRefs) throws OperationApplicationException {
+    if(mType == TYPE_INSERT) {
+      final Uri newUri = provider.insert(mUri, mValues);
+      
+      if(newUri == null) {
+        throw new OperationApplicationException("insert failed");
+      }
+      
+      return new ContentProviderResult(newUri);
+    }
+    
+    final int count = mType == TYPE_UPDATE ? provider.update(mUri, mValues, null, null) : provider.delete(mUri, null, null);
+    
+    if(mExpectedCount != null && mExpectedCount.intValue() != count) {
+      throw new OperationApplicationException("wrong number of rows: " + count);
+    }
+    
+    return new ContentProviderResult(count);
+  }
+  
+  public static class Builder {
+    private final int mType;
+    private final Uri mUri;
+    private ContentValues mValues;
+    private Integer mExpectedCount;
+    
+    private Builder(int type, Uri uri) {
+      mType = type;
+      mUri = uri;
+    }
+    
+    public Builder withValues(ContentValues values) {
+      if(mValues == null) {
+        mValues = new ContentValues();
+      }
+      
+      mValues.putAll(values);
+      
+      return this;
+    }
+    
+    public Builder withValue(String key, Object value) {
+      if(mValues == null) {
+        mValues = new ContentValues();
+      }
+      
+      if(value instanceof Long) {
+        mValues.put(key, (Long)value);
+      }
+      else if(value instanceof Integer) {
+        mValues.put(key, (Integer)value);
+      }
+      else if(value instanceof Boolean) {
+        mValues.put(key, (Boolean)value);
+      }
+      else {
+        mValues.put(key, value != null ? value.toString() : null);
+      }
+      
+      return this;
+    }
+    
+    public Builder withExpectedCount(int count) {
+      mExpectedCount = Integer.valueOf(count);
+      return this;
+    }
+    
+    public ContentProviderOperation build() {
+      return new ContentProviderOperation(this);
+    }
+  }
+}
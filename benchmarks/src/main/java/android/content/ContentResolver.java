@@ -0,0 +1,33 @@
+package android.content;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+
+/**
+ * Stand-in for the Android ContentResolver that routes all calls to
+ * the provider returned by {@link #acquireProvider(String)}.
+ */
+public abstract class ContentResolver {
+  public ContentResolver(Context context) {}
+  
+  /**
+   * @param authority The authority of the provider.
+   * @return The provider for the authority, stand-in only.
+   */
+  protected abstract ContentProvider acquireProvider(String authority);
+  
+  public final Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    return acquireProvider(uri.getAuthority()).query(uri, projection, selection, selectionArgs, sortOrder);
+  }
+  
+  public ContentProviderResult[] applyBatch(String authority, ArrayList<ContentProviderOperation> operations) throws RemoteException, OperationApplicationException {
+    return acquireProvider(authority).applyBatch(operations);
+  }
+  
+  public final int delete(Uri url, String where, String[] selectionArgs) {
+    return acquireProvider(url.getAuthority()).delete(url, where, selectionArgs);
+  }
+}
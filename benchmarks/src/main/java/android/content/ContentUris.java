@@ -0,0 +1,20 @@
+package android.content;
+
+import android.net.Uri;
+
+/**
+ * Stand-in for the Android ContentUris.
+ */
+public final class ContentUris {
+  private ContentUris() {}
+  
+  public static Uri withAppendedId(Uri contentUri, long id) {
+    return Uri.parse(contentUri + "/" + id);
+  }
+  
+  public static long parseId(Uri contentUri) {
+    final String last = contentUri.getLastPathSegment();
+    
+    return last == null ? -1 : Long.parseLong(last);
+  }
+}
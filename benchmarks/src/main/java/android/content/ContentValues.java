@@ -0,0 +1,59 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Stand-in for the Android ContentValues backed by a HashMap.
+ */
+public final class ContentValues {
+  private final HashMap<String, Object> mValues = new HashMap<String, Object>();
+  
+  public void put(String key, String value) {
+    mValues.put(key, value);
+  }
+  
+  public void put(String key, Integer value) {
+    mValues.put(key, value);
+  }
+  
+  public void put(String key, Long value) {
+    mValues.put(key, value);
+  }
+  
+  public void put(String key, Boolean value) {
+    mValues.put(key, value);
+  }
+  
+  public void putAll(ContentValues other) {
+    mValues.putAll(other.mValues);
+  }
+  
+  public Object get(String key) {
+    return mValues.get(key);
+  }
+  
+  public String getAsString(String key) {
+    final Object value = mValues.get(key);
+    
+    return value != null ? value.toString() : null;
+  }
+  
+  public Long getAsLong(String key) {
+    final Object value = mValues.get(key);
+    
+    return value instanceof Number ? Long.valueOf(((Number)value).longValue()) : value != null ? Long.valueOf(value.toString()) : null;
+  }
+  
+  public boolean containsKey(String key) {
+    return mValues.containsKey(key);
+  }
+  
+  public Set<String> keySet() {
+    return mValues.keySet();
+  }
+  
+  public int size() {
+    return mValues.size();
+  }
+}
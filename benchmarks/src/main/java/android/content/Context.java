@@ -0,0 +1,20 @@
+package android.content;
+
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+
+import java.io.File;
+
+/**
+ * Stand-in for the Android Context with the methods the plugin classes
+ * in this module use.
+ */
+public abstract class Context {
+  public abstract File getCacheDir();
+  
+  public abstract Resources getResources();
+  
+  public abstract PackageManager getPackageManager();
+  
+  public abstract String getPackageName();
+}
@@ -0,0 +1,12 @@
+package android.content;
+
+/**
+ * Stand-in for the Android OperationApplicationException.
+ */
+public class OperationApplicationException extends Exception {
+  public OperationApplicationException() {}
+  
+  public OperationApplicationException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,10 @@
+package android.content.pm;
+
+/**
+ * Stand-in for the Android PackageInfo.
+ */
+public class PackageInfo {
+  public String packageName;
+  public int versionCode;
+  public String versionName;
+}
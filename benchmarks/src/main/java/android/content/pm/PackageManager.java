@@ -0,0 +1,16 @@
+package android.content.pm;
+
+/**
+ * Stand-in for the Android PackageManager.
+ */
+public abstract class PackageManager {
+  public abstract PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException;
+  
+  public static class NameNotFoundException extends Exception {
+    public NameNotFoundException() {}
+    
+    public NameNotFoundException(String name) {
+      super(name);
+    }
+  }
+}
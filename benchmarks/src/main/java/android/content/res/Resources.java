@@ -0,0 +1,18 @@
+package android.content.res;
+
+import android.util.DisplayMetrics;
+
+/**
+ * Stand-in for the Android Resources, only provides the display metrics.
+ */
+public class Resources {
+  private final DisplayMetrics mMetrics;
+  
+  public Resources(DisplayMetrics metrics) {
+    mMetrics = metrics;
+  }
+  
+  public DisplayMetrics getDisplayMetrics() {
+    return mMetrics;
+  }
+}
@@ -0,0 +1,15 @@
+package android.database;
+
+import java.io.Closeable;
+
+/**
+ * Stand-in for the Android Cursor with the methods used to read query results.
+ */
+public interface Cursor extends Closeable {
+  boolean moveToNext();
+  
+  long getLong(int columnIndex);
+  
+  @Override
+  void close();
+}
@@ -0,0 +1,50 @@
+package android.graphics;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Stand-in for the Android Bitmap backed by a BufferedImage, PNG
+ * compression is done by ImageIO, so the work is comparable to the
+ * encoding on a device.
+ */
+public final class Bitmap {
+  public enum CompressFormat {
+    JPEG,
+    PNG,
+    WEBP
+  }
+  
+  private BufferedImage mImage;
+  
+  Bitmap(BufferedImage image) {
+    mImage = image;
+  }
+  
+  public int getWidth() {
+    return mImage.getWidth();
+  }
+  
+  public int getHeight() {
+    return mImage.getHeight();
+  }
+  
+  public boolean compress(CompressFormat format, int quality, OutputStream stream) {
+    if(format != CompressFormat.PNG) {
+      throw new UnsupportedOperationException(format.name());
+    }
+    
+    try {
+      return ImageIO.write(mImage, "png", stream);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+  
+  public void recycle() {
+    mImage = null;
+  }
+}
@@ -0,0 +1,29 @@
+package android.graphics;
+
+import android.content.res.Resources;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Stand-in for the Android BitmapFactory.
+ * <p>
+ * There are no resources, every resource is decoded as a 24dp icon
+ * with a simple anti-aliased pattern scaled to the screen density.
+ */
+public final class BitmapFactory {
+  private BitmapFactory() {}
+  
+  public static Bitmap decodeResource(Resources res, int id) {
+    final int size = 24 * res.getDisplayMetrics().densityDpi / 160;
+    final BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    
+    for(int y = 0; y < size; y++) {
+      for(int x = 0; x < size; x++) {
+        final int alpha = (x * 7 + y * 13 + id) % 5 == 0 ? 0x80 : (x > size / 6 && x < size * 5 / 6 && y > size / 6 && y < size * 5 / 6) ? 0xFF : 0;
+        image.setRGB(x, y, (alpha << 24) | 0xFFFFFF);
+      }
+    }
+    
+    return new Bitmap(image);
+  }
+}
@@ -0,0 +1,49 @@
+package android.net;
+
+/**
+ * Stand-in for the Android Uri, only keeps the string form.
+ */
+public final class Uri {
+  private final String mUri;
+  
+  private Uri(String uri) {
+    mUri = uri;
+  }
+  
+  public static Uri parse(String uriString) {
+    return new Uri(uriString);
+  }
+  
+  public String getAuthority() {
+    final int start = mUri.indexOf("://");
+    
+    if(start < 0) {
+      return null;
+    }
+    
+    final int end = mUri.indexOf('/', start + 3);
+    
+    return end < 0 ? mUri.substring(start + 3) : mUri.substring(start + 3, end);
+  }
+  
+  public String getLastPathSegment() {
+    final int slash = mUri.lastIndexOf('/');
+    
+    return slash >= 0 && slash < mUri.length() - 1 ? mUri.substring(slash + 1) : null;
+  }
+  
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Uri && ((Uri)o).mUri.equals(mUri);
+  }
+  
+  @Override
+  public int hashCode() {
+    return mUri.hashCode();
+  }
+  
+  @Override
+  public String toString() {
+    return mUri;
+  }
+}
@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * Stand-in for the Android Build with the version of a current device.
+ */
+public class Build {
+  public static class VERSION {
+    public static final int SDK_INT = 28;
+  }
+  
+  public static class VERSION_CODES {
+    public static final int JELLY_BEAN_MR1 = 17;
+    public static final int KITKAT = 19;
+    public static final int M = 23;
+  }
+}
@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * Stand-in for the Android DeadObjectException.
+ */
+public class DeadObjectException extends RemoteException {
+  public DeadObjectException() {}
+  
+  public DeadObjectException(String message) {
+    super(message);
+  }
+}
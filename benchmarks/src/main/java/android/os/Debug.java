@@ -0,0 +1,35 @@
+package android.os;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Stand-in for the Android Debug, the garbage collection counters
+ * come from the JVM, the other runtime counters aren't available.
+ */
+public final class Debug {
+  private Debug() {}
+  
+  public static String getRuntimeStat(String statName) {
+    long count = 0;
+    long time = 0;
+    
+    for(GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, bean.getCollectionCount());
+      time += Math.max(0, bean.getCollectionTime());
+    }
+    
+    if("art.gc.gc-count".equals(statName)) {
+      return String.valueOf(count);
+    }
+    else if("art.gc.gc-time".equals(statName)) {
+      return String.valueOf(time);
+    }
+    
+    return null;
+  }
+  
+  public static long getNativeHeapAllocatedSize() {
+    return 0;
+  }
+}
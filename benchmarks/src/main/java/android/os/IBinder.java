@@ -0,0 +1,10 @@
+package android.os;
+
+/**
+ * Stand-in for the Android IBinder with the transaction codes.
+ */
+public interface IBinder {
+  int FIRST_CALL_TRANSACTION = 0x00000001;
+  int LAST_CALL_TRANSACTION = 0x00ffffff;
+  int INTERFACE_TRANSACTION = ('_' << 24) | ('N' << 16) | ('T' << 8) | 'F';
+}
@@ -0,0 +1,208 @@
+package android.os;
+
+import java.util.Arrays;
+
+/**
+ * Stand-in for the Android Parcel, keeps the data in a growing byte array.
+ * <p>
+ * The layout follows the one of the Android implementation: all values are
+ * aligned to four bytes, strings are written as length followed by UTF-16 chars
+ * and values are prefixed with a type tag. So the sizes and the work for
+ * encoding and decoding are comparable to a Parcel on a device.
+ */
+public final class Parcel {
+  private static final int VAL_NULL = -1;
+  private static final int VAL_STRING = 0;
+  
+  private byte[] mData = new byte[256];
+  private int mSize;
+  private int mPosition;
+  
+  private Parcel() {}
+  
+  public static Parcel obtain() {
+    return new Parcel();
+  }
+  
+  public void recycle() {
+    mSize = 0;
+    mPosition = 0;
+  }
+  
+  public int dataSize() {
+    return mSize;
+  }
+  
+  public int dataPosition() {
+    return mPosition;
+  }
+  
+  public void setDataPosition(int pos) {
+    mPosition = pos;
+  }
+  
+  public byte[] marshall() {
+    return Arrays.copyOf(mData, mSize);
+  }
+  
+  public void unmarshall(byte[] data, int offset, int length) {
+    ensureCapacity(length);
+    System.arraycopy(data, offset, mData, 0, length);
+    mSize = length;
+    mPosition = 0;
+  }
+  
+  public void appendFrom(Parcel parcel, int offset, int length) {
+    ensureCapacity(mPosition + length);
+    System.arraycopy(parcel.mData, offset, mData, mPosition, length);
+    mPosition += length;
+    mSize = Math.max(mSize, mPosition);
+  }
+  
+  public void writeByte(byte value) {
+    writeInt(value);
+  }
+  
+  public void writeInt(int value) {
+    ensureCapacity(mPosition + 4);
+    mData[mPosition++] = (byte)value;
+    mData[mPosition++] = (byte)(value >>> 8);
+    mData[mPosition++] = (byte)(value >>> 16);
+    mData[mPosition++] = (byte)(value >>> 24);
+    mSize = Math.max(mSize, mPosition);
+  }
+  
+  public void writeLong(long value) {
+    writeInt((int)value);
+    writeInt((int)(value >>> 32));
+  }
+  
+  public void writeString(String value) {
+    if(value == null) {
+      writeInt(-1);
+    }
+    else {
+      final int length = value.length();
+      writeInt(length);
+      
+      /* chars and terminating zero, padded to four bytes */
+      final int size = ((length + 1) * 2 + 3) & ~3;
+      ensureCapacity(mPosition + size);
+      
+      for(int i = 0; i < length; i++) {
+        final char c = value.charAt(i);
+        mData[mPosition + i * 2] = (byte)c;
+        mData[mPosition + i * 2 + 1] = (byte)(c >>> 8);
+      }
+      
+      Arrays.fill(mData, mPosition + length * 2, mPosition + size, (byte)0);
+      mPosition += size;
+      mSize = Math.max(mSize, mPosition);
+    }
+  }
+  
+  public void writeByteArray(byte[] value) {
+    if(value == null) {
+      writeInt(-1);
+    }
+    else {
+      writeInt(value.length);
+      
+      final int size = (value.length + 3) & ~3;
+      ensureCapacity(mPosition + size);
+      System.arraycopy(value, 0, mData, mPosition, value.length);
+      mPosition += size;
+      mSize = Math.max(mSize, mPosition);
+    }
+  }
+  
+  public void writeValue(Object value) {
+    if(value == null) {
+      writeInt(VAL_NULL);
+    }
+    else if(value instanceof String) {
+      writeInt(VAL_STRING);
+      writeString((String)value);
+    }
+    else {
+      throw new RuntimeException("Parcel stand-in: unsupported value " + value.getClass());
+    }
+  }
+  
+  public byte readByte() {
+    return (byte)readInt();
+  }
+  
+  public int readInt() {
+    final int value = (mData[mPosition] & 0xFF) | (mData[mPosition + 1] & 0xFF) << 8 | (mData[mPosition + 2] & 0xFF) << 16 | (mData[mPosition + 3] & 0xFF) << 24;
+    mPosition += 4;
+    return value;
+  }
+  
+  public long readLong() {
+    final long low = readInt() & 0xFFFFFFFFL;
+    return low | ((long)readInt() << 32);
+  }
+  
+  public String readString() {
+    final int length = readInt();
+    
+    if(length < 0) {
+      return null;
+    }
+    
+    final char[] chars = new char[length];
+    
+    for(int i = 0; i < length; i++) {
+      chars[i] = (char)((mData[mPosition + i * 2] & 0xFF) | (mData[mPosition + i * 2 + 1] & 0xFF) << 8);
+    }
+    
+    mPosition += ((length + 1) * 2 + 3) & ~3;
+    
+    return new String(chars);
+  }
+  
+  public byte[] createByteArray() {
+    final int length = readInt();
+    
+    if(length < 0) {
+      return null;
+    }
+    
+    final byte[] value = new byte[length];
+    System.arraycopy(mData, mPosition, value, 0, length);
+    mPosition += (length + 3) & ~3;
+    
+    return value;
+  }
+  
+  public void readByteArray(byte[] value) {
+    final int length = readInt();
+    
+    if(length != value.length) {
+      throw new RuntimeException("Parcel stand-in: bad array lengths");
+    }
+    
+    System.arraycopy(mData, mPosition, value, 0, length);
+    mPosition += (length + 3) & ~3;
+  }
+  
+  public Object readValue(ClassLoader loader) {
+    final int type = readInt();
+    
+    if(type == VAL_NULL) {
+      return null;
+    }
+    else if(type == VAL_STRING) {
+      return readString();
+    }
+    
+    throw new RuntimeException("Parcel stand-in: unsupported value type " + type);
+  }
+  
+  private void ensureCapacity(int capacity) {
+    if(capacity > mData.length) {
+      mData = Arrays.copyOf(mData, Math.max(capacity, mData.length * 2));
+    }
+  }
+}
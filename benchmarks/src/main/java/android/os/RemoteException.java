@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * Stand-in for the Android RemoteException.
+ */
+public class RemoteException extends Exception {
+  public RemoteException() {}
+  
+  public RemoteException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,29 @@
+package android.provider;
+
+import android.net.Uri;
+
+/**
+ * Stand-in for the Android CalendarContract with the columns of the events.
+ */
+public final class CalendarContract {
+  public static final String AUTHORITY = "com.android.calendar";
+  
+  private CalendarContract() {}
+  
+  public static final class Events {
+    public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/events");
+    
+    public static final String _ID = "_id";
+    public static final String CALENDAR_ID = "calendar_id";
+    public static final String TITLE = "title";
+    public static final String DESCRIPTION = "description";
+    public static final String EVENT_LOCATION = "eventLocation";
+    public static final String DTSTART = "dtstart";
+    public static final String DTEND = "dtend";
+    public static final String EVENT_TIMEZONE = "eventTimezone";
+    public static final String UID_2445 = "uid2445";
+    public static final String DELETED = "deleted";
+    
+    private Events() {}
+  }
+}
@@ -0,0 +1,10 @@
+package android.util;
+
+/**
+ * Stand-in for the Android DisplayMetrics.
+ */
+public class DisplayMetrics {
+  public static final int DENSITY_DEFAULT = 160;
+  
+  public int densityDpi = DENSITY_DEFAULT;
+}
@@ -0,0 +1,32 @@
+package org.tvbrowser.devplugin;
+
+import android.os.RemoteException;
+
+import java.util.List;
+
+/**
+ * Stand-in for the interface generated from PluginManager.aidl.
+ */
+public interface PluginManager {
+  Program getProgramWithId(long programId) throws RemoteException;
+  
+  Program getProgramForChannelAndTime(int channelId, long startTimeInUTC) throws RemoteException;
+  
+  List<Channel> getSubscribedChannels() throws RemoteException;
+  
+  TvBrowserSettings getTvBrowserSettings() throws RemoteException;
+  
+  boolean markProgram(Program program) throws RemoteException;
+  
+  boolean unmarkProgram(Program program) throws RemoteException;
+  
+  boolean markProgramWithIcon(Program program, String pluginCanonicalClassName) throws RemoteException;
+  
+  boolean unmarkProgramWithIcon(Program program, String pluginCanonicalClassName) throws RemoteException;
+  
+  Program[] getProgramsForChannelInRange(int channelId, long startTimeInUTC, long endTimeInUTC) throws RemoteException;
+  
+  void setRatingForProgram(Program program, int rating) throws RemoteException;
+  
+  Program[] getRunningProgramsForChannel(int channelId, long timeInUTC) throws RemoteException;
+}
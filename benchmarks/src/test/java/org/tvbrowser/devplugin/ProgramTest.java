@@ -0,0 +1,154 @@
+/*
+ * Plugin Interface for TV-Browser for Android
+ * Copyright (c) 2014 René Mach (rene@tvbrowser.org)
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute,
+ * sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT
+ * NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.devplugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.os.Parcel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for writing programs into and reading them from a Parcel.
+ */
+public class ProgramTest {
+  private static final Channel CHANNEL = new Channel(5, "Das Erste", new byte[] {1, 2, 3});
+  
+  @Before
+  public void setUp() {
+    ChannelCache.clear();
+    ChannelCache.put(CHANNEL);
+  }
+  
+  @Test
+  public void readsEveryVersion() {
+    for(int version = 1; version <= 3; version++) {
+      final Parcel parcel = Parcel.obtain();
+      program("Kurz", "Lang", "Folge 1").writeToParcel(parcel, 0, version);
+      
+      final Program read = read(parcel);
+      
+      assertEquals(version, writtenVersion(read));
+      assertEquals(42, read.getId());
+      assertEquals(1000, read.getStartTimeInUTC());
+      assertEquals(2000, read.getEndTimeInUTC());
+      assertEquals("Tatort", read.getTitle());
+      assertEquals("Kurz", read.getShortDescription());
+      assertEquals("Lang", read.getDescription());
+      assertEquals("Folge 1", read.getEpisodeTitle());
+      assertEquals(CHANNEL.getChannelId(), read.getChannel().getChannelId());
+      assertEquals("Das Erste", read.getChannel().getChannelName());
+    }
+  }
+  
+  @Test
+  public void readsMissingTexts() {
+    final Parcel parcel = Parcel.obtain();
+    program(null, null, null).writeToParcel(parcel, 0, 3);
+    
+    final Program read = read(parcel);
+    
+    assertNull(read.getShortDescription());
+    assertNull(read.getDescription());
+    assertNull(read.getEpisodeTitle());
+  }
+  
+  @Test
+  public void writesInTheVersionItWasRead() {
+    /* programs of two peers with different versions */
+    final Parcel old = Parcel.obtain();
+    program("Kurz", "Lang", null).writeToParcel(old, 0, 1);
+    
+    final Parcel current = Parcel.obtain();
+    program("Kurz", "Lang", null).writeToParcel(current, 0, 3);
+    
+    final Program fromCurrent = read(current);
+    final Program fromOld = read(old);
+    
+    assertEquals(3, writtenVersion(fromCurrent));
+    assertEquals(1, writtenVersion(fromOld));
+    
+    /* the texts that weren't decoded are copied unchanged */
+    assertEquals("Lang", read(write(fromCurrent, 3)).getDescription());
+  }
+  
+  @Test
+  public void writesTextsUnchanged() {
+    final Parcel original = write(program("Kurz", "Lang", "Folge 1"), 3);
+    final Program read = read(original);
+    
+    /* the texts of the source parcel are kept, not the parcel itself */
+    original.recycle();
+    original.writeString("Something else");
+    
+    final byte[] undecoded = write(read, 3).marshall();
+    
+    assertEquals("Lang", read.getDescription());
+    assertArrayEquals(undecoded, write(read, 3).marshall());
+    assertArrayEquals(undecoded, write(program("Kurz", "Lang", "Folge 1"), 3).marshall());
+  }
+  
+  @Test
+  public void writesCreatedProgramsInVersion1() {
+    assertEquals(1, writtenVersion(program("Kurz", "Lang", null)));
+  }
+  
+  @Test
+  public void limitsVersionToTheSupportedOne() {
+    final Program program = program("Kurz", "Lang", null);
+    
+    assertEquals(Program.getSupportedParcelVersion(), version(write(program, Program.getSupportedParcelVersion() + 1)));
+    assertEquals(1, version(write(program, 0)));
+  }
+  
+  private static Program program(String shortDescription, String description, String episodeTitle) {
+    return new Program(42, 1000, 2000, "Tatort", shortDescription, description, episodeTitle, CHANNEL);
+  }
+  
+  private static Parcel write(Program program, int version) {
+    final Parcel parcel = Parcel.obtain();
+    program.writeToParcel(parcel, 0, version);
+    
+    return parcel;
+  }
+  
+  private static Program read(Parcel parcel) {
+    parcel.setDataPosition(0);
+    
+    return Program.CREATOR.createFromParcel(parcel);
+  }
+  
+  /* The version the program is written in by writeToParcel(Parcel, int) */
+  private static int writtenVersion(Program program) {
+    final Parcel parcel = Parcel.obtain();
+    program.writeToParcel(parcel, 0);
+    
+    return version(parcel);
+  }
+  
+  private static int version(Parcel parcel) {
+    parcel.setDataPosition(0);
+    
+    return parcel.readInt();
+  }
+}
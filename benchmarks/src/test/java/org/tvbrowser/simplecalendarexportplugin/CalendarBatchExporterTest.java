@@ -0,0 +1,153 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import android.content.ContentValues;
+import android.provider.CalendarContract.Events;
+
+import org.junit.Test;
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Tests for {@link CalendarBatchExporter} with a calendar provider in memory.
+ */
+public class CalendarBatchExporterTest {
+  private static final long CALENDAR_ID = 3;
+  private static final long START = 1500000000000L;
+  
+  private static final CalendarBatchExporter.EventTextFactory TEXTS = new CalendarBatchExporter.EventTextFactory() {
+    @Override
+    public EventText createEventText(Program program) {
+      return new EventText(program.getTitle(), program.getChannel().getChannelName(), null);
+    }
+  };
+  
+  private final FakeCalendarProvider mProvider = new FakeCalendarProvider();
+  
+  @Test
+  public void exportSplitsIntoBatches() {
+    final Program[] programs = programs(250, "Program");
+    final long[] eventIds = new CalendarBatchExporter(mProvider.createResolver(), CALENDAR_ID, 100).export(programs, TEXTS);
+    
+    assertEquals(Arrays.asList(100, 100, 50), mProvider.mBatchSizes);
+    assertEquals(250, mProvider.mEvents.size());
+    
+    /* every program gets the id of its own event */
+    for(int i = 0; i < programs.length; i++) {
+      final ContentValues event = mProvider.mEvents.get(eventIds[i]);
+      
+      assertEquals(programs[i].getTitle(), event.getAsString(Events.TITLE));
+      assertEquals("Channel", event.getAsString(Events.EVENT_LOCATION));
+      assertEquals(Long.valueOf(programs[i].getStartTimeInUTC()), event.getAsLong(Events.DTSTART));
+      assertEquals(Long.valueOf(programs[i].getEndTimeInUTC()), event.getAsLong(Events.DTEND));
+      assertEquals(Long.valueOf(CALENDAR_ID), event.getAsLong(Events.CALENDAR_ID));
+      assertEquals(ProgramExporter.getUid(programs[i].getId()), event.getAsString(Events.UID_2445));
+    }
+  }
+  
+  @Test
+  public void failedInsertFailsOnlyItsBatch() {
+    final Program[] programs = programs(25, "Program");
+    programs[13] = program(13, "Broken");
+    mProvider.mFailingTitles.add("Broken");
+    
+    final long[] eventIds = new CalendarBatchExporter(mProvider.createResolver(), CALENDAR_ID, 10).export(programs, TEXTS);
+    
+    assertEquals(Arrays.asList(10, 10, 5), mProvider.mBatchSizes);
+    
+    for(int i = 0; i < programs.length; i++) {
+      if(i >= 10 && i < 20) {
+        assertEquals("event of program " + i, -1, eventIds[i]);
+      }
+      else {
+        assertEquals(programs[i].getTitle(), mProvider.mEvents.get(eventIds[i]).getAsString(Events.TITLE));
+      }
+    }
+    
+    assertEquals(15, mProvider.mEvents.size());
+  }
+  
+  @Test
+  public void exportOfNothing() {
+    assertArrayEquals(new long[0], new CalendarBatchExporter(mProvider.createResolver(), CALENDAR_ID, 10).export(new Program[0], TEXTS));
+    assertTrue(mProvider.mBatchSizes.isEmpty());
+  }
+  
+  @Test
+  public void updateMapsResultsToPrograms() {
+    final CalendarBatchExporter exporter = new CalendarBatchExporter(mProvider.createResolver(), CALENDAR_ID, 4);
+    final Program[] programs = programs(10, "Program");
+    final long[] eventIds = exporter.export(programs, TEXTS);
+    
+    /* event 6 was deleted in the calendar */
+    mProvider.mEvents.remove(eventIds[6]);
+    mProvider.mBatchSizes.clear();
+    
+    final Program[] changed = programs(10, "Changed");
+    final boolean[] updated = exporter.update(changed, eventIds, TEXTS);
+    
+    assertEquals(Arrays.asList(4, 4, 2), mProvider.mBatchSizes);
+    
+    for(int i = 0; i < changed.length; i++) {
+      assertEquals("update of program " + i, i != 6, updated[i]);
+      
+      if(i != 6) {
+        assertEquals(changed[i].getTitle(), mProvider.mEvents.get(eventIds[i]).getAsString(Events.TITLE));
+      }
+    }
+  }
+  
+  @Test
+  public void deleteByEventIdAndUid() {
+    final CalendarBatchExporter exporter = new CalendarBatchExporter(mProvider.createResolver(), CALENDAR_ID, 10);
+    final Program[] programs = programs(3, "Program");
+    final long[] eventIds = exporter.export(programs, TEXTS);
+    
+    assertTrue(exporter.delete(programs[0].getId(), eventIds[0]));
+    assertFalse(exporter.delete(programs[0].getId(), eventIds[0]));
+    
+    /* the event id isn't known, the event is found by its unique id */
+    assertTrue(exporter.delete(programs[1].getId(), -1));
+    
+    assertEquals(1, mProvider.mEvents.size());
+    assertTrue(mProvider.mEvents.containsKey(eventIds[2]));
+  }
+  
+  private static Program[] programs(int count, String title) {
+    final Program[] programs = new Program[count];
+    
+    for(int i = 0; i < count; i++) {
+      programs[i] = program(i, title + " " + i);
+    }
+    
+    return programs;
+  }
+  
+  private static Program program(int index, String title) {
+    final long start = START + index * 30 * 60000L;
+    
+    return new Program(1000 + index, start, start + 30 * 60000L, title, null, null, null, new Channel(1, "Channel", null));
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import android.provider.CalendarContract.Events;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CalendarEventChecker} with 10000 markings and a slow
+ * calendar provider in memory.
+ */
+public class CalendarEventCheckerTest {
+  private static final int MARKING_COUNT = 10000;
+  private static final int CHUNK_SIZE = 100;
+  
+  private final FakeCalendarProvider mProvider = new FakeCalendarProvider();
+  
+  @Test
+  public void findsMissingEvents() {
+    final long[] eventIds = createEvents(new Random(17));
+    final boolean[] missing = new boolean[MARKING_COUNT];
+    
+    final int checked = new CalendarEventChecker(mProvider.createResolver(), CHUNK_SIZE).check(eventIds, missing, 0, Long.MAX_VALUE);
+    
+    assertEquals(MARKING_COUNT, checked);
+    assertEquals(MARKING_COUNT / CHUNK_SIZE, mProvider.mQueryCount);
+    assertMissing(eventIds, missing, 0, checked);
+  }
+  
+  @Test
+  public void wrapsAroundAtTheEnd() {
+    final long[] eventIds = createEvents(new Random(17));
+    final boolean[] missing = new boolean[MARKING_COUNT];
+    final int start = MARKING_COUNT - 150;
+    
+    final int checked = new CalendarEventChecker(mProvider.createResolver(), CHUNK_SIZE).check(eventIds, missing, start, Long.MAX_VALUE);
+    
+    assertEquals(MARKING_COUNT, checked);
+    assertMissing(eventIds, missing, start, checked);
+  }
+  
+  @Test
+  public void visitsAllEventsOverSeveralRuns() {
+    final long[] eventIds = createEvents(new Random(17));
+    final boolean[] visited = new boolean[MARKING_COUNT];
+    final CalendarEventChecker checker = new CalendarEventChecker(mProvider.createResolver(), CHUNK_SIZE);
+    
+    /* the budget suffices for a few of the 100 queries */
+    mProvider.mQueryLatency = 5;
+    
+    int start = 0;
+    int visitedCount = 0;
+    int runs = 0;
+    
+    while(visitedCount < MARKING_COUNT && runs < 100) {
+      final boolean[] missing = new boolean[MARKING_COUNT];
+      final int checked = checker.check(eventIds, missing, start, 50);
+      
+      assertTrue("checked " + checked + " events", checked > 0 && checked < MARKING_COUNT);
+      assertMissing(eventIds, missing, start, checked);
+      
+      for(int n = 0; n < checked; n++) {
+        final int i = (start + n) % MARKING_COUNT;
+        
+        if(!visited[i]) {
+          visited[i] = true;
+          visitedCount++;
+        }
+      }
+      
+      start = (start + checked) % MARKING_COUNT;
+      runs++;
+    }
+    
+    assertEquals("events visited in " + runs + " runs", MARKING_COUNT, visitedCount);
+  }
+  
+  /* Creates the events, a tenth of them is removed or marked as deleted */
+  private long[] createEvents(Random random) {
+    final long[] eventIds = new long[MARKING_COUNT];
+    long id = 1;
+    
+    for(int i = 0; i < MARKING_COUNT; i++) {
+      id += 1 + random.nextInt(3);
+      eventIds[i] = id;
+      
+      final int state = random.nextInt(20);
+      
+      if(state != 0) {
+        mProvider.addEvent(id, state == 1);
+      }
+    }
+    
+    return eventIds;
+  }
+  
+  /* Checks the result of the given range of events, and that no other event was reported */
+  private void assertMissing(long[] eventIds, boolean[] missing, int start, int checked) {
+    for(int n = 0; n < MARKING_COUNT; n++) {
+      final int i = (start + n) % MARKING_COUNT;
+      final boolean exists = mProvider.mEvents.containsKey(eventIds[i]) && !Integer.valueOf(1).equals(mProvider.mEvents.get(eventIds[i]).get(Events.DELETED));
+      
+      assertEquals("event " + eventIds[i], n < checked && !exists, missing[i]);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.os.IBinder;
+
+/**
+ * Tests that {@link CallStatistics} counts the binder calls by their transaction code.
+ */
+public class CallStatisticsTest {
+  @Before
+  public void setUp() {
+    CallStatistics.reset();
+    CallStatistics.setEnabled(true);
+  }
+  
+  @After
+  public void tearDown() {
+    CallStatistics.setEnabled(false);
+    CallStatistics.reset();
+  }
+  
+  @Test
+  public void countsTransactionsOfPluginMethods() {
+    for(int i = 0; i < 3; i++) {
+      CallStatistics.endTransaction(IBinder.FIRST_CALL_TRANSACTION + CallStatistics.IS_MARKED, CallStatistics.start());
+    }
+    
+    CallStatistics.endTransaction(IBinder.FIRST_CALL_TRANSACTION, CallStatistics.start());
+    CallStatistics.endTransaction(IBinder.FIRST_CALL_TRANSACTION + CallStatistics.GET_PROGRAM_PARCEL_VERSION, CallStatistics.start());
+    
+    final String dump = dump();
+    
+    assertEquals(3, getCalls(dump, "isMarked"));
+    assertEquals(1, getCalls(dump, "getVersion"));
+    assertEquals(1, getCalls(dump, "getProgramParcelVersion"));
+    assertEquals(0, getCalls(dump, "getName"));
+  }
+  
+  @Test
+  public void ignoresOtherTransactions() {
+    CallStatistics.endTransaction(IBinder.INTERFACE_TRANSACTION, CallStatistics.start());
+    CallStatistics.endTransaction(IBinder.FIRST_CALL_TRANSACTION - 1, CallStatistics.start());
+    
+    /* the first code after the methods of Plugin.aidl must not count as markings load */
+    CallStatistics.endTransaction(IBinder.FIRST_CALL_TRANSACTION + CallStatistics.MARKINGS_LOAD, CallStatistics.start());
+    
+    assertEquals(0, getCalls(dump(), "markings load"));
+  }
+  
+  @Test
+  public void countsNothingIfDisabled() {
+    CallStatistics.setEnabled(false);
+    
+    assertEquals(0, CallStatistics.start());
+    
+    CallStatistics.endTransaction(IBinder.FIRST_CALL_TRANSACTION + CallStatistics.IS_MARKED, CallStatistics.start());
+    
+    final String dump = dump();
+    
+    assertTrue(dump, dump.contains("disabled"));
+    assertEquals(0, getCalls(dump, "isMarked"));
+  }
+  
+  @Test
+  public void dumpsAllocationCounters() {
+    final String dump = dump();
+    
+    assertTrue(dump, dump.contains("Allocations of the process"));
+    assertTrue(dump, dump.contains("garbage collections"));
+    assertTrue(dump, dump.contains("used Java heap bytes"));
+    
+    /* counters the runtime doesn't have are left out */
+    assertFalse(dump, dump.contains("allocated bytes"));
+  }
+  
+  private static String dump() {
+    final StringWriter out = new StringWriter();
+    final PrintWriter writer = new PrintWriter(out);
+    
+    CallStatistics.dump(writer);
+    writer.flush();
+    
+    return out.toString();
+  }
+  
+  private static long getCalls(String dump, String method) {
+    final Matcher matcher = Pattern.compile("^  " + Pattern.quote(method) + " +(\\d+) ", Pattern.MULTILINE).matcher(dump);
+    
+    return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Tests for {@link ChangedProgramFinder} with a plugin manager in memory.
+ */
+public class ChangedProgramFinderTest {
+  private static final long HOUR = 60 * 60000L;
+  private static final long FROM = 1500000000000L / HOUR * HOUR;
+  
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+  
+  private final FakePluginManager mPluginManager = new FakePluginManager();
+  
+  @Test
+  public void limitsTheRangeOfOneCall() throws Exception {
+    final EventFingerprints fingerprints = new EventFingerprints(mFolder.getRoot());
+    
+    /* programs every two hours on five days, close enough to be fetched together */
+    final long[] programIds = new long[60];
+    
+    for(int i = 0; i < programIds.length; i++) {
+      final Program program = program(3, FROM + i * 2 * HOUR, "Program");
+      
+      fingerprints.put(program);
+      programIds[i] = program.getId();
+    }
+    
+    final ArrayList<Program> changed = new ChangedProgramFinder(mPluginManager).find(programIds, fingerprints);
+    
+    assertTrue(changed.isEmpty());
+    assertTrue("only " + mPluginManager.mCalls.get() + " calls", mPluginManager.mCalls.get() >= 5);
+    
+    for(long[] call : mPluginManager.mCalled) {
+      /* one day plus the padding before and after it */
+      assertTrue("call for " + (call[2] - call[1]) / HOUR + " hours", call[2] - call[1] <= 26 * HOUR);
+    }
+  }
+  
+  @Test
+  public void findsChangedPrograms() throws Exception {
+    final EventFingerprints fingerprints = new EventFingerprints(new File(mFolder.getRoot(), "changed"));
+    final long[] programIds = new long[20];
+    
+    for(int i = 0; i < programIds.length; i++) {
+      /* the fake plugin manager gives every program the title "Program" */
+      final Program program = program(i % 2 + 1, FROM + i * 3 * HOUR, i % 5 == 0 ? "Old title" : "Program");
+      
+      fingerprints.put(program);
+      programIds[i] = program.getId();
+    }
+    
+    final ArrayList<Program> changed = new ChangedProgramFinder(mPluginManager).find(programIds, fingerprints);
+    
+    assertEquals(4, changed.size());
+    
+    for(Program program : changed) {
+      assertEquals("Program", program.getTitle());
+      assertEquals(0, (program.getStartTimeInUTC() - FROM) / (3 * HOUR) % 5);
+    }
+  }
+  
+  /* A program with the id the fake plugin manager gives it */
+  private static Program program(int channelId, long start, String title) {
+    return new Program(channelId * 1000000000L + start / 60000, start, start + HOUR, title, null, null, null, new Channel(channelId, "Channel " + channelId, null));
+  }
+}
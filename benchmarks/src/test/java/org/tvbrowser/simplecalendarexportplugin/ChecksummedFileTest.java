@@ -0,0 +1,172 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the format of {@link ChecksummedFile} and that the files
+ * using it ignore damaged content.
+ */
+public class ChecksummedFileTest {
+  private static final int MAGIC = 0x54565446;
+  
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+  
+  @Test
+  public void readsWrittenContent() throws IOException {
+    final File file = new File(mFolder.getRoot(), "test");
+    
+    write(new ChecksummedFile(file, MAGIC, 2), 42);
+    
+    final long[] read = new long[2];
+    
+    assertTrue(new ChecksummedFile(file, MAGIC, 2).read(new ChecksummedFile.Reader() {
+      @Override
+      public void read(DataInputStream in, int version) throws IOException {
+        read[0] = version;
+        read[1] = in.readLong();
+      }
+    }));
+    
+    assertEquals(2, read[0]);
+    assertEquals(42, read[1]);
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+  }
+  
+  @Test
+  public void ignoresMissingAndDamagedFiles() throws IOException {
+    final File file = new File(mFolder.getRoot(), "test");
+    
+    assertFalse(read(new ChecksummedFile(file, MAGIC, 1)));
+    
+    write(new ChecksummedFile(file, MAGIC, 1), 42);
+    corrupt(file, 12);
+    
+    assertFalse(read(new ChecksummedFile(file, MAGIC, 1)));
+    
+    /* another format and a newer version */
+    write(new ChecksummedFile(file, MAGIC, 1), 42);
+    
+    assertFalse(read(new ChecksummedFile(file, MAGIC + 1, 1)));
+    
+    write(new ChecksummedFile(file, MAGIC, 2), 42);
+    
+    assertFalse(read(new ChecksummedFile(file, MAGIC, 1)));
+  }
+  
+  @Test
+  public void failedWriteKeepsFile() throws IOException {
+    final File file = new File(mFolder.getRoot(), "test");
+    final ChecksummedFile checksummed = new ChecksummedFile(file, MAGIC, 1);
+    
+    write(checksummed, 42);
+    
+    try {
+      checksummed.write(new ChecksummedFile.Writer() {
+        @Override
+        public void write(DataOutputStream out) throws IOException {
+          out.writeLong(43);
+          throw new IOException("disk full");
+        }
+      });
+      
+      fail("write must fail");
+    }catch(IOException e) {
+      assertEquals("disk full", e.getMessage());
+    }
+    
+    assertTrue(read(checksummed));
+    assertEquals(20, file.length());
+  }
+  
+  @Test
+  public void damagedWatermarksAreDropped() throws IOException {
+    final ScanWatermarks watermarks = new ScanWatermarks(mFolder.getRoot());
+    
+    for(int channelId = 1; channelId <= 100; channelId++) {
+      watermarks.advance(channelId, 1500000000000L + channelId);
+    }
+    
+    watermarks.setLastProgramId(4711);
+    watermarks.save();
+    
+    final ScanWatermarks reloaded = new ScanWatermarks(mFolder.getRoot());
+    reloaded.load();
+    
+    assertEquals(4711, reloaded.getLastProgramId());
+    assertEquals(1500000000100L, reloaded.get(100, -1));
+    
+    /* one byte in the middle, so a part of the watermarks is read before the checksum fails */
+    final File file = new File(mFolder.getRoot(), "scan_watermarks");
+    
+    corrupt(file, (int)file.length() / 2);
+    reloaded.load();
+    
+    assertEquals(-1, reloaded.getLastProgramId());
+    assertEquals(-1, reloaded.get(1, -1));
+    assertEquals(-1, reloaded.get(100, -1));
+  }
+  
+  private static void write(ChecksummedFile file, final long value) throws IOException {
+    file.write(new ChecksummedFile.Writer() {
+      @Override
+      public void write(DataOutputStream out) throws IOException {
+        out.writeLong(value);
+      }
+    });
+  }
+  
+  private static boolean read(ChecksummedFile file) {
+    return file.read(new ChecksummedFile.Reader() {
+      @Override
+      public void read(DataInputStream in, int version) throws IOException {
+        in.readLong();
+      }
+    });
+  }
+  
+  /* Flips the byte at the given position of the file */
+  private static void corrupt(File file, int position) throws IOException {
+    final RandomAccessFile out = new RandomAccessFile(file, "rw");
+    
+    try {
+      out.seek(position);
+      
+      final int value = out.read();
+      
+      out.seek(position);
+      out.write(value ^ 0x55);
+    }finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Tests for the quoting of {@link CsvProgramExporter}.
+ */
+public class CsvProgramExporterTest {
+  @Test
+  public void writesPlainFieldsUnquoted() throws IOException {
+    final String csv = export(new Program(7, 1000, 2000, "Tatort", "Kurz", "Lang", "Folge 1", new Channel(1, "Das Erste", null)));
+    
+    assertEquals("id,start,end,channel,title,episodeTitle,shortDescription,description\r\n"
+        + "7,1000,2000,Das Erste,Tatort,Folge 1,Kurz,Lang\r\n", csv);
+  }
+  
+  @Test
+  public void writesMissingValuesEmpty() throws IOException {
+    final String csv = export(new Program(7, 1000, 2000, "Tatort", null, null, null, new Channel(1, null, null)));
+    
+    assertEquals(Arrays.asList("7", "1000", "2000", "", "Tatort", "", "", ""), parse(csv).get(1));
+  }
+  
+  @Test
+  public void quotesSpecialCharacters() throws IOException {
+    final String title = "Krimi, Drama";
+    final String episode = "Der \"Fall\"";
+    final String shortDescription = "Erste Zeile\nZweite Zeile";
+    final String description = "Mit\r\nZeilenende, \"Zitat\" und Ümläut";
+    
+    final String csv = export(new Program(7, 1000, 2000, title, shortDescription, description, episode, new Channel(1, "\"HD\"", null)));
+    final List<List<String>> records = parse(csv);
+    
+    assertEquals(2, records.size());
+    assertEquals(Arrays.asList("7", "1000", "2000", "\"HD\"", title, episode, shortDescription, description), records.get(1));
+    assertEquals("7,1000,2000,\"\"\"HD\"\"\",\"Krimi, Drama\",\"Der \"\"Fall\"\"\"", csv.substring(csv.indexOf("\r\n") + 2, csv.indexOf(",\"Erste")));
+  }
+  
+  private static String export(Program program) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ProgramExporter exporter = new CsvProgramExporter(out);
+    
+    exporter.begin();
+    exporter.write(program);
+    exporter.end();
+    exporter.close();
+    
+    return out.toString("UTF-8");
+  }
+  
+  /* Parses CSV according to RFC 4180 */
+  private static List<List<String>> parse(String csv) {
+    final List<List<String>> records = new ArrayList<List<String>>();
+    List<String> record = new ArrayList<String>();
+    final StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    
+    for(int i = 0; i < csv.length(); i++) {
+      final char c = csv.charAt(i);
+      
+      if(quoted) {
+        if(c == '"' && i + 1 < csv.length() && csv.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        }
+        else if(c == '"') {
+          quoted = false;
+        }
+        else {
+          field.append(c);
+        }
+      }
+      else if(c == '"') {
+        quoted = true;
+      }
+      else if(c == ',') {
+        record.add(field.toString());
+        field.setLength(0);
+      }
+      else if(c == '\r' && i + 1 < csv.length() && csv.charAt(i + 1) == '\n') {
+        record.add(field.toString());
+        field.setLength(0);
+        records.add(record);
+        record = new ArrayList<String>();
+        i++;
+      }
+      else {
+        field.append(c);
+      }
+    }
+    
+    assertEquals("unterminated record", 0, record.size() + field.length());
+    
+    return records;
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.Test;
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Tests for parsing {@link ExportRules} and matching programs against them.
+ */
+public class ExportRulesTest {
+  private static final Channel DAS_ERSTE = new Channel(1, "Das Erste", null);
+  private static final Channel ZDF = new Channel(2, "ZDF", null);
+  private static final List<Channel> CHANNELS = Arrays.asList(DAS_ERSTE, ZDF);
+  
+  @Test
+  public void ignoresEmptyAndWhitespaceOnlyLines() {
+    assertSame(ExportRules.NONE, ExportRules.parse(""));
+    assertSame(ExportRules.NONE, ExportRules.parse("\n   \n\t\r\n# Tatort; Das Erste\n"));
+    
+    final ExportRules rules = ExportRules.parse("\n  Tatort  \n \t \n# comment\n");
+    
+    assertEquals(1, rules.size());
+    assertTrue(matches(rules, program("Tatort", DAS_ERSTE, Calendar.SUNDAY, 20, 15)));
+  }
+  
+  @Test
+  public void rejectsRulesWithoutKeywordsAndChannels() {
+    for(String rule : new String[] {";", " ; ", ",;,", " , ; , ; Su", "!", "! ;", "; ; Mo; 20:00-21:00"}) {
+      try {
+        ExportRules.parse(rule);
+        fail("rule accepted: " + rule);
+      }catch(IllegalArgumentException iae) {
+        /* expected */
+      }
+    }
+  }
+  
+  @Test
+  public void rejectsInvalidFields() {
+    for(String rule : new String[] {"Tatort; ; Xy", "Tatort; ; ; 25:00-26:00", "Tatort; ; ; 20:00", "Tatort; ; ; ; ", "= ; Das Erste"}) {
+      try {
+        ExportRules.parse(rule);
+        fail("rule accepted: " + rule);
+      }catch(IllegalArgumentException iae) {
+        /* expected */
+      }
+    }
+  }
+  
+  @Test
+  public void matchesKeywordsCaseInsensitive() {
+    final ExportRules rules = ExportRules.parse("tatort, POLIZEIRUF");
+    
+    assertTrue(matches(rules, program("Tatort: Borowski", ZDF, Calendar.MONDAY, 12, 0)));
+    assertTrue(matches(rules, program("Polizeiruf 110", ZDF, Calendar.MONDAY, 12, 0)));
+    assertFalse(matches(rules, program("Tagesschau", ZDF, Calendar.MONDAY, 12, 0)));
+  }
+  
+  @Test
+  public void matchesExactTitlesOnly() {
+    final ExportRules rules = ExportRules.parse("=Tatort");
+    
+    assertTrue(matches(rules, program("TATORT", ZDF, Calendar.MONDAY, 12, 0)));
+    assertFalse(matches(rules, program("Tatort: Borowski", ZDF, Calendar.MONDAY, 12, 0)));
+    assertFalse(matches(rules, program("Der Tatort", ZDF, Calendar.MONDAY, 12, 0)));
+  }
+  
+  @Test
+  public void matchesChannelsDaysAndTimes() {
+    final ExportRules rules = ExportRules.parse("Tatort; das erste; Fr-Mo; 22:00-02:00");
+    
+    assertTrue(matches(rules, program("Tatort", DAS_ERSTE, Calendar.SUNDAY, 23, 30)));
+    assertTrue(matches(rules, program("Tatort", DAS_ERSTE, Calendar.MONDAY, 1, 59)));
+    assertFalse(matches(rules, program("Tatort", DAS_ERSTE, Calendar.MONDAY, 2, 0)));
+    assertFalse(matches(rules, program("Tatort", DAS_ERSTE, Calendar.TUESDAY, 23, 0)));
+    assertFalse(matches(rules, program("Tatort", ZDF, Calendar.SUNDAY, 23, 30)));
+  }
+  
+  @Test
+  public void matchesIfAnyIncludeRuleMatches() {
+    /* the first rule matches the title but not the channel, the second one matches */
+    final ExportRules rules = ExportRules.parse("Tatort; ZDF\nTatort; Das Erste; Su");
+    
+    assertTrue(matches(rules, program("Tatort", DAS_ERSTE, Calendar.SUNDAY, 20, 15)));
+    assertFalse(matches(rules, program("Tatort", DAS_ERSTE, Calendar.SATURDAY, 20, 15)));
+  }
+  
+  @Test
+  public void excludeRulesTakePrecedence() {
+    /* the order of the rules doesn't matter */
+    for(String text : new String[] {"Tatort\n!Tatort; ; Sa", "!Tatort; ; Sa\nTatort"}) {
+      final ExportRules rules = ExportRules.parse(text);
+      
+      assertTrue(text, matches(rules, program("Tatort", DAS_ERSTE, Calendar.SUNDAY, 20, 15)));
+      assertFalse(text, matches(rules, program("Tatort", DAS_ERSTE, Calendar.SATURDAY, 20, 15)));
+    }
+  }
+  
+  @Test
+  public void excludeRulesWithoutKeywords() {
+    final ExportRules rules = ExportRules.parse("Tatort, Wetter\n!; ZDF\n; Das Erste\n!Wetter");
+    
+    assertTrue(matches(rules, program("Tatort", DAS_ERSTE, Calendar.SUNDAY, 20, 15)));
+    assertTrue(matches(rules, program("Tagesschau", DAS_ERSTE, Calendar.SUNDAY, 20, 0)));
+    assertFalse(matches(rules, program("Tatort", ZDF, Calendar.SUNDAY, 20, 15)));
+    assertFalse(matches(rules, program("Wetter vor acht", DAS_ERSTE, Calendar.SUNDAY, 19, 55)));
+  }
+  
+  @Test
+  public void onlyExcludeRulesMatchNothing() {
+    final ExportRules rules = ExportRules.parse("!Tatort\n!; ZDF");
+    
+    assertEquals(2, rules.size());
+    assertArrayEquals(new int[0], rules.createMatcher(CHANNELS).getChannelIds());
+    assertFalse(matches(rules, program("Tagesschau", DAS_ERSTE, Calendar.SUNDAY, 20, 0)));
+  }
+  
+  @Test
+  public void scansOnlyChannelsOfIncludeRules() {
+    assertArrayEquals(new int[] {1}, ExportRules.parse("Tatort; Das Erste\n!Tatort; ZDF").createMatcher(CHANNELS).getChannelIds());
+    assertArrayEquals(new int[] {1, 2}, ExportRules.parse("Tatort\n!Tatort; ZDF").createMatcher(CHANNELS).getChannelIds());
+  }
+  
+  private static boolean matches(ExportRules rules, Program program) {
+    return rules.createMatcher(CHANNELS).matches(program);
+  }
+  
+  /* a program in the week of 2017-07-10 in the default time zone, like the matcher uses */
+  private static Program program(String title, Channel channel, int dayOfWeek, int hour, int minute) {
+    final Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2017, Calendar.JULY, 10, hour, minute);
+    
+    while(calendar.get(Calendar.DAY_OF_WEEK) != dayOfWeek) {
+      calendar.add(Calendar.DAY_OF_MONTH, 1);
+    }
+    
+    final long start = calendar.getTimeInMillis();
+    
+    return new Program(start / 60000, start, start + 45 * 60000L, title, null, null, null, channel);
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.CalendarContract.Events;
+
+/**
+ * A calendar provider that keeps the events in memory.
+ * <p>
+ * Batches are applied in a transaction like the calendar provider does,
+ * if one operation fails no operation of the batch is applied.
+ */
+final class FakeCalendarProvider extends ContentProvider {
+  /** The events by id */
+  final TreeMap<Long, ContentValues> mEvents = new TreeMap<Long, ContentValues>();
+  /** The sizes of the applied batches, including failed ones */
+  final ArrayList<Integer> mBatchSizes = new ArrayList<Integer>();
+  /** Inserts of events with one of these titles fail */
+  final HashSet<String> mFailingTitles = new HashSet<String>();
+  /** The time a query takes in milliseconds */
+  long mQueryLatency;
+  /** The number of queries */
+  int mQueryCount;
+  
+  private long mNextId = 1;
+  
+  /**
+   * @return A resolver that routes every call to this provider.
+   */
+  ContentResolver createResolver() {
+    return new ContentResolver(null) {
+      @Override
+      protected ContentProvider acquireProvider(String authority) {
+        return FakeCalendarProvider.this;
+      }
+    };
+  }
+  
+  @Override
+  public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+    mBatchSizes.add(operations.size());
+    
+    final TreeMap<Long, ContentValues> rollback = copy(mEvents);
+    final long nextId = mNextId;
+    
+    try {
+      return super.applyBatch(operations);
+    }catch(OperationApplicationException e) {
+      mEvents.clear();
+      mEvents.putAll(rollback);
+      mNextId = nextId;
+      
+      throw e;
+    }
+  }
+  
+  /**
+   * Adds an event with the given id.
+   * <p>
+   * @param id The id of the event.
+   * @param deleted If the event is marked as deleted but not yet removed by the sync adapter.
+   */
+  void addEvent(long id, boolean deleted) {
+    final ContentValues event = new ContentValues();
+    event.put(Events.DELETED, deleted ? 1 : 0);
+    
+    mEvents.put(id, event);
+    mNextId = Math.max(mNextId, id + 1);
+  }
+  
+  @Override
+  public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    /* only the selection of not deleted events by their ids is supported */
+    if(!selection.startsWith(Events.DELETED + "=0 AND " + Events._ID + " IN (") || selectionArgs.length > 999) {
+      throw new IllegalArgumentException(selection);
+    }
+    
+    mQueryCount++;
+    
+    try {
+      Thread.sleep(mQueryLatency);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    
+    final ArrayList<Long> ids = new ArrayList<Long>();
+    
+    for(String arg : selectionArgs) {
+      final ContentValues event = mEvents.get(Long.parseLong(arg));
+      
+      if(event != null && !Integer.valueOf(1).equals(event.get(Events.DELETED))) {
+        ids.add(Long.parseLong(arg));
+      }
+    }
+    
+    return new Cursor() {
+      private int mPosition = -1;
+      
+      @Override
+      public boolean moveToNext() {
+        return ++mPosition < ids.size();
+      }
+      
+      @Override
+      public long getLong(int columnIndex) {
+        return ids.get(mPosition);
+      }
+      
+      @Override
+      public void close() {}
+    };
+  }
+  
+  @Override
+  public Uri insert(Uri uri, ContentValues values) {
+    if(mFailingTitles.contains(values.getAsString(Events.TITLE))) {
+      return null;
+    }
+    
+    final ContentValues event = new ContentValues();
+    event.putAll(values);
+    
+    final long id = mNextId++;
+    mEvents.put(id, event);
+    
+    return ContentUris.withAppendedId(Events.CONTENT_URI, id);
+  }
+  
+  @Override
+  public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+    final ContentValues event = mEvents.get(ContentUris.parseId(uri));
+    
+    if(event == null) {
+      return 0;
+    }
+    
+    event.putAll(values);
+    
+    return 1;
+  }
+  
+  @Override
+  public int delete(Uri uri, String selection, String[] selectionArgs) {
+    if(!uri.equals(Events.CONTENT_URI)) {
+      return mEvents.remove(ContentUris.parseId(uri)) != null ? 1 : 0;
+    }
+    
+    /* only the selection of events by calendar and unique id is supported */
+    int deleted = 0;
+    
+    for(Long id : new ArrayList<Long>(mEvents.keySet())) {
+      final ContentValues event = mEvents.get(id);
+      
+      if(selectionArgs[0].equals(event.getAsString(Events.CALENDAR_ID)) && selectionArgs[1].equals(event.getAsString(Events.UID_2445))) {
+        mEvents.remove(id);
+        deleted++;
+      }
+    }
+    
+    return deleted;
+  }
+  
+  private static TreeMap<Long, ContentValues> copy(TreeMap<Long, ContentValues> events) {
+    final TreeMap<Long, ContentValues> copy = new TreeMap<Long, ContentValues>();
+    
+    for(Map.Entry<Long, ContentValues> entry : events.entrySet()) {
+      final ContentValues values = new ContentValues();
+      values.putAll(entry.getValue());
+      copy.put(entry.getKey(), values);
+    }
+    
+    return copy;
+  }
+}
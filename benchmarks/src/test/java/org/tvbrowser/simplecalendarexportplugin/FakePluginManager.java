@@ -0,0 +1,164 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.RemoteException;
+
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.PluginManager;
+import org.tvbrowser.devplugin.Program;
+import org.tvbrowser.devplugin.TvBrowserSettings;
+
+/**
+ * A plugin manager with one program per hour on every channel, whose
+ * calls take some time like binder calls to TV-Browser do.
+ * <p>
+ * Only the methods used to fetch programs are supported.
+ */
+final class FakePluginManager implements PluginManager {
+  private static final long HOUR = 60 * 60000L;
+  
+  /** The time a call takes in milliseconds */
+  volatile long mLatency;
+  /** The end of the data of a channel, channels without entry have no end */
+  final Map<Integer, Long> mDataEnd = new ConcurrentHashMap<Integer, Long>();
+  /** The start and end of a time span without programs of a channel */
+  final Map<Integer, long[]> mGaps = new ConcurrentHashMap<Integer, long[]>();
+  /** The exception thrown by calls for a channel */
+  final Map<Integer, Exception> mErrors = new ConcurrentHashMap<Integer, Exception>();
+  /** The longest range a call may ask for, longer ones fail like a too large reply, 0 for no limit */
+  volatile long mMaxRange;
+  
+  /** The number of calls */
+  final AtomicInteger mCalls = new AtomicInteger();
+  /** The highest number of calls at the same time */
+  final AtomicInteger mMaxRunning = new AtomicInteger();
+  /** The channel id, start and end of every call */
+  final List<long[]> mCalled = new ArrayList<long[]>();
+  
+  private final AtomicInteger mRunning = new AtomicInteger();
+  
+  @Override
+  public Program[] getProgramsForChannelInRange(int channelId, long startTimeInUTC, long endTimeInUTC) throws RemoteException {
+    mCalls.incrementAndGet();
+    
+    synchronized(mCalled) {
+      mCalled.add(new long[] {channelId, startTimeInUTC, endTimeInUTC});
+    }
+    
+    final int running = mRunning.incrementAndGet();
+    int max;
+    
+    while((max = mMaxRunning.get()) < running && !mMaxRunning.compareAndSet(max, running)) {}
+    
+    try {
+      Thread.sleep(mLatency);
+      
+      final Exception error = mErrors.get(channelId);
+      
+      if(error instanceof RemoteException) {
+        throw (RemoteException)error;
+      }
+      else if(error != null) {
+        throw (RuntimeException)error;
+      }
+      
+      if(mMaxRange > 0 && endTimeInUTC - startTimeInUTC > mMaxRange) {
+        throw new RemoteException("Reply too large");
+      }
+      
+      final Long dataEnd = mDataEnd.get(channelId);
+      final long end = dataEnd != null ? Math.min(dataEnd, endTimeInUTC) : endTimeInUTC;
+      final Channel channel = new Channel(channelId, "Channel " + channelId, null);
+      final long[] gap = mGaps.get(channelId);
+      final ArrayList<Program> programs = new ArrayList<Program>();
+      
+      for(long start = (startTimeInUTC + HOUR - 1) / HOUR * HOUR; start < end; start += HOUR) {
+        if(gap != null && start >= gap[0] && start < gap[1]) {
+          continue;
+        }
+        
+        programs.add(new Program(channelId * 1000000000L + start / 60000, start, start + HOUR, "Program", null, null, null, channel));
+      }
+      
+      return programs.toArray(new Program[programs.size()]);
+    } catch (InterruptedException e) {
+      final RemoteException interrupted = new RemoteException();
+      interrupted.initCause(e);
+      
+      throw interrupted;
+    } finally {
+      mRunning.decrementAndGet();
+    }
+  }
+  
+  @Override
+  public Program getProgramWithId(long programId) {
+    throw new UnsupportedOperationException();
+  }
+  
+  @Override
+  public Program getProgramForChannelAndTime(int channelId, long startTimeInUTC) {
+    throw new UnsupportedOperationException();
+  }
+  
+  @Override
+  public List<Channel> getSubscribedChannels() {
+    throw new UnsupportedOperationException();
+  }
+  
+  @Override
+  public TvBrowserSettings getTvBrowserSettings() {
+    throw new UnsupportedOperationException();
+  }
+  
+  @Override
+  public boolean markProgram(Program program) {
+    throw new UnsupportedOperationException();
+  }
+  
+  @Override
+  public boolean unmarkProgram(Program program) {
+    throw new UnsupportedOperationException();
+  }
+  
+  @Override
+  public boolean markProgramWithIcon(Program program, String pluginCanonicalClassName) {
+    throw new UnsupportedOperationException();
+  }
+  
+  @Override
+  public boolean unmarkProgramWithIcon(Program program, String pluginCanonicalClassName) {
+    throw new UnsupportedOperationException();
+  }
+  
+  @Override
+  public void setRatingForProgram(Program program, int rating) {
+    throw new UnsupportedOperationException();
+  }
+  
+  @Override
+  public Program[] getRunningProgramsForChannel(int channelId, long timeInUTC) {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Tests for the line folding and text escaping of {@link ICalendarProgramExporter}.
+ */
+public class ICalendarProgramExporterTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  
+  /* The default templates of the calendar export */
+  private static final String TITLE = "{title}";
+  private static final String LOCATION = "{channel}";
+  private static final String DESCRIPTION = "{episode}\\n\\n{short|desc:160}";
+  
+  /* Characters with one, two, three and four octets in UTF-8 */
+  private static final String[] CHARACTERS = {"a", "ä", "€", "\uD83D\uDCFA"};
+  
+  @Test
+  public void foldsLongLinesAt75Octets() throws IOException {
+    /* the texts of events are trimmed */
+    final String title = text("Tatort ", 300).trim();
+    final ArrayList<byte[]> lines = lines(export(program(title, null)));
+    
+    for(byte[] line : lines) {
+      assertTrue("line with " + line.length + " octets", line.length <= 75);
+    }
+    
+    assertEquals("SUMMARY:" + title, unfold(lines, "SUMMARY:"));
+  }
+  
+  @Test
+  public void doesNotSplitMultiOctetCharacters() throws IOException {
+    /* every possible position of the fold relative to the characters */
+    for(int prefix = 0; prefix < 4; prefix++) {
+      for(String character : CHARACTERS) {
+        final String title = text("a", prefix) + text(character, 100);
+        final ArrayList<byte[]> lines = lines(export(program(title, null)));
+        
+        for(byte[] line : lines) {
+          assertTrue("line with " + line.length + " octets", line.length <= 75);
+          decode(line);
+        }
+        
+        assertEquals("SUMMARY:" + title, unfold(lines, "SUMMARY:"));
+      }
+    }
+  }
+  
+  @Test
+  public void escapesText() throws IOException {
+    final ArrayList<byte[]> lines = lines(export(program("Krimi, Drama; Teil\\2", "Erste Zeile\r\nZweite Zeile")));
+    
+    assertEquals("SUMMARY:Krimi\\, Drama\\; Teil\\\\2", unfold(lines, "SUMMARY:"));
+    assertEquals("DESCRIPTION:Erste Zeile\\nZweite Zeile", unfold(lines, "DESCRIPTION:"));
+    assertEquals("LOCATION:Das Erste\\, HD", unfold(lines, "LOCATION:"));
+  }
+  
+  @Test
+  public void usesTextsOfCalendarEvents() throws IOException {
+    final Program program = new Program(42, 1500000000000L, 1500000000000L + 45 * 60000L, "Tatort", null, "Der Kommissar ermittelt", "Folge 1", new Channel(1, "Das Erste", null));
+    final ArrayList<byte[]> lines = lines(export(program, "{channel}: {title}", "", "{desc:13}"));
+    
+    assertEquals("SUMMARY:Das Erste: Tatort", unfold(lines, "SUMMARY:"));
+    assertEquals("DESCRIPTION:Der Kommissar…", unfold(lines, "DESCRIPTION:"));
+    
+    for(byte[] line : lines) {
+      assertTrue("empty location written", !decode(line).startsWith("LOCATION:"));
+    }
+  }
+  
+  @Test
+  public void writesEnvelope() throws IOException {
+    final ArrayList<byte[]> lines = lines(export(program("Tatort", null)));
+    
+    assertEquals("BEGIN:VCALENDAR", decode(lines.get(0)));
+    assertEquals("END:VCALENDAR", decode(lines.get(lines.size() - 1)));
+    assertEquals("UID:" + ProgramExporter.getUid(42), unfold(lines, "UID:"));
+    assertEquals("DTSTART:20170714T022000Z", unfold(lines, "DTSTART:"));
+    assertEquals("DTEND:20170714T030500Z", unfold(lines, "DTEND:"));
+  }
+  
+  private static Program program(String title, String description) {
+    /* 2017-07-14 02:20 UTC */
+    final long start = 1500000000000L - 1200000L;
+    
+    return new Program(42, start, start + 45 * 60000L, title, null, description, null, new Channel(1, "Das Erste, HD", null));
+  }
+  
+  private static byte[] export(Program program) throws IOException {
+    return export(program, TITLE, LOCATION, DESCRIPTION);
+  }
+  
+  private static byte[] export(Program program, String title, String location, String description) throws IOException {
+    final EventTemplate titleTemplate = EventTemplate.compile(title);
+    final EventTemplate locationTemplate = EventTemplate.compile(location);
+    final EventTemplate descriptionTemplate = EventTemplate.compile(description);
+    
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ProgramExporter exporter = new ICalendarProgramExporter(out, new CalendarBatchExporter.EventTextFactory() {
+      private final StringBuilder mBuffer = new StringBuilder();
+      
+      @Override
+      public EventText createEventText(Program program) {
+        return new EventText(titleTemplate.format(program, mBuffer), locationTemplate.format(program, mBuffer), descriptionTemplate.format(program, mBuffer));
+      }
+    });
+    
+    exporter.begin();
+    exporter.write(program);
+    exporter.end();
+    exporter.close();
+    
+    return out.toByteArray();
+  }
+  
+  /* Splits the export into its physical lines, checking that each ends with CRLF */
+  private static ArrayList<byte[]> lines(byte[] data) {
+    final ArrayList<byte[]> lines = new ArrayList<byte[]>();
+    int start = 0;
+    
+    for(int i = 0; i < data.length; i++) {
+      if(data[i] == '\n') {
+        assertEquals("line not ended by CRLF", '\r', data[i - 1]);
+        
+        final byte[] line = new byte[i - 1 - start];
+        System.arraycopy(data, start, line, 0, line.length);
+        lines.add(line);
+        
+        start = i + 1;
+      }
+    }
+    
+    assertEquals("data after the last line", data.length, start);
+    
+    return lines;
+  }
+  
+  /* Unfolds the content line that starts with the given name */
+  private static String unfold(ArrayList<byte[]> lines, String name) {
+    for(int i = 0; i < lines.size(); i++) {
+      final String line = decode(lines.get(i));
+      
+      if(line.startsWith(name)) {
+        final StringBuilder unfolded = new StringBuilder(line);
+        
+        while(i + 1 < lines.size() && lines.get(i + 1).length > 0 && lines.get(i + 1)[0] == ' ') {
+          unfolded.append(decode(lines.get(++i)).substring(1));
+        }
+        
+        return unfolded.toString();
+      }
+    }
+    
+    fail("no content line " + name);
+    return null;
+  }
+  
+  /* Decodes a physical line, failing if it contains a partial UTF-8 sequence */
+  private static String decode(byte[] line) {
+    final CharsetDecoder decoder = UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+    
+    try {
+      return decoder.decode(ByteBuffer.wrap(line)).toString();
+    }catch(CharacterCodingException e) {
+      fail("line splits a UTF-8 sequence: " + e);
+      return null;
+    }
+  }
+  
+  private static String text(String part, int count) {
+    final StringBuilder text = new StringBuilder();
+    
+    for(int i = 0; i < count; i++) {
+      text.append(part);
+    }
+    
+    return text.toString();
+  }
+}
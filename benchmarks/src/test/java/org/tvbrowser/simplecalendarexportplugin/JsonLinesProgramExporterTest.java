@@ -0,0 +1,65 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Tests for the escaping of {@link JsonLinesProgramExporter}.
+ */
+public class JsonLinesProgramExporterTest {
+  @Test
+  public void writesOneObjectPerLine() throws IOException {
+    final String json = export(new Program(7, 1000, 2000, "Tatort", null, null, "Folge 1", new Channel(3, "Das Erste", null)),
+        new Program(8, 2000, 3000, "Ümläut", null, null, null, new Channel(4, null, null)));
+    
+    assertEquals("{\"id\":7,\"start\":1000,\"end\":2000,\"title\":\"Tatort\",\"episodeTitle\":\"Folge 1\",\"channelId\":3,\"channel\":\"Das Erste\"}\n"
+        + "{\"id\":8,\"start\":2000,\"end\":3000,\"title\":\"Ümläut\",\"channelId\":4}\n", json);
+  }
+  
+  @Test
+  public void escapesStrings() throws IOException {
+    final String json = export(new Program(7, 1000, 2000, "Der \"Fall\" C:\\", "Zeile\r\nZeile\tTab", "Steuer\u0001\u001f/\u007f", null, new Channel(4, null, null)));
+    
+    assertEquals("{\"id\":7,\"start\":1000,\"end\":2000,\"title\":\"Der \\\"Fall\\\" C:\\\\\""
+        + ",\"shortDescription\":\"Zeile\\r\\nZeile\\tTab\""
+        + ",\"description\":\"Steuer\\u0001\\u001f/\u007f\",\"channelId\":4}\n", json);
+  }
+  
+  private static String export(Program... programs) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ProgramExporter exporter = new JsonLinesProgramExporter(out);
+    
+    exporter.begin();
+    
+    for(Program program : programs) {
+      exporter.write(program);
+    }
+    
+    exporter.end();
+    exporter.close();
+    
+    return out.toString("UTF-8");
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the occurrences found by {@link KeywordMatcher}.
+ */
+public class KeywordMatcherTest {
+  @Test
+  public void findsOverlappingAndNestedKeywords() {
+    final String[] keywords = {"he", "she", "his", "hers"};
+    
+    /* she and he end at the same position, hers overlaps both */
+    assertEquals(Arrays.asList("she@4", "he@4", "hers@6"), find(keywords, "ushers"));
+    assertEquals(Arrays.asList("his@3", "she@5", "he@5"), find(keywords, "hishe"));
+  }
+  
+  @Test
+  public void findsKeywordsAcrossFailureLinks() {
+    final String[] keywords = {"abcd", "bcx", "cxy", "x"};
+    
+    /* abc fails over to bc for x, then bcx fails over to cx for y */
+    assertEquals(Arrays.asList("bcx@4", "x@4", "cxy@5"), find(keywords, "abcxy"));
+    assertEquals(Arrays.asList("abcd@5"), find(keywords, "aabcd"));
+  }
+  
+  @Test
+  public void findsEveryOccurrenceOfRepeatedKeywords() {
+    assertEquals(Arrays.asList("aa@2", "aa@3", "aa@4"), find(new String[] {"aa"}, "aaaa"));
+    
+    /* the same keyword twice is reported for both indices */
+    final List<String> found = find(new String[] {"tor", "tor"}, "Tatort");
+    Collections.sort(found);
+    
+    assertEquals(Arrays.asList("tor@5", "tor@5"), found);
+  }
+  
+  @Test
+  public void comparesCaseInsensitive() {
+    assertEquals(Arrays.asList("TaToRt@6", "TaToRt@13"), find(new String[] {"TaToRt"}, "TATORT tatort"));
+    assertEquals(Arrays.asList("Über@4"), find(new String[] {"Über"}, "über"));
+  }
+  
+  @Test
+  public void stopsWhenTheHandlerReturnsTrue() {
+    final KeywordMatcher matcher = new KeywordMatcher(new String[] {"a"});
+    final int[] calls = new int[1];
+    
+    assertTrue(matcher.find("aaaa", new KeywordMatcher.MatchHandler() {
+      @Override
+      public boolean onMatch(int keyword, int end) {
+        return ++calls[0] == 2;
+      }
+    }));
+    
+    assertEquals(2, calls[0]);
+  }
+  
+  @Test
+  public void findsNothingWithoutKeywords() {
+    assertEquals(Collections.<String>emptyList(), find(new String[0], "Tatort"));
+    assertEquals(Collections.<String>emptyList(), find(new String[] {"Tatort"}, ""));
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyKeyword() {
+    new KeywordMatcher(new String[] {"Tatort", ""});
+  }
+  
+  @Test
+  public void findsTheSameAsNaiveSearch() {
+    final Random random = new Random(42);
+    
+    for(int round = 0; round < 200; round++) {
+      final String[] keywords = new String[1 + random.nextInt(8)];
+      
+      for(int k = 0; k < keywords.length; k++) {
+        keywords[k] = text(random, 1 + random.nextInt(4));
+      }
+      
+      final String text = text(random, random.nextInt(40));
+      final List<String> expected = new ArrayList<String>();
+      
+      for(int end = 1; end <= text.length(); end++) {
+        for(int k = 0; k < keywords.length; k++) {
+          if(text.substring(0, end).toLowerCase().endsWith(keywords[k].toLowerCase())) {
+            expected.add(k + "@" + end);
+          }
+        }
+      }
+      
+      final List<String> found = new ArrayList<String>();
+      
+      new KeywordMatcher(keywords).find(text, new KeywordMatcher.MatchHandler() {
+        @Override
+        public boolean onMatch(int keyword, int end) {
+          found.add(keyword + "@" + end);
+          return false;
+        }
+      });
+      
+      /* occurrences with the same end may be reported in any order */
+      Collections.sort(expected);
+      Collections.sort(found);
+      
+      assertEquals(Arrays.toString(keywords) + " in " + text, expected, found);
+    }
+  }
+  
+  @Test
+  public void findsNonAsciiKeywordsAtTheStart() {
+    assertEquals(Arrays.asList("€@1"), find(new String[] {"€"}, "€"));
+    assertFalse(new KeywordMatcher(new String[] {"€"}).find("e", new KeywordMatcher.MatchHandler() {
+      @Override
+      public boolean onMatch(int keyword, int end) {
+        return true;
+      }
+    }));
+  }
+  
+  /* the occurrences as keyword@end in the order they were reported */
+  private static List<String> find(final String[] keywords, String text) {
+    final List<String> found = new ArrayList<String>();
+    
+    new KeywordMatcher(keywords).find(text, new KeywordMatcher.MatchHandler() {
+      @Override
+      public boolean onMatch(int keyword, int end) {
+        found.add(keywords[keyword] + "@" + end);
+        return false;
+      }
+    });
+    
+    return found;
+  }
+  
+  private static String text(Random random, int length) {
+    final char[] text = new char[length];
+    
+    for(int i = 0; i < length; i++) {
+      /* few letters in both cases, so keywords overlap often */
+      text[i] = "abcAB".charAt(random.nextInt(5));
+    }
+    
+    return new String(text);
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link LongHashSet} with a {@link HashSet} of boxed values.
+ */
+public class LongHashSetTest {
+  private static final int COUNT = 100000;
+  
+  @Test
+  public void matchesHashSet() {
+    final Random random = new Random(42);
+    final LongHashSet set = new LongHashSet();
+    final HashSet<Long> expected = new HashSet<Long>();
+    
+    /* a small range of ids, so values are added twice and probe sequences get long */
+    for(int i = 0; i < COUNT; i++) {
+      final long value = randomId(random);
+      
+      assertEquals("add " + value, expected.add(value), set.add(value));
+    }
+    
+    assertSame(expected, set);
+    
+    /* removes shift the following entries back, every remaining value must still be found */
+    for(int i = 0; i < COUNT; i++) {
+      final long value = randomId(random);
+      
+      assertEquals("remove " + value, expected.remove(value), set.remove(value));
+    }
+    
+    assertSame(expected, set);
+    
+    for(int i = 0; i < COUNT; i++) {
+      final long value = randomId(random);
+      
+      if(random.nextBoolean()) {
+        assertEquals("add " + value, expected.add(value), set.add(value));
+      }
+      else {
+        assertEquals("remove " + value, expected.remove(value), set.remove(value));
+      }
+    }
+    
+    assertSame(expected, set);
+  }
+  
+  @Test
+  public void removeKeepsClustersReachable() {
+    final LongHashSet set = new LongHashSet();
+    final HashSet<Long> expected = new HashSet<Long>();
+    
+    /* sequential ids fill neighbouring slots without any resize */
+    for(long value = 1; value <= 7; value++) {
+      set.add(value);
+      expected.add(value);
+    }
+    
+    for(long value = 1; value <= 7; value += 2) {
+      assertTrue(set.remove(value));
+      expected.remove(value);
+      assertSame(expected, set);
+    }
+  }
+  
+  @Test
+  public void removeKeepsWrappedClustersReachable() {
+    /* values whose home is the last slot of a table with 16 slots, so their cluster wraps to the start */
+    final long[] values = new long[4];
+    
+    for(long value = 1, n = 0; n < values.length; value++) {
+      if(homeSlot(value, 16) == 15) {
+        values[(int)n++] = value;
+      }
+    }
+    
+    for(int removed = 0; removed < values.length; removed++) {
+      final LongHashSet set = new LongHashSet(values.length);
+      
+      for(long value : values) {
+        set.add(value);
+      }
+      
+      assertTrue(set.remove(values[removed]));
+      
+      for(int i = 0; i < values.length; i++) {
+        assertEquals("value " + i + " after removing " + removed, i != removed, set.contains(values[i]));
+      }
+    }
+  }
+  
+  @Test
+  public void keepsValuesOnRehash() {
+    final LongHashSet set = new LongHashSet();
+    final long[] values = new long[COUNT];
+    
+    for(int i = 0; i < COUNT; i++) {
+      values[i] = 1000000000L + i * 17L;
+      assertTrue(set.add(values[i]));
+      assertEquals(i + 1, set.size());
+    }
+    
+    for(long value : values) {
+      assertTrue(set.contains(value));
+      assertFalse(set.contains(value + 1));
+    }
+    
+    final long[] copy = set.toArray();
+    Arrays.sort(copy);
+    
+    assertArrayEquals(values, copy);
+  }
+  
+  @Test
+  public void handlesZero() {
+    final LongHashSet set = new LongHashSet();
+    
+    assertFalse(set.contains(0));
+    assertFalse(set.remove(0));
+    
+    assertTrue(set.add(0));
+    assertFalse(set.add(0));
+    assertTrue(set.contains(0));
+    assertEquals(1, set.size());
+    assertArrayEquals(new long[] {0}, set.toArray());
+    
+    set.add(5);
+    
+    final LongHashSet copy = new LongHashSet(set);
+    
+    assertTrue(set.remove(0));
+    assertFalse(set.contains(0));
+    assertEquals(1, set.size());
+    
+    assertTrue(copy.contains(0));
+    assertEquals(2, copy.size());
+    
+    copy.clear();
+    
+    assertTrue(copy.isEmpty());
+    assertFalse(copy.contains(0));
+    assertFalse(copy.contains(5));
+  }
+  
+  @Test
+  public void addAllMatchesAdd() {
+    final Random random = new Random(7);
+    final long[] values = new long[COUNT];
+    final HashSet<Long> expected = new HashSet<Long>();
+    
+    for(int i = 0; i < COUNT; i++) {
+      values[i] = randomId(random);
+      expected.add(values[i]);
+    }
+    
+    final LongHashSet set = new LongHashSet(10);
+    set.addAll(values);
+    
+    assertSame(expected, set);
+    assertSame(expected, new LongHashSet(set));
+  }
+  
+  /* The slot a value is probed first in a table of the given capacity, like LongHashSet.hash */
+  private static int homeSlot(long value, int capacity) {
+    final long h = value * 0x9E3779B97F4A7C15L;
+    return (int)(h ^ (h >>> 32)) & (capacity - 1);
+  }
+  
+  /* Ids between -1000 and COUNT, including 0 */
+  private static long randomId(Random random) {
+    return random.nextInt(COUNT + 1000) - 1000;
+  }
+  
+  private static void assertSame(HashSet<Long> expected, LongHashSet set) {
+    assertEquals(expected.size(), set.size());
+    
+    for(Long value : expected) {
+      assertTrue("missing " + value, set.contains(value));
+    }
+    
+    final long[] values = set.toArray();
+    
+    assertEquals(expected.size(), values.length);
+    
+    for(long value : values) {
+      assertTrue("unexpected " + value, expected.contains(value));
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link LongLongHashMap} with a {@link HashMap} of boxed values.
+ */
+public class LongLongHashMapTest {
+  private static final int COUNT = 100000;
+  
+  @Test
+  public void matchesHashMap() {
+    final Random random = new Random(42);
+    final LongLongHashMap map = new LongLongHashMap();
+    final HashMap<Long, Long> expected = new HashMap<Long, Long>();
+    
+    for(int i = 0; i < 3 * COUNT; i++) {
+      final long key = randomKey(random);
+      
+      if(random.nextInt(3) != 0) {
+        final long value = random.nextLong();
+        
+        map.put(key, value);
+        expected.put(key, value);
+      }
+      else {
+        final Long removed = expected.remove(key);
+        
+        assertEquals("remove " + key, removed != null ? removed.longValue() : -1, map.remove(key, -1));
+      }
+    }
+    
+    assertSame(expected, map);
+  }
+  
+  @Test
+  public void removeKeysBelowMatchesHashMap() {
+    final Random random = new Random(11);
+    
+    for(int round = 0; round < 20; round++) {
+      final LongLongHashMap map = new LongLongHashMap();
+      final HashMap<Long, Long> expected = new HashMap<Long, Long>();
+      
+      for(int i = 0; i < COUNT / 10; i++) {
+        final long key = randomKey(random);
+        
+        map.put(key, i);
+        expected.put(key, Long.valueOf(i));
+      }
+      
+      final long below = randomKey(random);
+      
+      map.removeKeysBelow(below);
+      
+      for(Iterator<Long> it = expected.keySet().iterator(); it.hasNext();) {
+        if(it.next().longValue() < below) {
+          it.remove();
+        }
+      }
+      
+      assertSame(expected, map);
+    }
+  }
+  
+  @Test
+  public void handlesZero() {
+    final LongLongHashMap map = new LongLongHashMap();
+    
+    assertEquals(-1, map.get(0, -1));
+    
+    map.put(0, 5);
+    map.put(0, 6);
+    map.put(3, 7);
+    
+    assertEquals(6, map.get(0, -1));
+    assertEquals(2, map.size());
+    
+    map.removeKeysBelow(1);
+    
+    assertEquals(-1, map.get(0, -1));
+    assertEquals(7, map.get(3, -1));
+    assertEquals(1, map.size());
+    
+    map.put(0, 8);
+    
+    assertEquals(8, map.remove(0, -1));
+    assertEquals(-1, map.remove(0, -1));
+    assertEquals(1, map.size());
+  }
+  
+  /* Keys between -1000 and COUNT, including 0 */
+  private static long randomKey(Random random) {
+    return random.nextInt(COUNT + 1000) - 1000;
+  }
+  
+  private static void assertSame(HashMap<Long, Long> expected, LongLongHashMap map) {
+    assertEquals(expected.size(), map.size());
+    
+    for(Map.Entry<Long, Long> entry : expected.entrySet()) {
+      assertEquals("value of " + entry.getKey(), entry.getValue().longValue(), map.get(entry.getKey(), Long.MIN_VALUE));
+    }
+    
+    final long[] keys = map.keys();
+    
+    assertEquals(expected.size(), keys.length);
+    
+    for(long key : keys) {
+      assertTrue("unexpected " + key, expected.containsKey(key));
+    }
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Stress test for the {@link MarkingPublisher} the plugin uses, readers on
+ * other threads must only ever see the complete state of one version and
+ * never miss a change whose writer returned before they read.
+ * <p>
+ * Every version adds a block of ids, removes one id of that block and
+ * prunes the blocks that are too old, so the expected content of a
+ * snapshot can be computed from its version alone.
+ */
+public class MarkingPublisherTest {
+  private static final int WRITERS = 4;
+  private static final int READERS = 4;
+  private static final int VERSIONS = 4000;
+  
+  /* ids per version */
+  private static final int BLOCK = 32;
+  /* number of the newest blocks kept in the set */
+  private static final int KEEP = 16;
+  
+  private final Object mLock = new Object();
+  private final MarkingSet mMarkings = new MarkingSet();
+  
+  private final MarkingPublisher mPublisher = new MarkingPublisher();
+  
+  private long mVersion;
+  private volatile boolean mDone;
+  
+  @Test
+  public void readersSeeCompleteVersions() throws Throwable {
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final CountDownLatch start = new CountDownLatch(1);
+    final ArrayList<Thread> writers = new ArrayList<Thread>();
+    final ArrayList<Thread> readers = new ArrayList<Thread>();
+    
+    for(int i = 0; i < WRITERS; i++) {
+      writers.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          await(start);
+          
+          while(failure.get() == null && write()) {}
+        }
+      }));
+    }
+    
+    for(int i = 0; i < READERS; i++) {
+      readers.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          await(start);
+          
+          try {
+            long lastVersion = 0;
+            
+            while(!mDone) {
+              final MarkingSet.Snapshot snapshot = mPublisher.getSnapshot();
+              
+              assertTrue("version went back", snapshot.getVersion() >= lastVersion);
+              lastVersion = snapshot.getVersion();
+              
+              check(snapshot);
+            }
+            
+            check(mPublisher.getSnapshot());
+          }catch(Throwable t) {
+            failure.compareAndSet(null, t);
+          }
+        }
+      }));
+    }
+    
+    startAll(writers);
+    startAll(readers);
+    start.countDown();
+    
+    joinAll(writers);
+    mDone = true;
+    joinAll(readers);
+    
+    if(failure.get() != null) {
+      throw failure.get();
+    }
+    
+    assertEquals(VERSIONS, mPublisher.getSnapshot().getVersion());
+  }
+  
+  @Test
+  public void readersAfterWriterSeeChange() throws Throwable {
+    final SynchronousQueue<Long> written = new SynchronousQueue<Long>();
+    final SynchronousQueue<Boolean> seen = new SynchronousQueue<Boolean>();
+    
+    /* gets every change from the writer after the writer returned and answers what the snapshot contains */
+    final Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for(Long id = written.poll(10, TimeUnit.SECONDS); id != null && id != 0; id = written.poll(10, TimeUnit.SECONDS)) {
+            seen.put(mPublisher.getSnapshot().contains(Math.abs(id)));
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    
+    reader.start();
+    
+    try {
+      for(long id = 1; id <= 5000; id++) {
+        synchronized(mLock) {
+          mMarkings.add(id);
+          mPublisher.publish(mMarkings);
+        }
+        
+        assertTrue("own add of " + id, mPublisher.getSnapshot().contains(id));
+        assertTrue("add of " + id + " on the reader", exchange(written, seen, id));
+        
+        if(id % 2 == 0) {
+          synchronized(mLock) {
+            mMarkings.remove(id);
+            mPublisher.publish(mMarkings);
+          }
+          
+          assertFalse("own remove of " + id, mPublisher.getSnapshot().contains(id));
+          assertFalse("remove of " + id + " on the reader", exchange(written, seen, -id));
+        }
+      }
+    }finally {
+      written.offer(0L, 10, TimeUnit.SECONDS);
+      reader.join();
+    }
+    
+    assertEquals(2500, mPublisher.getSnapshot().size());
+    assertEquals(7500, mPublisher.getSnapshot().getVersion());
+  }
+  
+  /* Hands the change to the reader and returns if the snapshot of the reader contains the id */
+  private static boolean exchange(SynchronousQueue<Long> written, SynchronousQueue<Boolean> seen, long id) throws InterruptedException {
+    assertTrue("reader gone", written.offer(id, 10, TimeUnit.SECONDS));
+    
+    final Boolean contained = seen.poll(10, TimeUnit.SECONDS);
+    
+    assertTrue("no answer of the reader", contained != null);
+    
+    return contained;
+  }
+  
+  @Test
+  public void replacedSetContinuesVersions() {
+    synchronized(mLock) {
+      mMarkings.add(1);
+      mPublisher.publish(mMarkings);
+      
+      final MarkingSet loaded = new MarkingSet();
+      loaded.add(2);
+      loaded.add(3);
+      
+      final MarkingSet.Snapshot snapshot = mPublisher.publish(loaded);
+      
+      assertEquals(2, snapshot.getVersion());
+      assertEquals(2, snapshot.size());
+      assertFalse(snapshot.contains(1));
+      assertTrue(mPublisher.getSnapshot().contains(3));
+    }
+  }
+  
+  /* Writes the next version, returns false when all versions are written */
+  private boolean write() {
+    synchronized(mLock) {
+      if(mVersion == VERSIONS) {
+        return false;
+      }
+      
+      final long version = ++mVersion;
+      
+      for(int i = 0; i < BLOCK; i++) {
+        mMarkings.add(version * BLOCK + i);
+      }
+      
+      mMarkings.remove(removedId(version));
+      
+      if(version > KEEP) {
+        mMarkings.pruneBelow((version - KEEP + 1) * BLOCK);
+      }
+      
+      assertEquals(version, mPublisher.publish(mMarkings).getVersion());
+      
+      return true;
+    }
+  }
+  
+  private static long removedId(long version) {
+    return version * BLOCK + version % BLOCK;
+  }
+  
+  private static void check(MarkingSet.Snapshot snapshot) {
+    final long version = snapshot.getVersion();
+    final long first = Math.max(1, version - KEEP + 1);
+    final long[] ids = snapshot.getIds();
+    
+    assertEquals("size of version " + version, version == 0 ? 0 : (version - first + 1) * (BLOCK - 1), ids.length);
+    assertEquals(ids.length, snapshot.size());
+    
+    int index = 0;
+    
+    for(long block = first; block <= version; block++) {
+      for(int i = 0; i < BLOCK; i++) {
+        final long id = block * BLOCK + i;
+        
+        if(id == removedId(block)) {
+          assertFalse("removed id " + id + " in version " + version, snapshot.contains(id));
+        }
+        else {
+          assertEquals("id at " + index + " of version " + version, id, ids[index++]);
+          assertTrue("id " + id + " missing in version " + version, snapshot.contains(id));
+        }
+      }
+    }
+    
+    assertFalse("pruned id in version " + version, snapshot.contains(first * BLOCK - 1));
+    assertFalse("future id in version " + version, snapshot.contains((version + 1) * BLOCK));
+  }
+  
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+  
+  private static void startAll(ArrayList<Thread> threads) {
+    for(Thread thread : threads) {
+      thread.start();
+    }
+  }
+  
+  private static void joinAll(ArrayList<Thread> threads) throws InterruptedException {
+    for(Thread thread : threads) {
+      thread.join();
+    }
+  }
+}
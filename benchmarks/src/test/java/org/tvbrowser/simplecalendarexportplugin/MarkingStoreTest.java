@@ -0,0 +1,200 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the snapshot and journal files of {@link MarkingStore}.
+ */
+public class MarkingStoreTest {
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+  
+  @Test
+  public void loadsSnapshotAndJournal() throws IOException {
+    final MarkingStore store = new MarkingStore(mFolder.getRoot());
+    
+    store.compact(new MarkingStore.Snapshot(new long[] {-5, 10, 20, 30}, new long[] {-1, 100, -1, 300}));
+    store.appendAll(new byte[] {MarkingStore.OP_ADD, MarkingStore.OP_EVENT, MarkingStore.OP_REMOVE, MarkingStore.OP_PRUNE}, new long[] {40, 40, 20, 0}, new long[] {0, 400, 0, 0}, 4);
+    store.close();
+    
+    final MarkingSet markings = new MarkingSet();
+    final LongLongHashMap eventIds = new LongLongHashMap();
+    
+    new MarkingStore(mFolder.getRoot()).load(markings, eventIds);
+    
+    assertArrayEquals(new long[] {10, 30, 40}, markings.toArray());
+    assertEquals(100, eventIds.get(10, -1));
+    assertEquals(300, eventIds.get(30, -1));
+    assertEquals(400, eventIds.get(40, -1));
+    assertEquals(-1, eventIds.get(-5, -1));
+  }
+  
+  @Test
+  public void dropsTornJournalRecord() throws IOException {
+    final MarkingStore store = new MarkingStore(mFolder.getRoot());
+    
+    store.appendAll(new byte[] {MarkingStore.OP_ADD, MarkingStore.OP_ADD}, new long[] {1, 2}, new long[2], 2);
+    store.close();
+    
+    final File journal = new File(mFolder.getRoot(), "markings.journal");
+    truncate(journal, journal.length() - 3);
+    
+    final MarkingSet markings = new MarkingSet();
+    final MarkingStore loaded = new MarkingStore(mFolder.getRoot());
+    
+    loaded.load(markings, new LongLongHashMap());
+    
+    assertArrayEquals(new long[] {1}, markings.toArray());
+    assertEquals(10, journal.length());
+    
+    /* records appended later are not hidden behind the torn one */
+    loaded.appendAll(new byte[] {MarkingStore.OP_ADD}, new long[] {3}, new long[1], 1);
+    loaded.close();
+    
+    final MarkingSet reloaded = new MarkingSet();
+    new MarkingStore(mFolder.getRoot()).load(reloaded, new LongLongHashMap());
+    
+    assertArrayEquals(new long[] {1, 3}, reloaded.toArray());
+  }
+  
+  @Test
+  public void replaysJournalIfSnapshotIsDamaged() throws IOException {
+    final MarkingStore store = new MarkingStore(mFolder.getRoot());
+    
+    store.compact(new MarkingStore.Snapshot(new long[] {10, 20, 30}, new long[] {-1, -1, -1}));
+    store.appendAll(new byte[] {MarkingStore.OP_ADD, MarkingStore.OP_ADD}, new long[] {40, 50}, new long[2], 2);
+    store.close();
+    
+    final File snapshot = new File(mFolder.getRoot(), "markings.snapshot");
+    final byte[] damagedContent = corrupt(snapshot);
+    
+    final MarkingSet markings = new MarkingSet();
+    final MarkingStore loaded = new MarkingStore(mFolder.getRoot());
+    
+    File kept = null;
+    
+    try {
+      loaded.load(markings, new LongLongHashMap());
+      fail("damaged snapshot not reported");
+    }catch(MarkingStore.DamagedSnapshotException e) {
+      kept = e.getKeptFile();
+    }
+    
+    assertArrayEquals(new long[] {40, 50}, markings.toArray());
+    
+    /* the next compaction writes a new snapshot, the damaged one is kept */
+    loaded.compact(new MarkingStore.Snapshot(markings.toArray(), new long[] {-1, -1}));
+    
+    assertTrue("damaged snapshot not kept", kept != null && kept.getName().endsWith(".damaged"));
+    assertArrayEquals(damagedContent, read(kept));
+    
+    final MarkingSet reloaded = new MarkingSet();
+    new MarkingStore(mFolder.getRoot()).load(reloaded, new LongLongHashMap());
+    
+    assertArrayEquals(new long[] {40, 50}, reloaded.toArray());
+  }
+  
+  @Test
+  public void readsSnapshotWithoutEventIds() throws IOException {
+    /* version 1 stored only the program ids */
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    
+    out.writeInt(0x54564D4B);
+    out.writeInt(1);
+    out.writeByte(3);
+    out.writeByte(9); // zigzag of -5
+    out.writeByte(15);
+    out.writeByte(10);
+    
+    final CRC32 crc = new CRC32();
+    crc.update(bytes.toByteArray());
+    out.writeInt((int)crc.getValue());
+    
+    final RandomAccessFile file = new RandomAccessFile(new File(mFolder.getRoot(), "markings.snapshot"), "rw");
+    
+    try {
+      file.write(bytes.toByteArray());
+    }finally {
+      file.close();
+    }
+    
+    final MarkingSet markings = new MarkingSet();
+    final LongLongHashMap eventIds = new LongLongHashMap();
+    
+    new MarkingStore(mFolder.getRoot()).load(markings, eventIds);
+    
+    assertArrayEquals(new long[] {-5, 10, 20}, markings.toArray());
+    assertEquals(-1, eventIds.get(10, -1));
+  }
+  
+  /* Flips one byte in the middle of the file and returns the new content */
+  private static byte[] corrupt(File file) throws IOException {
+    final byte[] data = read(file);
+    
+    data[data.length / 2] ^= 0x55;
+    
+    final RandomAccessFile out = new RandomAccessFile(file, "rw");
+    
+    try {
+      out.write(data);
+    }finally {
+      out.close();
+    }
+    
+    return data;
+  }
+  
+  private static byte[] read(File file) throws IOException {
+    final RandomAccessFile in = new RandomAccessFile(file, "r");
+    
+    try {
+      final byte[] data = new byte[(int)in.length()];
+      in.readFully(data);
+      
+      return data;
+    }finally {
+      in.close();
+    }
+  }
+  
+  private static void truncate(File file, long length) throws IOException {
+    final RandomAccessFile out = new RandomAccessFile(file, "rw");
+    
+    try {
+      out.setLength(length);
+    }finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that {@link MarkingWriter} coalesces the marking changes into few
+ * writes and doesn't lose changes that could not be written.
+ */
+public class MarkingWriterTest {
+  /* long enough that a test never reaches it */
+  private static final long QUIET_PERIOD = 60000;
+  
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+  
+  /* the markings in memory, like the plugin keeps them */
+  private final Object mLock = new Object();
+  private final MarkingSet mMarkings = new MarkingSet();
+  private final LongLongHashMap mEventIds = new LongLongHashMap();
+  
+  /* the source is asked once per write for the number of markings */
+  private final AtomicInteger mWrites = new AtomicInteger();
+  
+  private MarkingWriter mWriter;
+  
+  @After
+  public void tearDown() {
+    if(mWriter != null) {
+      mWriter.shutdown();
+    }
+  }
+  
+  @Test
+  public void coalescesChangesUntilFlush() throws Exception {
+    createWriter(1000);
+    
+    for(long id = 1; id <= 100; id++) {
+      add(id);
+    }
+    
+    remove(50);
+    Thread.sleep(200);
+    
+    assertEquals(0, mWrites.get());
+    assertFalse(getJournal().exists());
+    
+    mWriter.flush();
+    
+    assertEquals(1, mWrites.get());
+    assertEquals(101 * 10, getJournal().length());
+    assertArrayEquals(mMarkings.toArray(), load().toArray());
+    
+    /* nothing pending, nothing written */
+    mWriter.flush();
+    
+    assertEquals(1, mWrites.get());
+  }
+  
+  @Test
+  public void writesWhenMaxPendingIsReached() throws Exception {
+    createWriter(16);
+    
+    for(long id = 1; id <= 16; id++) {
+      add(id);
+    }
+    
+    final long end = System.currentTimeMillis() + 10000;
+    
+    while(mWrites.get() == 0 && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    
+    assertEquals(1, mWrites.get());
+    assertEquals(16, load().size());
+  }
+  
+  @Test
+  public void growsBuffersForLargeBatches() throws Exception {
+    createWriter(8);
+    
+    final long[] programIds = new long[1000];
+    final long[] eventIds = new long[programIds.length];
+    
+    synchronized(mLock) {
+      for(int i = 0; i < programIds.length; i++) {
+        programIds[i] = 1000 + i;
+        eventIds[i] = i % 3 == 0 ? -1 : 5000 + i;
+        
+        mMarkings.add(programIds[i]);
+        
+        if(eventIds[i] != -1) {
+          mEventIds.put(programIds[i], eventIds[i]);
+        }
+      }
+      
+      mWriter.enqueueMarkings(programIds, eventIds, programIds.length);
+    }
+    
+    mWriter.flush();
+    
+    final LongLongHashMap loadedEventIds = new LongLongHashMap();
+    
+    assertArrayEquals(programIds, load(loadedEventIds).toArray());
+    
+    for(int i = 0; i < programIds.length; i++) {
+      assertEquals("event of " + programIds[i], eventIds[i], loadedEventIds.get(programIds[i], -1));
+    }
+  }
+  
+  @Test
+  public void compactsAfterFailedWrite() throws Exception {
+    createWriter(1000);
+    
+    /* the journal can't be opened while a directory has its name */
+    final File journal = getJournal();
+    
+    assertTrue(journal.mkdir());
+    
+    add(1);
+    add(2);
+    mWriter.flush();
+    
+    assertTrue(journal.delete());
+    
+    /* the failed changes are written without any new change */
+    mWriter.flush();
+    
+    assertArrayEquals(new long[] {1, 2}, load().toArray());
+    assertEquals(0, journal.length());
+    
+    add(3);
+    remove(1);
+    mWriter.flush();
+    
+    assertArrayEquals(new long[] {2, 3}, load().toArray());
+  }
+  
+  private void createWriter(int maxPending) {
+    mWriter = new MarkingWriter(new MarkingStore(mFolder.getRoot()), new MarkingWriter.MarkingSource() {
+      @Override
+      public MarkingStore.Snapshot getSnapshot() {
+        synchronized(mLock) {
+          final long[] programIds = mMarkings.toArray();
+          final long[] eventIds = new long[programIds.length];
+          
+          for(int i = 0; i < programIds.length; i++) {
+            eventIds[i] = mEventIds.get(programIds[i], -1);
+          }
+          
+          return new MarkingStore.Snapshot(programIds, eventIds);
+        }
+      }
+      
+      @Override
+      public int getMarkingCount() {
+        mWrites.incrementAndGet();
+        
+        synchronized(mLock) {
+          return mMarkings.size();
+        }
+      }
+    }, QUIET_PERIOD, maxPending);
+  }
+  
+  /* changes the markings and enqueues the change with the lock held, like the plugin */
+  private void add(long programId) {
+    synchronized(mLock) {
+      mMarkings.add(programId);
+      mWriter.enqueue(MarkingStore.OP_ADD, programId);
+    }
+  }
+  
+  private void remove(long programId) {
+    synchronized(mLock) {
+      mMarkings.remove(programId);
+      mWriter.enqueue(MarkingStore.OP_REMOVE, programId);
+    }
+  }
+  
+  private File getJournal() {
+    return new File(mFolder.getRoot(), "markings.journal");
+  }
+  
+  private MarkingSet load() throws IOException {
+    return load(new LongLongHashMap());
+  }
+  
+  private MarkingSet load(LongLongHashMap eventIds) throws IOException {
+    final MarkingSet markings = new MarkingSet();
+    
+    new MarkingStore(mFolder.getRoot()).load(markings, eventIds);
+    
+    return markings;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.tvbrowser.devplugin.Channel;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Tests the exporters with a larger selection of programs, every program
+ * must be written as one complete record in the order of the selection.
+ * <p>
+ * The throughput and the allocations of the exporters are measured
+ * by the <code>ExporterBenchmark</code>.
+ */
+public class ProgramExporterTest {
+  private static final int PROGRAM_COUNT = 2000;
+  
+  private static final String WORDS = "Der Kommissar ermittelt in einem neuen Fall, der ihn quer durch die Stadt führt; am Ende \"überrascht\" ihn alles.\n";
+  
+  @Test
+  public void exportsEveryProgramAsICalendar() throws IOException {
+    final String export = export(ProgramExporter.FORMAT_ICALENDAR);
+    
+    assertTrue(export.startsWith("BEGIN:VCALENDAR\r\n"));
+    assertTrue(export.endsWith("END:VCALENDAR\r\n"));
+    assertRecordsInOrder(export, "BEGIN:VEVENT\r\nUID:", "@");
+    assertEquals(PROGRAM_COUNT, count(export, "END:VEVENT\r\n"));
+  }
+  
+  @Test
+  public void exportsEveryProgramAsJsonLines() throws IOException {
+    final String export = export(ProgramExporter.FORMAT_JSON_LINES);
+    
+    assertRecordsInOrder(export, "{\"id\":", ",");
+    
+    /* line breaks in the texts are escaped, so there is one line per program */
+    assertEquals(PROGRAM_COUNT, count(export, "\n"));
+    assertEquals(PROGRAM_COUNT, count(export, "}\n"));
+  }
+  
+  @Test
+  public void exportsEveryProgramAsCsv() throws IOException {
+    final String export = export(ProgramExporter.FORMAT_CSV);
+    
+    assertTrue(export.startsWith("id,start,end,channel,title,episodeTitle,shortDescription,description\r\n"));
+    assertRecordsInOrder(export, "\r\n", ",");
+    
+    /* line breaks in the quoted texts are LF only, so records end with the only CRLFs */
+    assertEquals(PROGRAM_COUNT + 1, count(export, "\r\n"));
+  }
+  
+  private static String export(int format) throws IOException {
+    final String description = text(600);
+    final String shortDescription = text(200);
+    final Channel channel = new Channel(1, "Das Erste HD", null);
+    
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ProgramExporter exporter = ProgramExporter.create(format, out, new CalendarBatchExporter.EventTextFactory() {
+      @Override
+      public EventText createEventText(Program program) {
+        return new EventText(program.getTitle(), program.getChannel().getChannelName(), program.getDescription());
+      }
+    });
+    
+    exporter.begin();
+    
+    for(int i = 0; i < PROGRAM_COUNT; i++) {
+      final long time = 1500000000000L + i * 60000L;
+      exporter.write(new Program(i, time, time + 45 * 60000L, "Tatort " + i, shortDescription, description, "Folge " + i, channel));
+    }
+    
+    exporter.end();
+    exporter.close();
+    
+    return out.toString("UTF-8");
+  }
+  
+  /* Checks that the ids after every start of a record are the ids of the programs in order */
+  private static void assertRecordsInOrder(String export, String recordStart, String idEnd) {
+    int index = 0;
+    
+    for(int i = 0; i < PROGRAM_COUNT; i++) {
+      index = export.indexOf(recordStart, index);
+      assertTrue("record of program " + i + " missing", index != -1);
+      
+      index += recordStart.length();
+      assertEquals(String.valueOf(i), export.substring(index, export.indexOf(idEnd, index)));
+    }
+  }
+  
+  private static int count(String text, String part) {
+    int count = 0;
+    
+    for(int index = text.indexOf(part); index != -1; index = text.indexOf(part, index + part.length())) {
+      count++;
+    }
+    
+    return count;
+  }
+  
+  private static String text(int length) {
+    final StringBuilder text = new StringBuilder(length);
+    
+    while(text.length() < length) {
+      text.append(WORDS);
+    }
+    
+    text.setLength(length);
+    
+    return text.toString();
+  }
+}
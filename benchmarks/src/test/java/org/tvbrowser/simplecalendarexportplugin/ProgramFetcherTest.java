@@ -0,0 +1,275 @@
+/*
+ * SimpleCalendarExportPlugin for TV-Browser for Android
+ * Copyright (C) 2014 René Mach (rene@tvbrowser.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to use, copy, modify or merge the Software,
+ * furthermore to publish and distribute the Software free of charge without modifications and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.tvbrowser.simplecalendarexportplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.DeadObjectException;
+import android.os.RemoteException;
+
+import org.junit.After;
+import org.junit.Test;
+import org.tvbrowser.devplugin.Program;
+
+/**
+ * Tests for {@link ProgramFetcher} with a plugin manager whose calls take some time.
+ */
+public class ProgramFetcherTest {
+  private static final long HOUR = 60 * 60000L;
+  private static final long WINDOW = 6 * HOUR;
+  private static final long FROM = 1500000000000L / HOUR * HOUR;
+  
+  private final FakePluginManager mPluginManager = new FakePluginManager();
+  private final ThreadPoolExecutor mExecutor = (ThreadPoolExecutor)Executors.newCachedThreadPool();
+  
+  @After
+  public void tearDown() {
+    mExecutor.shutdownNow();
+  }
+  
+  @Test
+  public void fetchesEveryWindowOnceWithBoundedParallelism() throws RemoteException {
+    final long[] from = starts(5);
+    
+    /* the data of this channel is only fetched from the middle of the second window on */
+    from[2] = FROM + 7 * HOUR;
+    
+    mPluginManager.mLatency = 10;
+    
+    final HashSet<String> windows = new HashSet<String>();
+    final AtomicInteger programs = new AtomicInteger();
+    final Thread caller = Thread.currentThread();
+    
+    new ProgramFetcher(mPluginManager, mExecutor, 3, 8, WINDOW).fetch(channelIds(5), from, FROM + 4 * WINDOW, new ProgramFetcher.Consumer() {
+      @Override
+      public void onPrograms(int channelId, long start, long end, Program[] fetched) {
+        assertSame(caller, Thread.currentThread());
+        assertTrue("window " + channelId + "/" + start + " given twice", windows.add(channelId + "/" + start));
+        assertEquals(Math.max(from[channelId], FROM + (start - FROM) / WINDOW * WINDOW), start);
+        assertEquals(Math.min(FROM + 4 * WINDOW, FROM + ((start - FROM) / WINDOW + 1) * WINDOW), end);
+        
+        for(Program program : fetched) {
+          assertEquals(channelId, program.getChannel().getChannelId());
+          assertTrue(program.getStartTimeInUTC() >= start && program.getStartTimeInUTC() < end);
+        }
+        
+        programs.addAndGet(fetched.length);
+      }
+      
+      @Override
+      public void onFailed(int channelId, long start, long end, Exception error) {
+        fail("window " + channelId + "/" + start + " failed");
+      }
+    });
+    
+    assertEquals(19, windows.size());
+    assertEquals(19, mPluginManager.mCalls.get());
+    assertEquals(5 * 24 - 7, programs.get());
+    assertEquals(3, mPluginManager.mMaxRunning.get());
+  }
+  
+  @Test
+  public void waitsForTheConsumerWhenTheQueueIsFull() throws RemoteException {
+    final int parallelism = 4;
+    final int queueCapacity = 2;
+    final AtomicInteger consumed = new AtomicInteger();
+    final AtomicInteger maxAhead = new AtomicInteger();
+    
+    new ProgramFetcher(mPluginManager, mExecutor, parallelism, queueCapacity, WINDOW).fetch(channelIds(8), starts(8), FROM + 4 * WINDOW, new ProgramFetcher.Consumer() {
+      @Override
+      public void onPrograms(int channelId, long start, long end, Program[] programs) {
+        /* fetched windows are either consumed, in the queue or wait for space in the queue */
+        final int ahead = mPluginManager.mCalls.get() - consumed.incrementAndGet();
+        maxAhead.set(Math.max(maxAhead.get(), ahead));
+        
+        sleep(10);
+      }
+      
+      @Override
+      public void onFailed(int channelId, long start, long end, Exception error) {
+        fail("window " + channelId + "/" + start + " failed");
+      }
+    });
+    
+    assertEquals(32, consumed.get());
+    assertTrue("fetched " + maxAhead.get() + " windows ahead of the consumer", maxAhead.get() <= queueCapacity + parallelism);
+    assertTrue("fetched only " + maxAhead.get() + " windows ahead of the consumer", maxAhead.get() >= queueCapacity);
+  }
+  
+  @Test
+  public void givesDeadObjectExceptionToCaller() {
+    final DeadObjectException error = new DeadObjectException();
+    mPluginManager.mErrors.put(3, error);
+    
+    try {
+      new ProgramFetcher(mPluginManager, mExecutor, 2, 4, WINDOW).fetch(channelIds(5), starts(5), FROM + 4 * WINDOW, new CountingConsumer());
+      fail("exception not given to the caller");
+    } catch (RemoteException e) {
+      assertSame(error, e);
+    }
+    
+    assertWorkersEnd();
+  }
+  
+  @Test
+  public void skipsFailingWindowsAndFetchesTheOtherChannels() throws RemoteException {
+    mPluginManager.mErrors.put(3, new IllegalStateException());
+    mPluginManager.mErrors.put(1, new RemoteException());
+    
+    final CountingConsumer consumer = new CountingConsumer();
+    
+    new ProgramFetcher(mPluginManager, mExecutor, 2, 4, WINDOW).fetch(channelIds(5), starts(5), FROM + 4 * WINDOW, consumer);
+    
+    /* the failing windows were split down to the shortest window and given to the consumer */
+    assertEquals(3 * 4, consumer.mWindows);
+    assertEquals(3 * 24, consumer.mPrograms);
+    assertEquals(2 * 4 * WINDOW, consumer.mFailedTime);
+    assertTrue(consumer.mMaxFailedWindow <= ProgramFetcher.MIN_WINDOW);
+  }
+  
+  @Test
+  public void splitsWindowsWhoseReplyIsTooLarge() throws RemoteException {
+    mPluginManager.mMaxRange = 2 * HOUR;
+    
+    final CountingConsumer consumer = new CountingConsumer();
+    
+    new ProgramFetcher(mPluginManager, mExecutor, 2, 4, WINDOW).fetch(channelIds(3), starts(3), FROM + 4 * WINDOW, consumer);
+    
+    assertEquals(3 * 24, consumer.mPrograms);
+    assertEquals(0, consumer.mFailedTime);
+  }
+  
+  @Test
+  public void limitsTheWindow() throws RemoteException {
+    final CountingConsumer consumer = new CountingConsumer();
+    
+    new ProgramFetcher(mPluginManager, mExecutor, 2, 4, 3 * ProgramFetcher.MAX_WINDOW).fetch(channelIds(2), starts(2), FROM + 3 * ProgramFetcher.MAX_WINDOW, consumer);
+    
+    for(long[] call : mPluginManager.mCalled) {
+      assertTrue(call[2] - call[1] <= ProgramFetcher.MAX_WINDOW);
+    }
+    
+    assertEquals(2 * 3, mPluginManager.mCalls.get());
+    assertEquals(2 * 3 * 24, consumer.mPrograms);
+  }
+  
+  @Test
+  public void endsWorkersIfTheConsumerFails() throws RemoteException {
+    final IllegalStateException error = new IllegalStateException();
+    
+    mPluginManager.mLatency = 1;
+    
+    try {
+      new ProgramFetcher(mPluginManager, mExecutor, 4, 1, WINDOW).fetch(channelIds(10), starts(10), FROM + 20 * WINDOW, new ProgramFetcher.Consumer() {
+        @Override
+        public void onPrograms(int channelId, long start, long end, Program[] programs) {
+          throw error;
+        }
+        
+        @Override
+        public void onFailed(int channelId, long start, long end, Exception failure) {
+          throw error;
+        }
+      });
+      fail("exception not given to the caller");
+    } catch (IllegalStateException e) {
+      assertSame(error, e);
+    }
+    
+    /* the workers waiting for space in the full queue end and don't run the remaining tasks */
+    assertWorkersEnd();
+    assertTrue("called " + mPluginManager.mCalls.get() + " times", mPluginManager.mCalls.get() < 20);
+  }
+  
+  @Test
+  public void fetchesWindowsAfterAnEmptyWindow() throws RemoteException {
+    mPluginManager.mGaps.put(0, new long[] {FROM + WINDOW, FROM + 2 * WINDOW});
+    
+    final CountingConsumer consumer = new CountingConsumer();
+    
+    /* one worker, so the windows are fetched in order */
+    new ProgramFetcher(mPluginManager, mExecutor, 1, 4, WINDOW).fetch(channelIds(2), starts(2), FROM + 4 * WINDOW, consumer);
+    
+    /* the second window of channel 0 is empty, the later ones are fetched nevertheless */
+    assertEquals(2 * 4, mPluginManager.mCalls.get());
+    assertEquals(3 + 4, consumer.mWindows);
+    assertEquals(18 + 24, consumer.mPrograms);
+  }
+  
+  private void assertWorkersEnd() {
+    final long end = System.currentTimeMillis() + 2000;
+    
+    while(mExecutor.getActiveCount() > 0 && System.currentTimeMillis() < end) {
+      sleep(10);
+    }
+    
+    assertEquals("workers still running", 0, mExecutor.getActiveCount());
+  }
+  
+  private static int[] channelIds(int count) {
+    final int[] channelIds = new int[count];
+    
+    for(int i = 0; i < count; i++) {
+      channelIds[i] = i;
+    }
+    
+    return channelIds;
+  }
+  
+  private static long[] starts(int count) {
+    final long[] starts = new long[count];
+    Arrays.fill(starts, FROM);
+    
+    return starts;
+  }
+  
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+  
+  private static final class CountingConsumer implements ProgramFetcher.Consumer {
+    private int mWindows;
+    private int mPrograms;
+    private long mFailedTime;
+    private long mMaxFailedWindow;
+    
+    @Override
+    public void onPrograms(int channelId, long start, long end, Program[] programs) {
+      mWindows++;
+      mPrograms += programs.length;
+    }
+    
+    @Override
+    public void onFailed(int channelId, long start, long end, Exception error) {
+      mFailedTime += end - start;
+      mMaxFailedWindow = Math.max(mMaxFailedWindow, end - start);
+    }
+  }
+}